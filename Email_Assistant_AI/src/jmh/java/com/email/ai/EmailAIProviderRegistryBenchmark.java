@@ -0,0 +1,52 @@
+package com.email.ai;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Provider lookup happens once or more per generation request (and per batch item)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailAIProviderRegistryBenchmark {
+
+    private EmailAIProviderRegistry registry;
+
+    @Setup
+    public void setUp() {
+        registry = new EmailAIProviderRegistry(List.of(new StubProvider("GEMINI"), new StubProvider("OLLAMA")));
+        ReflectionTestUtils.setField(registry, "defaultProviderName", "GEMINI");
+    }
+
+    @Benchmark
+    public EmailAIProvider getProviderByName() {
+        return registry.getProvider("ollama");
+    }
+
+    @Benchmark
+    public EmailAIProvider getProviderUnknownName() {
+        return registry.getProvider("OPENAI");
+    }
+
+    @Benchmark
+    public EmailAIProvider getDefaultProvider() {
+        return registry.getDefaultProvider();
+    }
+
+    private record StubProvider(String name) implements EmailAIProvider {
+        @Override
+        public String generateReply(String prompt) {
+            return "";
+        }
+
+        @Override
+        public String getProviderName() {
+            return name;
+        }
+    }
+}
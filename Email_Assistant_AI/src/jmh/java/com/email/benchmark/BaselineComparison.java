@@ -0,0 +1,102 @@
+package com.email.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compares a JMH JSON result (-rf json) with the committed baseline: score (ns/op, lower is
+// better) and, when run with -prof gc, allocated bytes per op. Fails (exception → non-zero
+// exit from Maven) if any benchmark got slower or allocates more than the threshold allows.
+//   args: <baseline.json> <result.json> [threshold-percent] [--update]
+// --update copies the result over the baseline (do this on the reference machine only).
+// Without --update an empty or missing baseline is an error: there is nothing to compare with.
+public class BaselineComparison {
+
+    private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(
+                    "usage: BaselineComparison <baseline.json> <result.json> [threshold-percent] [--update]");
+        }
+        Path baselineFile = Path.of(args[0]);
+        Path resultFile = Path.of(args[1]);
+        double threshold = args.length > 2 && !args[2].startsWith("--") ? Double.parseDouble(args[2]) : 10.0;
+        boolean update = args[args.length - 1].equals("--update");
+
+        if (!Files.exists(resultFile)) {
+            throw new IllegalStateException("No benchmark result at " + resultFile + " — run the benchmarks first");
+        }
+        Map<String, JsonNode> baseline = Files.exists(baselineFile) ? index(baselineFile) : Map.of();
+        Map<String, JsonNode> current = index(resultFile);
+        if (baseline.isEmpty() && !update) {
+            throw new IllegalStateException("Baseline " + baselineFile + " has no benchmarks — run "
+                    + "'mvn -Pjmh exec:java@update-baseline' on the reference machine and commit the file");
+        }
+
+        int regressions = 0;
+        int unbaselined = 0;
+        System.out.printf("%-90s %14s %14s %8s %12s %12s%n",
+                "benchmark", "baseline", "current", "Δ%", "B/op base", "B/op now");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode base = baseline.get(entry.getKey());
+            double score = now.path("primaryMetric").path("score").asDouble();
+            double alloc = allocPerOp(now);
+            if (base == null) {
+                unbaselined++;
+                System.out.printf("%-90s %14s %14.1f %8s %12s %12.0f%n", entry.getKey(), "(new)", score, "", "", alloc);
+                continue;
+            }
+            double baseScore = base.path("primaryMetric").path("score").asDouble();
+            double baseAlloc = allocPerOp(base);
+            double delta = baseScore > 0 ? (score - baseScore) * 100.0 / baseScore : 0.0;
+            // Allocation is deterministic enough to compare directly; allow a few bytes of noise
+            boolean allocRegressed = !Double.isNaN(alloc) && !Double.isNaN(baseAlloc)
+                    && alloc > baseAlloc * (1 + threshold / 100.0) + 16;
+            boolean regressed = delta > threshold || allocRegressed;
+            regressions += regressed ? 1 : 0;
+            System.out.printf("%-90s %14.1f %14.1f %+7.1f%% %12.0f %12.0f%s%n", entry.getKey(), baseScore, score, delta,
+                    baseAlloc, alloc, regressed ? "  ⚠️ REGRESSION" : "");
+        }
+
+        if (update) {
+            Files.createDirectories(baselineFile.toAbsolutePath().getParent());
+            Files.copy(resultFile, baselineFile, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("✅ Baseline updated: " + baselineFile);
+            return;
+        }
+        if (unbaselined > 0) {
+            System.out.println("⚠️ " + unbaselined + " benchmark(s) not in the baseline, not compared");
+        }
+        if (regressions > 0) {
+            throw new IllegalStateException(regressions + " benchmark(s) regressed by more than " + threshold + "%");
+        }
+        System.out.println("✅ No regressions beyond " + threshold + "%");
+    }
+
+    // JMH before 1.36 prefixed profiler metrics with "·"
+    private static double allocPerOp(JsonNode run) {
+        JsonNode metrics = run.path("secondaryMetrics");
+        JsonNode alloc = metrics.has(ALLOC_NORM) ? metrics.path(ALLOC_NORM) : metrics.path("·" + ALLOC_NORM);
+        return alloc.path("score").asDouble(Double.NaN);
+    }
+
+    // Key = benchmark name + its @Param values, so each parameter combination is compared separately
+    private static Map<String, JsonNode> index(Path file) throws IOException {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            run.path("params").fields().forEachRemaining(param ->
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+            byKey.put(key.toString(), run);
+        }
+        return byKey;
+    }
+}
@@ -0,0 +1,126 @@
+package com.email.service;
+
+import com.email.dto.AdvancedEmailRequest;
+import com.email.dto.EmailTone;
+import com.email.dto.PromptVersion;
+import com.email.dto.RewriteMode;
+import com.email.dto.ThreadAwareRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// CPU-only paths of EmailGeneratorService that run on every request before/after the provider call.
+// The service is built without Spring; the collaborators these paths never touch are null.
+// Parameters live in separate @State classes so each benchmark only multiplies by its own.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailGeneratorServiceBenchmark {
+
+    private EmailGeneratorService service;
+    private TokenBudgetService tokenBudget;
+    private ThreadAwareRequest threadRequest;
+
+    @State(Scope.Benchmark)
+    public static class IntentInput {
+        // Matches early (FOLLOW_UP), late (GREETING) or not at all (OTHER): best, typical, worst case
+        @Param({"FOLLOW_UP", "GREETING", "OTHER"})
+        public String intentCase;
+
+        String email;
+
+        @Setup
+        public void setUp() {
+            email = switch (intentCase) {
+                case "FOLLOW_UP" -> Fixtures.FOLLOW_UP_EMAIL;
+                case "GREETING" -> Fixtures.GREETING_EMAIL;
+                default -> Fixtures.NO_INTENT_EMAIL;
+            };
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class VersionInput {
+        @Param({"V1_SIMPLE", "V2_STRUCTURED", "V3_ENTERPRISE"})
+        public PromptVersion version;
+    }
+
+    @State(Scope.Benchmark)
+    public static class ModeInput {
+        @Param({"GENERATE_REPLY", "POLISH"})
+        public RewriteMode mode;
+
+        AdvancedEmailRequest request;
+
+        @Setup
+        public void setUp() {
+            request = new AdvancedEmailRequest();
+            request.setEmailContent(Fixtures.LONG_EMAIL);
+            request.setTone(EmailTone.FORMAL);
+            request.setMode(mode);
+            request.setPromptVersion(PromptVersion.V2_STRUCTURED);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        tokenBudget = new TokenBudgetService();
+        ReflectionTestUtils.setField(tokenBudget, "maxInputTokens", 60000);
+        ReflectionTestUtils.setField(tokenBudget, "chunkTokens", 2000);
+        ReflectionTestUtils.setField(tokenBudget, "mapParallelism", 1);
+        tokenBudget.init();
+
+        EmailMetrics metrics = new EmailMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP, null);
+        service = new EmailGeneratorService(null, null, null, null, null,
+                new EmailPreprocessor(), tokenBudget, null, metrics, null, null);
+        ReflectionTestUtils.setField(service, "threadReplyBudgetTokens", 6000);
+        ReflectionTestUtils.setField(service, "summarizeBudgetTokens", 6000);
+
+        threadRequest = new ThreadAwareRequest();
+        threadRequest.setEmailContent(Fixtures.LONG_EMAIL);
+        threadRequest.setPreviousEmails(List.of(Fixtures.FOLLOW_UP_EMAIL, Fixtures.GREETING_EMAIL, Fixtures.LONG_EMAIL));
+        threadRequest.setTone(EmailTone.FRIENDLY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tokenBudget.shutdown();
+    }
+
+    @Benchmark
+    public Object detectIntentLocal(IntentInput input) {
+        return service.detectIntentLocal(input.email);
+    }
+
+    @Benchmark
+    public String extractResponseContent() {
+        return service.extractResponseContent(Fixtures.GEMINI_RESPONSE);
+    }
+
+    @Benchmark
+    public String cleanJsonResponse() {
+        return service.cleanJsonResponse(Fixtures.FENCED_JSON);
+    }
+
+    @Benchmark
+    public Object buildPromptForVersion(VersionInput input) {
+        return service.buildPromptForVersion(Fixtures.LONG_EMAIL, EmailTone.FORMAL, input.version);
+    }
+
+    @Benchmark
+    public Object buildModeSpecificPrompt(ModeInput input) {
+        return service.buildModeSpecificPrompt(input.request);
+    }
+
+    @Benchmark
+    public String buildThreadAwarePrompt() {
+        return service.buildThreadAwarePrompt(threadRequest);
+    }
+}
@@ -0,0 +1,94 @@
+package com.email.service;
+
+// Representative inputs: a real reply carries quoted history, a signature and a footer,
+// which is exactly what the preprocessing step has to walk through.
+final class Fixtures {
+
+    static final String FOLLOW_UP_EMAIL = """
+            Hi Sam,
+
+            Just following up on the proposal I sent last Tuesday. Have you had a chance to review it?
+
+            Best,
+            Priya
+            """;
+
+    static final String GREETING_EMAIL = """
+            Hello team,
+
+            Great to meet everyone at the offsite. Looking forward to working together this quarter.
+
+            Cheers,
+            Alex
+            """;
+
+    static final String NO_INTENT_EMAIL = """
+            Dear colleagues,
+
+            The quarterly report is attached for your records. It covers revenue, headcount and the
+            office move. No action is needed on your side.
+
+            Regards,
+            Morgan
+            """;
+
+    static final String LONG_EMAIL = """
+            Hi Jordan,
+
+            Thanks for the quick turnaround on the draft contract. Legal has reviewed sections 1-7 and
+            is fine with them. Section 8 (limitation of liability) needs another pass: we would like the
+            cap to be 12 months of fees rather than 6, and the carve-outs should include data breaches.
+
+            Could we get on a call this week to close this out? Thursday afternoon works on our side.
+            We need the signed version by the 30th so procurement can issue the PO before quarter end.
+
+            Best regards,
+            Casey
+            --
+            Casey Lin | Head of Operations | Example Corp
+            +1 555 0100
+
+            CONFIDENTIALITY NOTICE: This e-mail and any attachments are confidential and intended solely
+            for the addressee. If you are not the intended recipient, please delete it.
+
+            On Mon, 3 Jun 2024 at 10:00, Jordan Smith <jordan@example.com> wrote:
+            > Hi Casey,
+            > Please find the draft contract attached. Let me know if legal has any comments.
+            > Thanks,
+            > Jordan
+            """;
+
+    static final String GEMINI_RESPONSE = """
+            {
+              "candidates": [
+                {
+                  "content": {
+                    "parts": [
+                      { "text": "Hi Casey,\\n\\nThank you for the review. A 12-month cap works for us, and we can add data breaches to the carve-outs. Thursday at 3pm is fine; I will send an invite.\\n\\nBest regards,\\nJordan" }
+                    ],
+                    "role": "model"
+                  },
+                  "finishReason": "STOP",
+                  "index": 0
+                }
+              ],
+              "usageMetadata": {
+                "promptTokenCount": 312,
+                "candidatesTokenCount": 58,
+                "totalTokenCount": 370
+              },
+              "modelVersion": "gemini-1.5-flash"
+            }
+            """;
+
+    static final String FENCED_JSON = """
+            ```json
+            {"summary": "Legal wants a 12-month liability cap and data-breach carve-outs.",
+             "actionItems": ["Schedule call Thursday", "Return signed contract"],
+             "deadlines": ["30th"]}
+            ```
+            """;
+
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,372 @@
+package com.email.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Stand-in for Gemini and Ollama so load tests cost no quota. Speaks:
+//   POST /v1beta/models/{model}:generateContent          Gemini, JSON
+//   POST /v1beta/models/{model}:streamGenerateContent    Gemini, SSE (data: {...} per chunk)
+//   POST /api/generate                                   Ollama, JSON (stream:false) or NDJSON
+//   POST /api/embeddings                                 Ollama embeddings
+// Each call sleeps for a sample of the latency distribution (streams spread it over the
+// chunks), and a configurable share of calls answers 429 or 500 instead. Replies are shaped
+// after the prompt (intent JSON, summary JSON, subject array, ...) so the app's parsers run
+// their real code paths.
+//
+// Standalone: java ... com.email.loadtest.FakeLlmServer  (-Dfake-llm.port=11435 ...)
+public class FakeLlmServer implements AutoCloseable {
+
+    private static final String REPLY = """
+            Hi Casey,
+
+            Thank you for the detailed review. A 12-month cap works for us, and we are happy to add \
+            data breaches to the carve-outs. Thursday at 3pm suits me; I will send an invite with the \
+            updated draft so we can close this out before the 30th.
+
+            Best regards,
+            Jordan""";
+
+    private final LatencyDistribution latency;
+    private final double rate429;
+    private final double errorRate;
+    private final int streamChunks;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public FakeLlmServer(LatencyDistribution latency, double rate429, double errorRate, int streamChunks) {
+        this.latency = latency;
+        this.rate429 = rate429;
+        this.errorRate = errorRate;
+        this.streamChunks = Math.max(streamChunks, 1);
+    }
+
+    // fake-llm.latency / fake-llm.rate-429 / fake-llm.error-rate / fake-llm.stream-chunks
+    public static FakeLlmServer fromSystemProperties() {
+        return new FakeLlmServer(
+                LatencyDistribution.parse(System.getProperty("fake-llm.latency", "lognormal:800:3000")),
+                Double.parseDouble(System.getProperty("fake-llm.rate-429", "0.02")),
+                Double.parseDouble(System.getProperty("fake-llm.error-rate", "0.01")),
+                Integer.parseInt(System.getProperty("fake-llm.stream-chunks", "20")));
+    }
+
+    public static void main(String[] args) throws IOException {
+        FakeLlmServer fake = fromSystemProperties();
+        fake.start(Integer.parseInt(System.getProperty("fake-llm.port", "11435")));
+        System.out.println("🤖 Fake LLM listening on " + fake.baseUrl());
+        System.out.println("   gemini.api.url=" + fake.geminiUrl());
+        System.out.println("   ollama.api.url=" + fake.ollamaUrl());
+    }
+
+    public FakeLlmServer start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        // One thread per in-flight call: the sleeps are the point, they must not queue
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String geminiUrl() {
+        return baseUrl() + "/v1beta/models/fake-gemini:generateContent";
+    }
+
+    public String ollamaUrl() {
+        return baseUrl() + "/api/generate";
+    }
+
+    public String ollamaEmbeddingsUrl() {
+        return baseUrl() + "/api/embeddings";
+    }
+
+    // "<api>.<outcome>" → count, e.g. gemini.ok, gemini.429, ollama.500
+    public Map<String, Long> callCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        calls.forEach((key, count) -> counts.put(key, count.sum()));
+        return counts;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "{}");
+                return;
+            }
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            if (path.startsWith("/v1beta/models/") && path.endsWith(":generateContent")) {
+                gemini(exchange, request, false);
+            } else if (path.startsWith("/v1beta/models/") && path.endsWith(":streamGenerateContent")) {
+                gemini(exchange, request, true);
+            } else if (path.equals("/api/generate")) {
+                ollama(exchange, request);
+            } else if (path.equals("/api/embeddings")) {
+                count("embeddings", "ok");
+                send(exchange, 200, mapper.writeValueAsString(Map.of("embedding", embedding(request.path("prompt").asText()))));
+            } else {
+                send(exchange, 404, "{\"error\":\"not found\"}");
+            }
+        } catch (Exception e) {
+            System.out.println("⚠️ Fake LLM handler failed: " + e);
+        }
+    }
+
+    private void gemini(HttpExchange exchange, JsonNode request, boolean stream) throws IOException {
+        String prompt = request.path("contents").path(0).path("parts").path(0).path("text").asText("");
+        String api = stream ? "gemini-stream" : "gemini";
+        if (injectFailure(exchange, api, true)) {
+            return;
+        }
+        String reply = replyFor(prompt);
+        Map<String, Object> usage = Map.of("promptTokenCount", tokens(prompt),
+                "candidatesTokenCount", tokens(reply), "totalTokenCount", tokens(prompt) + tokens(reply));
+
+        if (!stream) {
+            sleep(latency.sampleMillis(ThreadLocalRandom.current()));
+            count(api, "ok");
+            send(exchange, 200, mapper.writeValueAsString(Map.of(
+                    "candidates", List.of(geminiCandidate(reply, true)),
+                    "usageMetadata", usage,
+                    "modelVersion", "fake-gemini")));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        List<String> chunks = split(reply);
+        long[] delays = streamDelays(chunks.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < chunks.size(); i++) {
+                sleep(delays[i]);
+                boolean last = i == chunks.size() - 1;
+                Map<String, Object> event = new LinkedHashMap<>();
+                event.put("candidates", List.of(geminiCandidate(chunks.get(i), last)));
+                if (last) {
+                    event.put("usageMetadata", usage);
+                }
+                out.write(("data: " + mapper.writeValueAsString(event) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+        count(api, "ok");
+    }
+
+    private void ollama(HttpExchange exchange, JsonNode request) throws IOException {
+        String prompt = request.path("prompt").asText("");
+        boolean stream = request.path("stream").asBoolean(true);  // Ollama streams unless told not to
+        boolean generate = !prompt.isEmpty() && request.path("options").path("num_predict").asInt(-1) != 0;
+        if (!prompt.isEmpty() && injectFailure(exchange, "ollama", false)) {
+            return;
+        }
+        String reply = generate ? replyFor(prompt) : "";
+        long total = prompt.isEmpty() ? 0 : latency.sampleMillis(ThreadLocalRandom.current());
+
+        Map<String, Object> done = new LinkedHashMap<>();
+        done.put("model", request.path("model").asText("fake"));
+        done.put("created_at", Instant.now().toString());
+        done.put("response", stream ? "" : reply);
+        done.put("done", true);
+        done.put("context", context(request, prompt));
+        done.put("total_duration", total * 1_000_000);
+        done.put("load_duration", 0);
+        done.put("prompt_eval_count", tokens(prompt));
+        done.put("eval_count", tokens(reply));
+        done.put("eval_duration", total * 700_000);
+
+        if (!stream) {
+            sleep(total);
+            count("ollama", "ok");
+            send(exchange, 200, mapper.writeValueAsString(done));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        List<String> chunks = split(reply);
+        long[] delays = streamDelays(chunks.size(), total);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < chunks.size(); i++) {
+                sleep(delays[i]);
+                out.write((mapper.writeValueAsString(Map.of("model", done.get("model"),
+                        "created_at", Instant.now().toString(), "response", chunks.get(i), "done", false)) + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            out.write((mapper.writeValueAsString(done) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        count("ollama", "ok");
+    }
+
+    private boolean injectFailure(HttpExchange exchange, String api, boolean geminiFormat) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rate429) {
+            count(api, "429");
+            send(exchange, 429, geminiFormat
+                    ? "{\"error\":{\"code\":429,\"message\":\"Resource has been exhausted (e.g. check quota).\",\"status\":\"RESOURCE_EXHAUSTED\"}}"
+                    : "{\"error\":\"too many requests\"}");
+            return true;
+        }
+        if (roll < rate429 + errorRate) {
+            sleep(latency.sampleMillis(ThreadLocalRandom.current()) / 4);  // failures are usually faster
+            count(api, "500");
+            send(exchange, 500, geminiFormat
+                    ? "{\"error\":{\"code\":500,\"message\":\"Internal error encountered.\",\"status\":\"INTERNAL\"}}"
+                    : "{\"error\":\"model runner has unexpectedly stopped\"}");
+            return true;
+        }
+        return false;
+    }
+
+    // Shape the answer after what the app's prompt asks for, so its JSON parsing succeeds
+    static String replyFor(String prompt) {
+        if (prompt.contains("Classify this email")) {
+            return "{\"intent\": \"SUPPORT_REQUEST\", \"reason\": \"Customer reports a problem that needs help\"}";
+        }
+        if (prompt.contains("\"actionItems\"")) {
+            return """
+                    ```json
+                    {"summary": "Legal accepts most terms but wants a 12-month liability cap.",
+                     "actionItems": ["Schedule a call on Thursday", "Send the updated draft"],
+                     "deadlines": ["30th"]}
+                    ```""";
+        }
+        if (prompt.contains("subject lines")) {
+            return "[\"Re: Contract review\", \"Next steps on the liability cap\", \"Call on Thursday?\"]";
+        }
+        if (prompt.contains("politenessScore")) {
+            return "{\"sentiment\": \"positive\", \"politenessScore\": 8.5, \"professionalismScore\": 9.0}";
+        }
+        if (prompt.contains("hasRisk")) {
+            return "{\"hasRisk\": false, \"riskType\": \"none\", \"riskScore\": 0.5, \"recommendation\": \"Safe to send\"}";
+        }
+        if (prompt.contains("running summary")) {
+            return "Casey's legal team reviewed the contract; the liability cap and carve-outs are open. "
+                    + "A call is planned for Thursday and signature is due by the 30th.";
+        }
+        if (prompt.contains("Extract its key facts")) {
+            return "- Liability cap: 12 months of fees requested\n- Data breaches to be carved out\n- Deadline: the 30th";
+        }
+        return REPLY;
+    }
+
+    private Map<String, Object> geminiCandidate(String text, boolean last) {
+        Map<String, Object> candidate = new LinkedHashMap<>();
+        candidate.put("content", Map.of("parts", List.of(Map.of("text", text)), "role", "model"));
+        if (last) {
+            candidate.put("finishReason", "STOP");
+        }
+        candidate.put("index", 0);
+        return candidate;
+    }
+
+    private List<String> split(String reply) {
+        List<String> chunks = new ArrayList<>();
+        if (reply.isEmpty()) {
+            return chunks;
+        }
+        int size = Math.max(1, (reply.length() + streamChunks - 1) / streamChunks);
+        for (int i = 0; i < reply.length(); i += size) {
+            chunks.add(reply.substring(i, Math.min(reply.length(), i + size)));
+        }
+        return chunks;
+    }
+
+    private long[] streamDelays(int chunks) {
+        return streamDelays(chunks, latency.sampleMillis(ThreadLocalRandom.current()));
+    }
+
+    // ~30% of the sampled latency before the first chunk (prompt eval), the rest spread evenly
+    private static long[] streamDelays(int chunks, long total) {
+        long[] delays = new long[chunks];
+        if (chunks == 0) {
+            return delays;
+        }
+        long first = total * 3 / 10;
+        delays[0] = first;
+        for (int i = 1; i < chunks; i++) {
+            delays[i] = (total - first) / Math.max(chunks - 1, 1);
+        }
+        return delays;
+    }
+
+    private static List<Integer> context(JsonNode request, String prompt) {
+        List<Integer> context = new ArrayList<>();
+        request.path("context").forEach(token -> context.add(token.asInt()));
+        for (String word : prompt.split("\\s+")) {
+            if (!word.isEmpty()) {
+                context.add(word.hashCode() & 0x7fff);
+            }
+        }
+        return context;
+    }
+
+    private static List<Double> embedding(String text) {
+        Random random = new Random(text.hashCode());
+        List<Double> vector = new ArrayList<>(768);
+        for (int i = 0; i < 768; i++) {
+            vector.add(random.nextGaussian());
+        }
+        return vector;
+    }
+
+    private static int tokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    private void count(String api, String outcome) {
+        calls.computeIfAbsent(api + "." + outcome, key -> new LongAdder()).increment();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.email.loadtest;
+
+import java.util.Random;
+
+// Simulated provider latency, parsed from a spec string:
+//   fixed:<ms>                    every call takes ms
+//   uniform:<min>:<max>           flat between min and max
+//   exponential:<mean>            memoryless, many fast calls and a long tail
+//   lognormal:<median>:<p99>      what LLM APIs actually look like (right-skewed, heavy p99)
+public interface LatencyDistribution {
+
+    long sampleMillis(Random random);
+
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        try {
+            return switch (parts[0].toLowerCase()) {
+                case "fixed" -> {
+                    long ms = Long.parseLong(parts[1]);
+                    yield random -> ms;
+                }
+                case "uniform" -> {
+                    long min = Long.parseLong(parts[1]);
+                    long max = Long.parseLong(parts[2]);
+                    yield random -> min + (long) (random.nextDouble() * (max - min));
+                }
+                case "exponential" -> {
+                    double mean = Double.parseDouble(parts[1]);
+                    yield random -> (long) (-mean * Math.log(1 - random.nextDouble()));
+                }
+                case "lognormal" -> {
+                    double median = Double.parseDouble(parts[1]);
+                    double p99 = Double.parseDouble(parts[2]);
+                    double mu = Math.log(median);
+                    double sigma = Math.log(p99 / median) / 2.326;  // z(0.99)
+                    yield random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+                }
+                default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Bad latency spec '" + spec + "': " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.email.loadtest;
+
+import com.email.EmailAssitantAiSbApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Closed-loop load test against the real controllers: N virtual users each log in once, then
+// loop pick-a-scenario → call → think. The app runs in-process with the "loadtest" profile
+// (H2 in MySQL mode, embedded Redis) and both providers pointed at FakeLlmServer, so the whole
+// stack — filters, JWT, rate limiting, prompt building, history writes — is on the hot path and
+// only the model is simulated. Results (warmup excluded) go to target/loadtest as JSON and CSV.
+//
+//   mvn -Ploadtest test-compile exec:exec
+//   mvn -Ploadtest test-compile exec:exec -Dloadtest.users=50 -Dloadtest.duration-seconds=300 \
+//       -Dfake-llm.latency=lognormal:1200:6000 -Dfake-llm.rate-429=0.05
+//
+// Set loadtest.target-url to drive an already running instance instead (its providers must
+// then point at a FakeLlmServer started on its own, see FakeLlmServer.main).
+public class LoadTestDriver {
+
+    private static final String EMAIL = """
+            Hi Jordan,
+
+            Thanks for sending over the contract. Our legal team reviewed it and has two concerns: \
+            the liability cap in section 7 and the missing data-breach carve-out. Could we get on a \
+            call Thursday at 3pm to go through them? We need to sign by the 30th.
+
+            Best,
+            Casey""";
+
+    private static final String PASSWORD = "loadtest-password";
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final Map<String, ScenarioStats> stats = new LinkedHashMap<>();
+    private final Map<String, Integer> mix;
+    private final String baseUrl;
+    private final String metricsUrl;
+
+    LoadTestDriver(String baseUrl, String metricsUrl, Map<String, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.metricsUrl = metricsUrl;
+        this.mix = mix;
+        mix.keySet().forEach(name -> stats.put(name, new ScenarioStats(name)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("loadtest.users", 20);
+        int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+        int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 10);
+        long thinkMillis = Long.getLong("loadtest.think-time-ms", 200);
+        Path reportDir = Path.of(System.getProperty("loadtest.report-dir", "target/loadtest"));
+        Map<String, Integer> mix = parseMix(System.getProperty("loadtest.mix",
+                "generate=40,detect-intent=20,summarize=15,thread-reply=15,history=10"));
+        String targetUrl = System.getProperty("loadtest.target-url", "");
+        String metricsUrl = System.getProperty("loadtest.metrics-url", "");
+
+        FakeLlmServer fakeLlm = null;
+        RedisServer redis = null;
+        ConfigurableApplicationContext app = null;
+        try {
+            String baseUrl = targetUrl;
+            if (baseUrl.isBlank()) {
+                fakeLlm = FakeLlmServer.fromSystemProperties().start(0);
+                int redisPort = freePort();
+                redis = new RedisServer(redisPort);
+                redis.start();
+                app = new SpringApplicationBuilder(EmailAssitantAiSbApplication.class)
+                        .profiles("loadtest")
+                        .properties(
+                                "server.port=0",
+                                "gemini.api.url=" + fakeLlm.geminiUrl(),
+                                "gemini.api.key=loadtest",
+                                "ollama.api.url=" + fakeLlm.ollamaUrl(),
+                                "ollama.embeddings.url=" + fakeLlm.ollamaEmbeddingsUrl(),
+                                "spring.data.redis.port=" + redisPort,
+                                "spring.redis.port=" + redisPort)
+                        .run();
+                baseUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+                metricsUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.management.port");
+            }
+            if (metricsUrl.isBlank()) {
+                metricsUrl = baseUrl;
+            }
+            System.out.println("🚀 Load test: " + users + " users, " + warmupSeconds + "s warmup + "
+                    + durationSeconds + "s measured against " + baseUrl + " mix=" + mix);
+
+            LoadTestDriver driver = new LoadTestDriver(baseUrl, metricsUrl, mix);
+            Map<String, Object> report = driver.run(users, warmupSeconds, durationSeconds, thinkMillis);
+            report.put("settings", Map.of("users", users, "warmupSeconds", warmupSeconds,
+                    "durationSeconds", durationSeconds, "thinkTimeMs", thinkMillis, "mix", mix,
+                    "fakeLlm", Map.of(
+                            "latency", System.getProperty("fake-llm.latency", "lognormal:800:3000"),
+                            "rate429", System.getProperty("fake-llm.rate-429", "0.02"),
+                            "errorRate", System.getProperty("fake-llm.error-rate", "0.01"))));
+            if (fakeLlm != null) {
+                report.put("fakeLlmCalls", fakeLlm.callCounts());
+            }
+            driver.write(report, reportDir);
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (redis != null) {
+                redis.stop();
+            }
+            if (fakeLlm != null) {
+                fakeLlm.close();
+            }
+        }
+    }
+
+    Map<String, Object> run(int users, int warmupSeconds, int durationSeconds, long thinkMillis) throws Exception {
+        List<String> tokens = new ArrayList<>();
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        for (int i = 0; i < users; i++) {
+            tokens.add(register("lt-" + runId + "-" + i, forwardedFor(i)));
+        }
+
+        Instant startedAt = Instant.now().plusSeconds(warmupSeconds);
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService virtualUsers = Executors.newFixedThreadPool(users);
+        SaturationSampler sampler = new SaturationSampler(client, metricsUrl);
+        try {
+            for (int i = 0; i < users; i++) {
+                String token = tokens.get(i);
+                String forwardedFor = forwardedFor(i);
+                virtualUsers.submit(() -> userLoop(token, forwardedFor, measureFrom, measureUntil, thinkMillis));
+            }
+            Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(measureFrom - System.nanoTime())));
+            sampler.start();
+            virtualUsers.shutdown();
+            virtualUsers.awaitTermination(durationSeconds + 120L, TimeUnit.SECONDS);
+        } finally {
+            virtualUsers.shutdownNow();
+            sampler.close();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("baseUrl", baseUrl);
+        List<Map<String, Object>> scenarios = new ArrayList<>();
+        stats.values().forEach(s -> scenarios.add(s.summary(durationSeconds)));
+        report.put("total", ScenarioStats.merge("total", stats.values()).summary(durationSeconds));
+        report.put("scenarios", scenarios);
+        report.put("saturation", sampler.summary());
+        report.put("saturationTimeline", sampler.samples());
+        return report;
+    }
+
+    private void userLoop(String token, String forwardedFor, long measureFrom, long measureUntil, long thinkMillis) {
+        while (System.nanoTime() < measureUntil && !Thread.currentThread().isInterrupted()) {
+            String scenario = pick();
+            long start = System.nanoTime();
+            int status;
+            try {
+                status = call(scenario, token, forwardedFor);
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                return;
+            }
+            long end = System.nanoTime();
+            if (start >= measureFrom && end <= measureUntil) {
+                stats.get(scenario).record(TimeUnit.NANOSECONDS.toMicros(end - start), status);
+            }
+            if (thinkMillis > 0) {
+                try {
+                    // ±50% jitter so users don't march in lockstep
+                    Thread.sleep(thinkMillis / 2 + ThreadLocalRandom.current().nextLong(thinkMillis + 1));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int call(String scenario, String token, String forwardedFor) throws IOException, InterruptedException {
+        HttpRequest.Builder request = switch (scenario) {
+            case "generate" -> post("/api/email/generate", Map.of("emailContent", EMAIL, "tone", "FORMAL"));
+            case "detect-intent" -> post("/api/email/detect-intent", Map.of("emailContent", EMAIL));
+            case "summarize" -> post("/api/email/summarize", Map.of("emailContent", EMAIL));
+            case "subject" -> post("/api/email/subject", Map.of("emailContent", EMAIL));
+            case "thread-reply" -> post("/api/email/thread-reply", Map.of("emailContent", EMAIL, "tone", "FRIENDLY",
+                    "previousEmails", List.of("Hi Casey, please find the contract attached. Jordan",
+                            "Thanks Jordan, we will review it this week. Casey")));
+            case "score-quality" -> post("/api/email/score-quality", Map.of("emailContent", EMAIL));
+            case "history" -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/email/history")).GET();
+            default -> throw new IllegalArgumentException("Unknown scenario: " + scenario);
+        };
+        HttpResponse<Void> response = client.send(request
+                        .header("Authorization", "Bearer " + token)
+                        .header("X-Forwarded-For", forwardedFor)
+                        .timeout(Duration.ofSeconds(120))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.statusCode();
+    }
+
+    private String register(String username, String forwardedFor) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(post("/api/auth/register", Map.of(
+                        "username", username, "password", PASSWORD, "email", username + "@loadtest.local"))
+                        .header("X-Forwarded-For", forwardedFor).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Register " + username + " failed: " + response.statusCode() + " " + response.body());
+        }
+        return mapper.readTree(response.body()).path("token").asText();
+    }
+
+    private HttpRequest.Builder post(String path, Object body) throws IOException {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)));
+    }
+
+    private String pick() {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("empty mix");
+    }
+
+    // report-<timestamp>.json (everything) and summary-<timestamp>.csv (one row per scenario)
+    @SuppressWarnings("unchecked")
+    void write(Map<String, Object> report, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        String stamp = Instant.now().toString().replace(":", "").replace(".", "");
+        Path json = dir.resolve("report-" + stamp + ".json");
+        mapper.writeValue(json.toFile(), report);
+
+        StringBuilder csv = new StringBuilder(
+                "scenario,requests,throughputPerSecond,errorRate,rateLimitedRate,meanMs,p50Ms,p90Ms,p99Ms,maxMs\n");
+        List<Map<String, Object>> rows = new ArrayList<>((List<Map<String, Object>>) report.get("scenarios"));
+        rows.add((Map<String, Object>) report.get("total"));
+        for (Map<String, Object> row : rows) {
+            csv.append(String.join(",", row.values().stream().map(String::valueOf).toList())).append('\n');
+        }
+        Path csvFile = dir.resolve("summary-" + stamp + ".csv");
+        Files.writeString(csvFile, csv);
+
+        System.out.println();
+        System.out.print(csv);
+        System.out.println("📈 Saturation: " + report.get("saturation"));
+        System.out.println("✅ Reports: " + json + " , " + csvFile);
+    }
+
+    static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            mix.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        return mix;
+    }
+
+    // Distinct client address per user so the per-IP rate limit applies per user, as in production
+    private static String forwardedFor(int user) {
+        return "10.77." + (user / 250) + "." + (user % 250 + 1);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.email.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Scrapes /actuator/prometheus once a second while the load runs and keeps the pool and thread
+// gauges that show where the app saturates first: Hikari connections (active vs. waiting),
+// busy Tomcat workers, live JVM threads and in-flight provider calls. Series with several
+// label sets (one per pool, per provider) are summed.
+class SaturationSampler implements AutoCloseable {
+
+    static final List<String> GAUGES = List.of(
+            "hikaricp_connections_active",
+            "hikaricp_connections_pending",
+            "hikaricp_connections_max",
+            "tomcat_threads_busy_threads",
+            "tomcat_threads_config_max_threads",
+            "jvm_threads_live_threads",
+            "email_provider_inflight");
+
+    private final HttpClient client;
+    private final URI prometheus;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "saturation-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Map<String, Double>> samples = new ArrayList<>();
+
+    SaturationSampler(HttpClient client, String baseUrl) {
+        this.client = client;
+        this.prometheus = URI.create(baseUrl + "/actuator/prometheus");
+    }
+
+    SaturationSampler start() {
+        scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // Per-second rows, for plotting saturation against the load curve
+    synchronized List<Map<String, Double>> samples() {
+        return new ArrayList<>(samples);
+    }
+
+    // Mean and peak of each gauge over the run
+    synchronized Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (String gauge : GAUGES) {
+            List<Double> values = samples.stream().map(row -> row.get(gauge)).filter(v -> v != null).toList();
+            if (values.isEmpty()) {
+                continue;
+            }
+            summary.put(gauge, Map.of(
+                    "mean", Math.round(values.stream().mapToDouble(Double::doubleValue).average().orElse(0) * 100.0) / 100.0,
+                    "max", values.stream().mapToDouble(Double::doubleValue).max().orElse(0)));
+        }
+        return summary;
+    }
+
+    private void sample() {
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(prometheus)
+                    .timeout(Duration.ofSeconds(5)).GET().build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return;
+            }
+            Map<String, Double> row = new LinkedHashMap<>();
+            row.put("epochSecond", (double) (System.currentTimeMillis() / 1000));
+            for (String line : response.body().split("\n")) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                int nameEnd = line.indexOf('{') >= 0 ? line.indexOf('{') : line.indexOf(' ');
+                if (nameEnd <= 0) {
+                    continue;
+                }
+                String name = line.substring(0, nameEnd);
+                if (GAUGES.contains(name)) {
+                    double value = Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+                    row.merge(name, value, Double::sum);
+                }
+            }
+            synchronized (this) {
+                samples.add(row);
+            }
+        } catch (Exception e) {
+            // A missed sample is fine; the app may be busy or shutting down
+        }
+    }
+}
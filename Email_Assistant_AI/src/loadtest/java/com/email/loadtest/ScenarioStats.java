@@ -0,0 +1,75 @@
+package com.email.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Outcomes of one scenario over the measured window. Every latency is kept (a run is minutes,
+// not hours), so percentiles are exact rather than bucketed.
+class ScenarioStats {
+
+    private final String name;
+    private final ConcurrentLinkedQueue<Long> latenciesMicros = new ConcurrentLinkedQueue<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    ScenarioStats(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    // 429 counts separately from errors: it is the app shedding load on purpose
+    void record(long micros, int status) {
+        latenciesMicros.add(micros);
+        if (status == 429) {
+            rateLimited.increment();
+        } else if (status >= 400 || status <= 0) {
+            errors.increment();
+        }
+    }
+
+    Map<String, Object> summary(double seconds) {
+        long[] sorted = latenciesMicros.stream().mapToLong(Long::longValue).sorted().toArray();
+        long count = sorted.length;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("scenario", name);
+        summary.put("requests", count);
+        summary.put("throughputPerSecond", round(count / Math.max(seconds, 0.001)));
+        summary.put("errorRate", round(count > 0 ? errors.sum() / (double) count : 0.0));
+        summary.put("rateLimitedRate", round(count > 0 ? rateLimited.sum() / (double) count : 0.0));
+        summary.put("meanMs", round(count > 0 ? Arrays.stream(sorted).average().orElse(0) / 1000.0 : 0.0));
+        summary.put("p50Ms", percentileMillis(sorted, 0.50));
+        summary.put("p90Ms", percentileMillis(sorted, 0.90));
+        summary.put("p99Ms", percentileMillis(sorted, 0.99));
+        summary.put("maxMs", count > 0 ? round(sorted[sorted.length - 1] / 1000.0) : 0.0);
+        return summary;
+    }
+
+    static ScenarioStats merge(String name, Iterable<ScenarioStats> all) {
+        ScenarioStats merged = new ScenarioStats(name);
+        for (ScenarioStats stats : all) {
+            merged.latenciesMicros.addAll(stats.latenciesMicros);
+            merged.errors.add(stats.errors.sum());
+            merged.rateLimited.add(stats.rateLimited.sum());
+        }
+        return merged;
+    }
+
+    // Nearest-rank percentile
+    private static double percentileMillis(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length) - 1;
+        return round(sorted[Math.max(0, Math.min(rank, sorted.length - 1))] / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -3,5 +3,10 @@ package com.email.ai;
 public interface EmailAIProvider {
     String generateReply(String prompt);
     String getProviderName();
-}
 
+    // Prompt split into a fixed preamble and a per-request body; providers that can reuse an
+    // already evaluated preamble override this, everyone else just gets the concatenation
+    default String generateReply(String preamble, String body) {
+        return generateReply(preamble + body);
+    }
+}
@@ -0,0 +1,6 @@
+package com.email.ai;
+
+public interface EmailEmbedder {
+    float[] embed(String text);
+    String getEmbedderName();
+}
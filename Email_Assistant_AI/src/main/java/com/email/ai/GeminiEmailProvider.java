@@ -10,12 +10,14 @@ import org.springframework.web.reactive.function.client.WebClient;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class GeminiEmailProvider implements EmailAIProvider {
 
     private final WebClient.Builder webClientBuilder;
+    private final ProviderQuotaCoordinator quota;
 
     @Value("${gemini.api.url}")
     private String geminiApiUrl;
@@ -23,6 +25,9 @@ public class GeminiEmailProvider implements EmailAIProvider {
     @Value("${gemini.api.key}")
     private String geminiApiKey;
 
+    @Value("${gemini.timeout:20s}")
+    private Duration timeout;
+
     private WebClient webClient;
 
     @jakarta.annotation.PostConstruct
@@ -41,15 +46,35 @@ public class GeminiEmailProvider implements EmailAIProvider {
                 "contents", List.of(Map.of("parts", List.of(Map.of("text", prompt))))
         );
 
-        String response = webClient.post()
-                .uri(geminiApiUrl + "?key=" + geminiApiKey)
-                .header("Content-Type", "application/json")
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block(Duration.ofSeconds(20));
+        // ✅ Cluster-wide Gemini quota; no output cap on this request, so assume a long answer
+        Optional<ProviderQuotaCoordinator.Permit> permit;
+        try {
+            permit = quota.acquire(getProviderName(), geminiApiKey, prompt.length() / 4 + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error processing Gemini request: interrupted";
+        }
+        if (permit.isEmpty()) {
+            return "Rate limited: the Gemini quota shared by all nodes is used up. Try again in a minute.";
+        }
 
-        return extractGeminiText(response);
+        // ✅ Settled even when block() throws; unknown usage keeps the whole estimate spent
+        TokenUsage used = null;
+        try {
+            String response = webClient.post()
+                    .uri(geminiApiUrl + "?key=" + geminiApiKey)
+                    .header("Content-Type", "application/json")
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block(RequestDeadline.timeout(timeout));
+
+            String text = extractGeminiText(response);
+            used = TokenUsage.peek();
+            return text;
+        } finally {
+            permit.get().settle(used);
+        }
     }
 
     private String extractGeminiText(String response) {
@@ -61,6 +86,11 @@ public class GeminiEmailProvider implements EmailAIProvider {
                 return "Gemini API Error: " + root.path("error").path("message").asText();
             }
 
+            // ✅ Thinking tokens are billed as output, so they count as completion tokens
+            JsonNode usage = root.path("usageMetadata");
+            TokenUsage.report(usage.path("promptTokenCount").asLong(0),
+                    usage.path("candidatesTokenCount").asLong(0) + usage.path("thoughtsTokenCount").asLong(0));
+
             JsonNode candidates = root.path("candidates");
             if (!candidates.isArray() || candidates.isEmpty()) {
                 return "No response generated by Gemini.";
@@ -0,0 +1,71 @@
+package com.email.ai;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Local fallback embedder: character trigrams + word unigrams hashed into a fixed-size,
+// L2-normalised vector (signed feature hashing). No model, no network call.
+@Component
+public class HashedNgramEmbedder implements EmailEmbedder {
+
+    @Value("${email.reuse.hashed-dimensions:512}")
+    private int dimensions;
+
+    @Override
+    public String getEmbedderName() {
+        return "HASHED";
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        if (text == null || text.isBlank()) {
+            vector[0] = 1f;
+            return vector;
+        }
+
+        String normalized = text.toLowerCase().replaceAll("\\s+", " ").trim();
+
+        // ✅ Character trigrams capture near-duplicates with small edits
+        String padded = " " + normalized + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            addFeature(vector, padded.substring(i, i + 3), 1f);
+        }
+
+        // ✅ Word unigrams weigh shared vocabulary a bit higher
+        for (String word : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() > 2) {
+                addFeature(vector, "w:" + word, 2f);
+            }
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            vector[0] = 1f;
+            return vector;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inv;
+        }
+        return vector;
+    }
+
+    private void addFeature(float[] vector, String feature, float weight) {
+        int h = mix(feature.hashCode());
+        int bucket = Math.floorMod(h, vector.length);
+        vector[bucket] += (h & 0x40000000) == 0 ? weight : -weight;
+    }
+
+    private static int mix(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        h *= 0xc2b2ae35;
+        h ^= (h >>> 16);
+        return h;
+    }
+}
@@ -7,11 +7,18 @@ import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;  // ✅ correct
 
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -25,10 +32,38 @@ public class OllamaEmailProvider implements EmailAIProvider {
     @Value("${ollama.model:codellama}")   // default to codellama
     private String modelName;
 
+    // ✅ How long Ollama keeps the model loaded after a request (Ollama duration, e.g. 30m, -1 = forever)
+    @Value("${ollama.keep-alive:30m}")
+    private String keepAlive;
+
+    @Value("${ollama.residency.enabled:true}")
+    private boolean residencyEnabled;
+
+    @Value("${ollama.context-cache.max-entries:16}")
+    private int contextCacheSize;
+
+    // ✅ Per request (CPU inference is slow); a request deadline shortens it further
+    @Value("${ollama.timeout:60s}")
+    private Duration timeout;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private volatile boolean reachable = true;
+
+    // Preamble text → Ollama "context" (token ids) returned after evaluating it once
+    private Map<String, List<Integer>> preambleContexts;
 
     @PostConstruct
     public void init() {
         this.webClient = webClientBuilder.build();
+        this.preambleContexts = Collections.synchronizedMap(new LinkedHashMap<>(32, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Integer>> eldest) {
+                return size() > contextCacheSize;
+            }
+        });
+        if (residencyEnabled) {
+            CompletableFuture.runAsync(this::keepWarm);  // ✅ load the model before the first user request
+        }
     }
 
     @Override
@@ -38,26 +73,115 @@ public class OllamaEmailProvider implements EmailAIProvider {
 
     @Override
     public String generateReply(String prompt) {
-        Map<String, Object> body = Map.of(
-                "model", modelName,
-                "prompt", prompt,
-                "stream", false
-        );
+        JsonNode root = generate(prompt, null);
+        return root != null ? root.path("response").asText("No response generated by Ollama.")
+                : "Error processing Ollama response: empty body";
+    }
 
-        String response = webClient.post()
-                .uri(ollamaApiUrl)
-                .header("Content-Type", "application/json")
-                .bodyValue(body)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block(Duration.ofSeconds(60));
+    // ✅ The preamble is evaluated once; later calls send its cached context and only the body
+    @Override
+    public String generateReply(String preamble, String body) {
+        if (preamble == null || preamble.isBlank()) {
+            return generateReply(body);
+        }
+        List<Integer> context = preambleContexts.get(preamble);
+        if (context == null) {
+            context = primeContext(preamble);
+            if (context == null) {
+                return generateReply(preamble + body);
+            }
+            preambleContexts.put(preamble, context);
+        }
+        JsonNode root = generate(body, context);
+        return root != null ? root.path("response").asText("No response generated by Ollama.")
+                : "Error processing Ollama response: empty body";
+    }
+
+    // Empty prompt = load (or keep) the model without generating anything
+    @Scheduled(fixedDelayString = "${ollama.keep-warm-interval-ms:240000}", initialDelay = 60000)
+    public void keepWarm() {
+        if (!residencyEnabled) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            post(Map.of("model", modelName, "prompt", "", "keep_alive", keepAlive, "stream", false),
+                    Duration.ofSeconds(120));
+            if (!reachable) {
+                System.out.println("✅ Ollama reachable again");
+            }
+            reachable = true;
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            if (ms > 1000) {
+                System.out.println("🔥 Ollama model " + modelName + " loaded in " + ms + " ms");
+            }
+        } catch (Exception e) {
+            if (reachable) {
+                System.out.println("⚠️ Ollama keep-warm failed: " + e.getMessage());
+            }
+            reachable = false;
+        }
+    }
+
+    public int cachedPreambles() {
+        return preambleContexts.size();
+    }
 
+    // num_predict 0: evaluate the prompt only, keep the resulting context
+    private List<Integer> primeContext(String preamble) {
+        try {
+            Map<String, Object> body = new HashMap<>();
+            body.put("model", modelName);
+            body.put("prompt", preamble);
+            body.put("stream", false);
+            body.put("keep_alive", keepAlive);
+            body.put("options", Map.of("num_predict", 0));
+            JsonNode root = mapper.readTree(post(body, RequestDeadline.timeout(timeout)));
+            TokenUsage.report(root.path("prompt_eval_count").asLong(0), 0);
+            JsonNode context = root.path("context");
+            if (!context.isArray() || context.isEmpty()) {
+                return null;
+            }
+            List<Integer> tokens = new ArrayList<>(context.size());
+            context.forEach(token -> tokens.add(token.asInt()));
+            return List.copyOf(tokens);
+        } catch (Exception e) {
+            System.out.println("⚠️ Ollama preamble priming failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private JsonNode generate(String prompt, List<Integer> context) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", modelName);
+        body.put("prompt", prompt);
+        body.put("stream", false);
+        body.put("keep_alive", keepAlive);
+        if (context != null) {
+            body.put("context", context);
+        }
+
+        String response = post(body, RequestDeadline.timeout(timeout));
         try {
-            ObjectMapper mapper = new ObjectMapper();
             JsonNode root = mapper.readTree(response);
-            return root.path("response").asText("No response generated by Ollama.");
+            TokenUsage.report(root.path("prompt_eval_count").asLong(0), root.path("eval_count").asLong(0));
+            long loadMs = root.path("load_duration").asLong(0) / 1_000_000;
+            if (loadMs > 1000) {
+                System.out.println("🥶 Ollama cold start: model load took " + loadMs + " ms");
+            }
+            return root;
         } catch (Exception e) {
-            return "Error processing Ollama response: " + e.getMessage();
+            return mapper.createObjectNode().put("response", "Error processing Ollama response: " + e.getMessage());
         }
     }
+
+    private String post(Map<String, Object> body, Duration timeout) {
+        return webClient.post()
+                .uri(ollamaApiUrl)
+                .header("Content-Type", "application/json")
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .block(timeout);
+    }
 }
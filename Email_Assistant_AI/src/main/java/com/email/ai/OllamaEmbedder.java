@@ -0,0 +1,66 @@
+package com.email.ai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+public class OllamaEmbedder implements EmailEmbedder {
+
+    private final WebClient.Builder webClientBuilder;
+    private WebClient webClient;
+
+    @Value("${ollama.embeddings.url:http://localhost:11434/api/embeddings}")
+    private String embeddingsUrl;
+
+    @Value("${ollama.embedding.model:nomic-embed-text}")
+    private String embeddingModel;
+
+    @PostConstruct
+    public void init() {
+        this.webClient = webClientBuilder.build();
+    }
+
+    @Override
+    public String getEmbedderName() {
+        return "OLLAMA";
+    }
+
+    @Override
+    public float[] embed(String text) {
+        Map<String, Object> body = Map.of(
+                "model", embeddingModel,
+                "prompt", text != null ? text : ""
+        );
+
+        String response = webClient.post()
+                .uri(embeddingsUrl)
+                .header("Content-Type", "application/json")
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .block(RequestDeadline.timeout(Duration.ofSeconds(10)));
+
+        try {
+            JsonNode embedding = new ObjectMapper().readTree(response).path("embedding");
+            if (!embedding.isArray() || embedding.isEmpty()) {
+                throw new IllegalStateException("Ollama returned no embedding");
+            }
+            float[] vector = new float[embedding.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) embedding.get(i).asDouble();
+            }
+            return vector;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error processing Ollama embedding: " + e.getMessage(), e);
+        }
+    }
+}
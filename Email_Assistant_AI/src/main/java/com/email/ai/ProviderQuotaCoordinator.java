@@ -0,0 +1,326 @@
+package com.email.ai;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cluster-wide provider quota: one token bucket per provider + API key in Redis (requests and
+// tokens, refilled from Redis server time so node clocks don't matter). Nodes lease small
+// batches of permits and spend them locally without a round trip; whatever is left when the
+// lease expires (or on shutdown) goes back to the bucket. The burst is the headroom share of the
+// limit, raised to one lease batch so a batch can actually be granted (never above half the
+// limit), and the refill rate is whatever the limit leaves after the burst, so any 60 s window
+// sees at most burst + rate × 60 s ≤ the limit, however many nodes share the key.
+@Component
+@RequiredArgsConstructor
+public class ProviderQuotaCoordinator {
+
+    // KEYS[1] bucket; ARGV: reqCap, reqPerMs, tokCap (0 = no token limit), tokPerMs,
+    //                       wantReq, wantTok, needReq, needTok, ttlMs
+    // → {grantedRequests, grantedTokens, waitMs}; grants nothing unless the need is covered
+    private static final DefaultRedisScript<List> LEASE = new DefaultRedisScript<>("""
+            redis.replicate_commands()
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local reqCap, reqRate = tonumber(ARGV[1]), tonumber(ARGV[2])
+            local tokCap, tokRate = tonumber(ARGV[3]), tonumber(ARGV[4])
+            local b = redis.call('HMGET', KEYS[1], 'req', 'tok', 'ts')
+            local ts = tonumber(b[3]) or now
+            local elapsed = math.max(0, now - ts)
+            local req = math.min(reqCap, (tonumber(b[1]) or reqCap) + elapsed * reqRate)
+            local tok = math.min(tokCap, (tonumber(b[2]) or tokCap) + elapsed * tokRate)
+            local needReq, needTok = tonumber(ARGV[7]), tonumber(ARGV[8])
+            local grantReq, grantTok, wait = 0, 0, 0
+            if req >= needReq and (tokCap <= 0 or tok >= needTok) then
+              grantReq = math.min(tonumber(ARGV[5]), math.floor(req))
+              if tokCap > 0 then grantTok = math.min(tonumber(ARGV[6]), math.floor(tok)) end
+              req = req - grantReq
+              tok = tok - grantTok
+            else
+              wait = math.max(0, needReq - req) / reqRate
+              if tokCap > 0 then wait = math.max(wait, math.max(0, needTok - tok) / tokRate) end
+              wait = math.max(1, math.ceil(wait))
+            end
+            redis.call('HSET', KEYS[1], 'req', tostring(req), 'tok', tostring(tok), 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], ARGV[9])
+            return {grantReq, grantTok, wait}
+            """, List.class);
+
+    // KEYS[1] bucket; ARGV: requests, tokens, reqCap, tokCap — unused lease back, capped at capacity
+    private static final DefaultRedisScript<Long> RETURN = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end
+            local b = redis.call('HMGET', KEYS[1], 'req', 'tok')
+            redis.call('HSET', KEYS[1],
+              'req', tostring(math.min(tonumber(ARGV[3]), tonumber(b[1]) + tonumber(ARGV[1]))),
+              'tok', tostring(math.min(tonumber(ARGV[4]), tonumber(b[2]) + tonumber(ARGV[2]))))
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redis;
+    private final MeterRegistry registry;
+    private final Environment environment;
+
+    @Value("${email.quota.enabled:true}")
+    private boolean enabled;
+
+    @Value("${email.quota.headroom:0.1}")
+    private double headroom;
+
+    @Value("${email.quota.lease-requests:2}")
+    private int leaseRequests;
+
+    @Value("${email.quota.lease-tokens:20000}")
+    private long leaseTokens;
+
+    @Value("${email.quota.lease-ttl-ms:5000}")
+    private long leaseTtlMs;
+
+    @Value("${email.quota.max-wait-ms:30000}")
+    private long maxWaitMs;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public final class Permit {
+        private final Bucket bucket;
+        private final long estimatedTokens;
+
+        private Permit(Bucket bucket, long estimatedTokens) {
+            this.bucket = bucket;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        // ✅ Tokens estimated but not used go back to the local lease (unknown usage: keep the estimate)
+        public void settle(TokenUsage actual) {
+            if (bucket == null || bucket.tokenCapacity <= 0 || actual == null
+                    || actual.totalTokens() >= estimatedTokens) {
+                return;
+            }
+            synchronized (bucket) {
+                bucket.localTokens += estimatedTokens - actual.totalTokens();
+            }
+        }
+    }
+
+    // One permit per upstream request (each retry is a request too). Empty if the cluster-wide
+    // quota has no room within max-wait-ms.
+    public Optional<Permit> acquire(String provider, String apiKey, long estimatedTokens) throws InterruptedException {
+        Bucket bucket = enabled ? bucket(provider, apiKey) : null;
+        if (bucket == null) {
+            return Optional.of(new Permit(null, 0));
+        }
+        if (bucket.tokenCapacity > 0) {
+            estimatedTokens = Math.min(estimatedTokens, (long) bucket.tokenCapacity);  // must fit a full bucket
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(RequestDeadline.remainingMillis(maxWaitMs));
+        while (true) {
+            long needRequests;
+            long needTokens;
+            synchronized (bucket) {
+                // ✅ One lease round trip per bucket at a time; the others wait for its result
+                while (true) {
+                    if (bucket.takeLocal(estimatedTokens)) {
+                        return granted(bucket, estimatedTokens, start);
+                    }
+                    if (!bucket.leasing) {
+                        break;
+                    }
+                    long leftNanos = deadline - System.nanoTime();
+                    if (leftNanos <= 0) {
+                        return timedOut(provider, start);
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(bucket, leftNanos);
+                }
+                bucket.leasing = true;
+                needRequests = bucket.localRequests >= 1 ? 0 : 1;
+                needTokens = bucket.tokenCapacity > 0 ? Math.max(0, estimatedTokens - bucket.localTokens) : 0;
+            }
+
+            // Redis round trip outside the monitor: settle() and local grants never wait on it
+            long waitMs = -1;
+            boolean took = false;
+            try {
+                waitMs = lease(bucket, needRequests, needTokens);
+            } catch (RuntimeException e) {
+                // Redis down: don't take the whole app with it, fall back to node-local behaviour
+                System.out.println("⚠️ Quota lease failed for " + provider + ", allowing call: " + e.getMessage());
+                registry.counter("email.quota.leases", "provider", provider, "outcome", "error").increment();
+                return Optional.of(new Permit(null, 0));
+            } finally {
+                synchronized (bucket) {
+                    bucket.leasing = false;
+                    took = waitMs == 0 && bucket.takeLocal(estimatedTokens);
+                    bucket.notifyAll();
+                }
+            }
+            if (took) {
+                return granted(bucket, estimatedTokens, start);
+            }
+            long sleepMs = Math.max(waitMs, 10) + ThreadLocalRandom.current().nextLong(25);  // de-sync the nodes
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleepMs) > deadline) {
+                return timedOut(provider, start);
+            }
+            Thread.sleep(sleepMs);
+        }
+    }
+
+    // ✅ Unused permits from expired leases go back to the cluster
+    @Scheduled(fixedDelayString = "${email.quota.lease-ttl-ms:5000}")
+    public void returnExpiredLeases() {
+        long now = System.currentTimeMillis();
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.leaseExpiresAt <= now) {
+                giveBack(bucket);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void returnAllLeases() {
+        for (Bucket bucket : buckets.values()) {
+            giveBack(bucket);
+        }
+    }
+
+    private Optional<Permit> granted(Bucket bucket, long estimatedTokens, long start) {
+        registry.timer("email.quota.wait", "provider", bucket.provider, "outcome", "granted")
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return Optional.of(new Permit(bucket, estimatedTokens));
+    }
+
+    private Optional<Permit> timedOut(String provider, long start) {
+        registry.timer("email.quota.wait", "provider", provider, "outcome", "timeout")
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return Optional.empty();
+    }
+
+    // Called without the bucket monitor (the caller owns bucket.leasing). Returns 0 when the
+    // local lease was topped up, else ms to wait.
+    private long lease(Bucket bucket, long needRequests, long needTokens) {
+        List<?> result = redis.execute(LEASE, List.of(bucket.redisKey),
+                String.valueOf(bucket.requestCapacity), String.valueOf(bucket.requestsPerMs),
+                String.valueOf(bucket.tokenCapacity), String.valueOf(bucket.tokensPerMs),
+                String.valueOf(Math.max(leaseRequests, needRequests)), String.valueOf(Math.max(leaseTokens, needTokens)),
+                String.valueOf(needRequests), String.valueOf(needTokens),
+                String.valueOf(TimeUnit.MINUTES.toMillis(10)));
+        long grantedRequests = ((Number) result.get(0)).longValue();
+        long grantedTokens = ((Number) result.get(1)).longValue();
+        long waitMs = ((Number) result.get(2)).longValue();
+        if (waitMs > 0) {
+            registry.counter("email.quota.leases", "provider", bucket.provider, "outcome", "denied").increment();
+            return waitMs;
+        }
+        registry.counter("email.quota.leases", "provider", bucket.provider, "outcome", "granted").increment();
+        synchronized (bucket) {
+            bucket.localRequests += grantedRequests;
+            bucket.localTokens += grantedTokens;
+            bucket.leaseExpiresAt = System.currentTimeMillis() + leaseTtlMs;
+        }
+        return 0;
+    }
+
+    // Takes the local lease under the monitor, returns it to Redis outside of it
+    private void giveBack(Bucket bucket) {
+        long requests;
+        long tokens;
+        synchronized (bucket) {
+            requests = Math.max(bucket.localRequests, 0);
+            tokens = Math.max(bucket.localTokens, 0);
+            bucket.localRequests = 0;
+            bucket.localTokens = 0;
+        }
+        if (requests == 0 && tokens == 0) {
+            return;
+        }
+        try {
+            redis.execute(RETURN, List.of(bucket.redisKey), String.valueOf(requests), String.valueOf(tokens),
+                    String.valueOf(bucket.requestCapacity), String.valueOf(bucket.tokenCapacity));
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Could not return quota lease for " + bucket.provider + ": " + e.getMessage());
+        }
+    }
+
+    // email.quota.<provider>.requests-per-minute / .tokens-per-minute; no RPM → not coordinated
+    private Bucket bucket(String provider, String apiKey) {
+        String name = provider.toLowerCase();
+        return buckets.computeIfAbsent(name + ":" + apiKey, key -> {
+            int rpm = environment.getProperty("email.quota." + name + ".requests-per-minute", Integer.class, 0);
+            if (rpm <= 0) {
+                return null;
+            }
+            long tpm = environment.getProperty("email.quota." + name + ".tokens-per-minute", Long.class, 0L);
+            return new Bucket(provider, "quota:" + name + ":" + keyId(apiKey), rpm, tpm, headroom,
+                    leaseRequests, leaseTokens);
+        });
+    }
+
+    // The API key itself never goes to Redis
+    private static String keyId(String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(String.valueOf(apiKey).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Bucket {
+        final String provider;
+        final String redisKey;
+        final double requestCapacity;
+        final double requestsPerMs;
+        final double tokenCapacity;
+        final double tokensPerMs;
+        // Local lease, guarded by the bucket monitor
+        long localRequests;
+        long localTokens;
+        volatile long leaseExpiresAt;
+        boolean leasing;  // a lease round trip to Redis is in flight
+
+        Bucket(String provider, String redisKey, int requestsPerMinute, long tokensPerMinute, double headroom,
+               long leaseRequests, long leaseTokens) {
+            this.provider = provider;
+            this.redisKey = redisKey;
+            double minute = TimeUnit.MINUTES.toMillis(1);
+            this.requestCapacity = burst(requestsPerMinute, headroom, leaseRequests);
+            this.requestsPerMs = Math.min(requestsPerMinute * (1 - headroom), requestsPerMinute - requestCapacity) / minute;
+            this.tokenCapacity = tokensPerMinute > 0 ? burst(tokensPerMinute, headroom, leaseTokens) : 0;
+            this.tokensPerMs = tokensPerMinute > 0
+                    ? Math.min(tokensPerMinute * (1 - headroom), tokensPerMinute - tokenCapacity) / minute : 0;
+        }
+
+        // e.g. 15 RPM, headroom 0.1, lease 2: floor(1.5) = 1 would never fill a lease, so 2 (refill 13/min)
+        static double burst(double perMinute, double headroom, long lease) {
+            return Math.max(1, Math.min(Math.max(Math.floor(perMinute * headroom), lease), Math.floor(perMinute / 2)));
+        }
+
+        boolean takeLocal(long estimatedTokens) {
+            if (localRequests < 1 || (tokenCapacity > 0 && localTokens < estimatedTokens)) {
+                return false;
+            }
+            localRequests--;
+            if (tokenCapacity > 0) {
+                localTokens -= estimatedTokens;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.email.ai;
+
+import java.time.Duration;
+
+// How long the current request may still run, carried on the thread like TokenUsage. Every
+// stage that waits (scheduler queue, quota lease, retry backoff, the provider HTTP call) takes
+// at most what is left through timeout()/remainingMillis(), so retries can never add up to
+// more than the client is willing to wait. A client that hangs up cancels the deadline and the
+// next stage stops instead of spending quota on an answer nobody will read. Threads without a
+// deadline (jobs, batch workers, scheduled tasks) keep each stage's own cap.
+public final class RequestDeadline {
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private volatile String cancelReason;
+
+    private RequestDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static RequestDeadline after(Duration budget) {
+        return new RequestDeadline(System.nanoTime() + budget.toNanos());
+    }
+
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    public Scope open() {
+        RequestDeadline previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    // Client went away or the request timed out: whatever is still running should stop
+    public void cancel(String reason) {
+        if (cancelReason == null) {
+            cancelReason = reason;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    public boolean isOver() {
+        return cancelReason != null || deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public void check() {
+        if (cancelReason != null) {
+            throw new ExceededException("Request cancelled: " + cancelReason);
+        }
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            throw new ExceededException("Request deadline exceeded");
+        }
+    }
+
+    // ✅ Throws if the request on this thread was cancelled or is out of time
+    public static void checkCurrent() {
+        RequestDeadline deadline = CURRENT.get();
+        if (deadline != null) {
+            deadline.check();
+        }
+    }
+
+    // The stage's own cap, or what is left of the request if that is less
+    public static Duration timeout(Duration stageCap) {
+        RequestDeadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return stageCap;
+        }
+        deadline.check();
+        Duration remaining = deadline.remaining();
+        return remaining.compareTo(stageCap) < 0 ? remaining : stageCap;
+    }
+
+    public static long remainingMillis(long stageCapMs) {
+        return timeout(Duration.ofMillis(stageCapMs)).toMillis();
+    }
+
+    // Backoff between retries; a retry that would start after the deadline is not worth waiting for
+    public static void sleep(long millis) throws InterruptedException {
+        if (millis <= 0) {
+            return;
+        }
+        if (remainingMillis(Long.MAX_VALUE) < millis) {
+            throw new ExceededException("Request deadline leaves no time for another attempt");
+        }
+        Thread.sleep(millis);
+    }
+
+    public static class ExceededException extends RuntimeException {
+        public ExceededException(String message) {
+            super(message);
+        }
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,39 @@
+package com.email.ai;
+
+// Token counts from a provider's usage metadata (Gemini usageMetadata, Ollama
+// prompt_eval_count/eval_count). Providers report() after parsing a response; the caller
+// that wrapped the call take()s it on the same thread. Reports add up, so a call that
+// needed two requests (Ollama preamble priming + generation) is counted in full.
+public record TokenUsage(long promptTokens, long completionTokens) {
+
+    private static final ThreadLocal<TokenUsage> CURRENT = new ThreadLocal<>();
+
+    public long totalTokens() {
+        return promptTokens + completionTokens;
+    }
+
+    public TokenUsage plus(TokenUsage other) {
+        return new TokenUsage(promptTokens + other.promptTokens, completionTokens + other.completionTokens);
+    }
+
+    public static void report(long promptTokens, long completionTokens) {
+        if (promptTokens <= 0 && completionTokens <= 0) {
+            return;
+        }
+        TokenUsage usage = new TokenUsage(Math.max(promptTokens, 0), Math.max(completionTokens, 0));
+        TokenUsage previous = CURRENT.get();
+        CURRENT.set(previous != null ? previous.plus(usage) : usage);
+    }
+
+    // What has been reported on this thread so far, without clearing it
+    public static TokenUsage peek() {
+        return CURRENT.get();
+    }
+
+    // Returns and clears what was reported on this thread since the last take()
+    public static TokenUsage take() {
+        TokenUsage usage = CURRENT.get();
+        CURRENT.remove();
+        return usage;
+    }
+}
@@ -1,11 +1,15 @@
 package com.email.config;
 
+import com.email.service.ConcurrencyLimitFilter;
 import com.email.service.JwtAuthenticationFilter;
 import com.email.service.RateLimitFilter;
 import com.email.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -17,6 +21,7 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 import java.util.List;
 
@@ -27,7 +32,9 @@ public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     private final RateLimitFilter rateLimitFilter;
+    private final ConcurrencyLimitFilter concurrencyLimitFilter;
     private final UserDetailsServiceImpl userDetailsServiceImpl;
+    private final Environment environment;
 
     @Bean
     public PasswordEncoder passwordEncoder() {
@@ -53,17 +60,29 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))  // ✅ enable CORS
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // ✅ Async dispatch carries the result of a request that was authorized on the way in
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/auth/**","/api/email/send-email","/api/user/**" ).permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/email/send-email/*").permitAll()  // delivery status by UUID
+                        .requestMatchers(managementPort()).permitAll()  // probes + scrape, internal port only
                         .requestMatchers("/api/email/**").authenticated()// ✅ Allow email endpoints
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(rateLimitFilter, UsernamePasswordAuthenticationFilter.class)  // ✅ Rate limit first
-                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(concurrencyLimitFilter, JwtAuthenticationFilter.class);  // ✅ Shed LLM load after auth
 
         return http.build();
     }
 
 
+    // ✅ Actuator runs on its own port (management.server.port, bound to an internal address), so
+    // the scrape never goes through the public one. Without a separate port nothing matches and
+    // /actuator/** needs a login like everything else.
+    private RequestMatcher managementPort() {
+        return request -> request.getLocalPort() == environment.getProperty("local.management.port", Integer.class, -1);
+    }
+
     @Bean
     public org.springframework.web.cors.CorsConfigurationSource corsConfigurationSource() {
         org.springframework.web.cors.CorsConfiguration config = new org.springframework.web.cors.CorsConfiguration();
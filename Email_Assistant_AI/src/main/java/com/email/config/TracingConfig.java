@@ -0,0 +1,22 @@
+package com.email.config;
+
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@Configuration
+public class TracingConfig {
+
+    // ✅ Picked up by Boot's OpenTelemetry auto-configuration (batch span processor)
+    @Bean
+    @ConditionalOnProperty(name = "email.tracing.file.enabled", havingValue = "true", matchIfMissing = true)
+    public SpanExporter fileSpanExporter(@Value("${email.tracing.file.path:./traces/spans.jsonl}") String path,
+                                         @Value("${email.tracing.file.max-size:50MB}") DataSize maxSize) {
+        return new FileSpanExporter(Path.of(path), maxSize.toBytes());
+    }
+}
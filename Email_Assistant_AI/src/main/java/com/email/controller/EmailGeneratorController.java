@@ -2,18 +2,42 @@ package com.email.controller;
 
 import com.email.dto.*;
 import com.email.entity.EmailHistory;
+import com.email.entity.OutboundEmail;
 import com.email.service.EmailAnalyticsService;
 import com.email.service.EmailGeneratorService;
 import com.email.service.EmailHistoryService;
-import com.email.service.EmailSender;
+import com.email.service.HistoryExportService;
+import com.email.service.EmailSearchService;
+import com.email.service.BulkMailService;
+import com.email.service.BatchEmailService;
+import com.email.service.GenerationJobService;
+import com.email.service.MailboxImportService;
+import com.email.service.EmailPreprocessor;
+import com.email.service.ConversationThreadService;
+import com.email.service.OutboundMailService;
+import com.email.service.TokenUsageService;
+import com.email.service.AdminAccess;
+import com.email.service.FlightRecorderService;
+import com.email.service.RequestDeadlineService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/email")
@@ -23,51 +47,209 @@ public class EmailGeneratorController {
     private final EmailGeneratorService emailGeneratorService;
     private final EmailHistoryService historyService;
     private final EmailAnalyticsService analyticsService;
-    private final EmailSender emailSender;
-
+    private final OutboundMailService outboundMailService;
+    private final BulkMailService bulkMailService;
+    private final EmailSearchService searchService;
+    private final HistoryExportService exportService;
+    private final BatchEmailService batchEmailService;
+    private final GenerationJobService jobService;
+    private final MailboxImportService importService;
+    private final EmailPreprocessor preprocessor;
+    private final ConversationThreadService threadService;
+    private final TokenUsageService usageService;
+    private final AdminAccess adminAccess;
+    private final FlightRecorderService flightRecorder;
+    private final RequestDeadlineService deadlines;
+
+    // ✅ LLM-backed endpoints run under a request deadline (X-Request-Timeout-Ms or the endpoint
+    // default); a client that disconnects cancels the provider call instead of waiting it out
     @PostMapping("/generate")
-    public ResponseEntity<String> generateEmail(@RequestBody Object rawRequest, Authentication auth) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
+    public WebAsyncTask<ResponseEntity<String>> generateEmail(@RequestBody Object rawRequest, Authentication auth,
+                                                              HttpServletRequest httpRequest) {
+        return deadlines.withDeadline(httpRequest, () -> {
+            ObjectMapper mapper = new ObjectMapper();
+            try {
+
+                AdvancedEmailRequest advRequest = mapper.convertValue(rawRequest, AdvancedEmailRequest.class);
+                return ResponseEntity.ok(emailGeneratorService.processMode(advRequest, auth));  // ✅ Pass auth
+            } catch (IllegalArgumentException e) {
+                EmailRequest legacyRequest = mapper.convertValue(rawRequest, EmailRequest.class);
+                return ResponseEntity.ok(emailGeneratorService.generateEmailReply(legacyRequest, auth));  // ✅ Pass auth
+            }
+        });
+    }
 
-            AdvancedEmailRequest advRequest = mapper.convertValue(rawRequest, AdvancedEmailRequest.class);
-            return ResponseEntity.ok(emailGeneratorService.processMode(advRequest, auth));  // ✅ Pass auth
-        } catch (IllegalArgumentException e) {
-            EmailRequest legacyRequest = mapper.convertValue(rawRequest, EmailRequest.class);
-            return ResponseEntity.ok(emailGeneratorService.generateEmailReply(legacyRequest, auth));  // ✅ Pass auth
+    @PostMapping("/thread-reply")
+    public WebAsyncTask<ResponseEntity<String>> threadAwareReply(@RequestBody ThreadAwareRequest request,
+                                                                 Authentication auth, HttpServletRequest httpRequest) {
+        return deadlines.withDeadline(httpRequest,
+                () -> ResponseEntity.ok(emailGeneratorService.generateThreadAwareReply(request, auth)));  // ✅ Pass auth
+    }
+
+    // ✅ Server-side threads: create once, then POST /thread-reply with threadId + newest email only
+    @PostMapping("/threads")
+    public ResponseEntity<ThreadSummaryResponse> createThread(@RequestBody CreateThreadRequest request, Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
         }
+        return ResponseEntity.ok(threadService.create(request, auth.getName()));
     }
 
-    @PostMapping("/thread-reply")
-    public ResponseEntity<String> threadAwareReply(@RequestBody ThreadAwareRequest request, Authentication auth) {
-        return ResponseEntity.ok(emailGeneratorService.generateThreadAwareReply(request, auth));  // ✅ Pass auth
+    @GetMapping("/threads/{id}")
+    public ResponseEntity<ThreadSummaryResponse> getThread(@PathVariable Long id, Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return threadService.get(id, auth.getName())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/follow-up")
-    public ResponseEntity<String> generateFollowUp(@RequestBody FollowUpRequest request, Authentication auth) {
-        return ResponseEntity.ok(emailGeneratorService.generateFollowUp(request, auth));  // ✅ Pass auth
+    public WebAsyncTask<ResponseEntity<String>> generateFollowUp(@RequestBody FollowUpRequest request,
+                                                                 Authentication auth, HttpServletRequest httpRequest) {
+        return deadlines.withDeadline(httpRequest,
+                () -> ResponseEntity.ok(emailGeneratorService.generateFollowUp(request, auth)));  // ✅ Pass auth
     }
 
 
     @PostMapping("/detect-intent")
-    public ResponseEntity<IntentResponse> detectIntent(@RequestBody Map<String, String> request) {
-        String emailContent = request.get("emailContent");
-        IntentResponse intent = emailGeneratorService.detectIntent(emailContent);
-        return ResponseEntity.ok(intent);
+    public WebAsyncTask<ResponseEntity<IntentResponse>> detectIntent(@RequestBody Map<String, String> request,
+                                                                     HttpServletRequest httpRequest) {
+        return deadlines.withDeadline(httpRequest, () -> {
+            String emailContent = request.get("emailContent");
+            IntentResponse intent = emailGeneratorService.detectIntent(emailContent);
+            return ResponseEntity.ok(intent);
+        });
     }
 
     @PostMapping("/subject")
-    public ResponseEntity<List<String>> generateSubject(@RequestBody SubjectRequest request) {
-        List<String> subjects = emailGeneratorService.generateSubjectLines(request.getEmailContent());
-        return ResponseEntity.ok(subjects);
+    public WebAsyncTask<ResponseEntity<List<String>>> generateSubject(@RequestBody SubjectRequest request,
+                                                                      HttpServletRequest httpRequest) {
+        return deadlines.withDeadline(httpRequest, () -> {
+            List<String> subjects = emailGeneratorService.generateSubjectLines(request.getEmailContent());
+            return ResponseEntity.ok(subjects);
+        });
     }
 
 
 
     @PostMapping("/summarize")
-    public ResponseEntity<SummaryResponse> summarizeEmail(@RequestBody Map<String, String> request) {
-        SummaryResponse summary = emailGeneratorService.summarizeEmail(request.get("emailContent"));
-        return ResponseEntity.ok(summary);
+    public WebAsyncTask<ResponseEntity<SummaryResponse>> summarizeEmail(@RequestBody Map<String, String> request,
+                                                                        HttpServletRequest httpRequest) {
+        return deadlines.withDeadline(httpRequest, () -> {
+            SummaryResponse summary = emailGeneratorService.summarizeEmail(request.get("emailContent"));
+            return ResponseEntity.ok(summary);
+        });
+    }
+
+    // ✅ Many emails per call: body is a JSON array or NDJSON of BatchItem; results stream back
+    // as NDJSON in completion order (match them by "index"/"id"), then a final DONE line
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<StreamingResponseBody> batch(HttpServletRequest httpRequest, Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        List<BatchItem> items;
+        try {
+            items = batchEmailService.readItems(httpRequest.getInputStream());
+            batchEmailService.checkFitsInTimeout(items, auth.getName());
+        } catch (IllegalArgumentException | java.io.IOException e) {
+            System.out.println("❌ Batch rejected: " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        String username = auth.getName();
+        ObjectMapper mapper = new ObjectMapper();
+        StreamingResponseBody body = out -> batchEmailService.process(items, username, result -> {
+            synchronized (out) {
+                try {
+                    out.write(mapper.writeValueAsBytes(result));
+                    out.write('\n');
+                    out.flush();
+                } catch (java.io.IOException e) {
+                    System.out.println("⚠️ Batch client gone: " + e.getMessage());
+                }
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    // ✅ Async generation: returns a job id at once; poll GET /jobs/{id} or listen on /jobs/{id}/events
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, String>> submitJob(@RequestBody JobSubmitRequest request, Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            String id = jobService.submit(request, auth.getName());
+            return ResponseEntity.accepted().body(Map.of("id", id, "status", JobStatus.QUEUED.name()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "❌ " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<JobStatusResponse> getJob(@PathVariable String id, Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return jobService.getStatus(id, auth.getName())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> jobEvents(@PathVariable String id, Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return jobService.subscribe(id, auth.getName())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // ✅ Mailbox onboarding: path is an .mbox file or a directory (of .eml/.mbox) under the
+    // caller's own import directory (base-dir/<username>); progress streams back as NDJSON
+    // after every batch, then a DONE line
+    @PostMapping("/import")
+    public ResponseEntity<StreamingResponseBody> importMailbox(@RequestParam("path") String path,
+                                                               @RequestParam(defaultValue = "true") boolean warmSearch,
+                                                               Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        java.nio.file.Path source;
+        try {
+            source = importService.resolveSource(auth.getName(), path);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ Import rejected: " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        String username = auth.getName();
+        ObjectMapper mapper = new ObjectMapper();
+        StreamingResponseBody body = out -> importService.importMailbox(username, source, warmSearch, progress -> {
+            try {
+                out.write(mapper.writeValueAsBytes(progress));
+                out.write('\n');
+                out.flush();
+            } catch (java.io.IOException e) {
+                System.out.println("⚠️ Import client gone: " + e.getMessage());
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    // ✅ Shows what prompt preprocessing strips from an email (quoted history, signature, footers)
+    @PostMapping("/preprocess")
+    public ResponseEntity<PreprocessResult> preprocess(@RequestBody Map<String, String> request) {
+        return ResponseEntity.ok(preprocessor.strip(request.get("emailContent")));
     }
 
     @GetMapping("/history")
@@ -85,6 +267,51 @@ public class EmailGeneratorController {
 
 
 
+    @GetMapping("/history/search")
+    public ResponseEntity<HistorySearchResponse> searchHistory(@RequestParam("q") String q,
+                                                               @RequestParam(defaultValue = "0") int page,
+                                                               @RequestParam(defaultValue = "10") int size,
+                                                               Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(searchService.search(auth.getName(), q, page, size));
+    }
+
+    @PostMapping("/history/search/rebuild")
+    public ResponseEntity<Map<String, Integer>> rebuildSearchIndex(Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(Map.of("indexed", searchService.rebuild(auth.getName())));
+    }
+
+    @GetMapping("/history/export")
+    public ResponseEntity<StreamingResponseBody> exportHistory(@RequestParam(defaultValue = "ndjson") String format,
+                                                               Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        String username = auth.getName();
+        MediaType contentType = exportFormat == ExportFormat.CSV
+                ? MediaType.parseMediaType("text/csv")
+                : MediaType.parseMediaType("application/x-ndjson");
+        String filename = "email-history." + (exportFormat == ExportFormat.CSV ? "csv" : "ndjson");
+
+        StreamingResponseBody body = out -> exportService.export(username, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
     @GetMapping("/history/intent/{intent}")
     public ResponseEntity<List<EmailHistory>> getHistoryByIntent(@PathVariable String intent) {
         try {
@@ -101,23 +328,91 @@ public class EmailGeneratorController {
 
 
     @PostMapping("/send-email")
-    public ResponseEntity<String> sendEmail(@RequestBody SendEmailRequest request) {
-        System.out.println("📧 Sending email to: " + request.getTo());
+    public ResponseEntity<Map<String, String>> sendEmail(@RequestBody SendEmailRequest request) {
+        System.out.println("📧 Queueing email to: " + request.getTo());
 
         try {
-            boolean sent = emailSender.sendEmail(request);
-            if (sent) {
-                System.out.println("✅ Email sent successfully!");
-                return ResponseEntity.ok("✅ Email sent to " + request.getTo());
-            } else {
-                return ResponseEntity.status(500).body("❌ Failed to send email");
-            }
+            // ✅ Accepted into the durable outbox; delivery happens on the worker pool
+            OutboundEmail queued = outboundMailService.enqueue(request);
+            return ResponseEntity.accepted().body(Map.of(
+                    "id", queued.getId(),
+                    "status", queued.getStatus().name(),
+                    "message", "✅ Email to " + request.getTo() + " queued for delivery"
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "❌ " + e.getMessage()));
         } catch (Exception e) {
             System.out.println("❌ Email error: " + e.getMessage());
-            return ResponseEntity.status(500).body("❌ Error: " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("message", "❌ Error: " + e.getMessage()));
         }
     }
 
+    // ✅ Multipart: "to", "subject", "body" fields + any number of "files" parts (spooled to disk)
+    @PostMapping(value = "/send-email/attachments", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, String>> sendEmailWithAttachments(
+            @RequestParam("to") String to,
+            @RequestParam(value = "subject", required = false) String subject,
+            @RequestParam(value = "body", required = false) String body,
+            @RequestParam(value = "files", required = false) List<MultipartFile> files) {
+        SendEmailRequest request = new SendEmailRequest();
+        request.setTo(to);
+        request.setSubject(subject);
+        request.setBody(body);
+
+        try {
+            OutboundEmail queued = outboundMailService.enqueueWithAttachments(
+                    request, files != null ? files : List.of());
+            return ResponseEntity.accepted().body(Map.of(
+                    "id", queued.getId(),
+                    "status", queued.getStatus().name(),
+                    "message", "✅ Email to " + to + " queued for delivery"
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "❌ " + e.getMessage()));
+        } catch (Exception e) {
+            System.out.println("❌ Attachment email error: " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("message", "❌ Error: " + e.getMessage()));
+        }
+    }
+
+    // ✅ Mail merge; progress streams back as NDJSON, one line per recipient + a final DONE line
+    @PostMapping("/bulk-send")
+    public ResponseEntity<StreamingResponseBody> bulkSend(@RequestBody BulkSendRequest request) {
+        try {
+            bulkMailService.validate(request);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ Bulk send rejected: " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        StreamingResponseBody body = out -> bulkMailService.send(request, progress -> {
+            synchronized (out) {
+                try {
+                    out.write(mapper.writeValueAsBytes(progress));
+                    out.write('\n');
+                    out.flush();
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException(e);  // stops the remaining sends
+                }
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    // ✅ Public by id (the sender endpoints are unauthenticated, so there is no owner to check);
+    // recipient and SMTP error are only shown to admins
+    @GetMapping("/send-email/{id}")
+    public ResponseEntity<DeliveryStatusResponse> getDeliveryStatus(@PathVariable String id, Authentication auth) {
+        boolean admin = adminAccess.isAdmin(auth);
+        return outboundMailService.getStatus(id)
+                .map(status -> admin ? status : status.withoutDetails())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
 
 
 
@@ -125,19 +420,21 @@ public class EmailGeneratorController {
 
 
     @PostMapping("/score-quality")
-    public ResponseEntity<QualityResponse> scoreQuality(@RequestBody Map<String, String> request) {
+    public WebAsyncTask<ResponseEntity<QualityResponse>> scoreQuality(@RequestBody Map<String, String> request,
+                                                                      HttpServletRequest httpRequest) {
         String emailContent = request.get("emailContent");
         System.out.println("➡ /score-quality emailContent = " + emailContent);
-        QualityResponse quality = emailGeneratorService.scoreEmailQuality(emailContent);
-        return ResponseEntity.ok(quality);
+        return deadlines.withDeadline(httpRequest,
+                () -> ResponseEntity.ok(emailGeneratorService.scoreEmailQuality(emailContent)));
     }
 
     @PostMapping("/detect-risk")
-    public ResponseEntity<RiskResponse> detectRisk(@RequestBody Map<String, String> request) {
+    public WebAsyncTask<ResponseEntity<RiskResponse>> detectRisk(@RequestBody Map<String, String> request,
+                                                                 HttpServletRequest httpRequest) {
         String emailContent = request.get("emailContent");
         System.out.println("➡ /detect-risk emailContent = " + emailContent);
-        RiskResponse risk = emailGeneratorService.detectRisk(emailContent);
-        return ResponseEntity.ok(risk);
+        return deadlines.withDeadline(httpRequest,
+                () -> ResponseEntity.ok(emailGeneratorService.detectRisk(emailContent)));
     }
 
 
@@ -147,4 +444,39 @@ public class EmailGeneratorController {
         EmailAnalyticsResponse analytics = analyticsService.getAnalyticsForUser(username);
         return ResponseEntity.ok(analytics);
     }
+
+    // ✅ Admin: token usage, tokens/second and cost per operation and per user over the last N days
+    @GetMapping("/admin/usage")
+    public ResponseEntity<UsageReport> getUsage(@RequestParam(defaultValue = "1") int days, Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        if (!adminAccess.isAdmin(auth)) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(usageService.report(Math.min(days, 366)));
+    }
+
+    // ✅ Admin: write the continuous JFR recording (last email.jfr.max-age) to disk on the server
+    @PostMapping("/admin/jfr/dump")
+    public ResponseEntity<Map<String, Object>> dumpFlightRecording(Authentication auth) {
+        if (auth == null || auth.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        if (!adminAccess.isAdmin(auth)) {
+            return ResponseEntity.status(403).build();
+        }
+        try {
+            Optional<Path> file = flightRecorder.dump();
+            if (file.isEmpty()) {
+                return ResponseEntity.status(503).body(Map.of("error", "JFR recording is not running"));
+            }
+            return ResponseEntity.ok(Map.of(
+                    "file", file.get().toString(),
+                    "sizeBytes", Files.size(file.get()),
+                    "window", flightRecorder.maxAge().toString()));
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body(Map.of("error", "JFR dump failed: " + e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package com.email.dto;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Per-user bookkeeping for the cold history tier (stats.json next to the segment files)
+@Data
+public class ArchiveStats {
+    private long lastArchivedId;
+    private int currentSegment = 1;
+    private long committedBytes;
+    private int recordsInSegment;
+
+    private long count;
+    private long totalContentLength;
+    private Map<EmailTone, Long> toneCounts = new HashMap<>();
+    private Map<EmailIntent, Long> intentCounts = new HashMap<>();
+}
@@ -0,0 +1,13 @@
+package com.email.dto;
+
+import lombok.Data;
+
+@Data
+public class BatchItem {
+    private String id;              // optional client correlation id, echoed in the result
+    private BatchOperation operation = BatchOperation.GENERATE_REPLY;
+    private String emailContent;
+    private EmailTone tone;
+    private PromptVersion promptVersion;
+    private AiProviderType provider;
+}
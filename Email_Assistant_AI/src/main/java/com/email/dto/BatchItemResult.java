@@ -0,0 +1,11 @@
+package com.email.dto;
+
+public record BatchItemResult(
+        int index,
+        String id,
+        BatchOperation operation,
+        String status,      // OK, ERROR, DONE (final summary line)
+        Object result,      // String, SummaryResponse, IntentResponse or List<String> by operation
+        String error,
+        long durationMs
+) {}
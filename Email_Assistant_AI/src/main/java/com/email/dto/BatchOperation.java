@@ -0,0 +1,18 @@
+package com.email.dto;
+
+// Per-item operation of /api/email/batch: the five rewrite modes plus the analysis endpoints
+public enum BatchOperation {
+    GENERATE_REPLY, POLISH, SHORTEN, EXPAND, MAKE_FORMAL,
+    SUMMARIZE, DETECT_INTENT, SUBJECT;
+
+    public RewriteMode toRewriteMode() {
+        return switch (this) {
+            case GENERATE_REPLY -> RewriteMode.GENERATE_REPLY;
+            case POLISH -> RewriteMode.POLISH;
+            case SHORTEN -> RewriteMode.SHORTEN;
+            case EXPAND -> RewriteMode.EXPAND;
+            case MAKE_FORMAL -> RewriteMode.MAKE_FORMAL;
+            default -> null;
+        };
+    }
+}
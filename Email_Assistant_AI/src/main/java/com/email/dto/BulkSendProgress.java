@@ -0,0 +1,11 @@
+package com.email.dto;
+
+public record BulkSendProgress(
+        int index,
+        String to,
+        String status,      // SENT, FAILED, DONE (final summary line)
+        String error,
+        int sent,
+        int failed,
+        int total
+) {}
@@ -0,0 +1,21 @@
+package com.email.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class BulkSendRequest {
+    private String subjectTemplate;   // e.g. "Your order {{orderId}}"
+    private String bodyTemplate;      // e.g. "Hi {{name}}, ..."
+    private List<Recipient> recipients = new ArrayList<>();
+
+    @Data
+    public static class Recipient {
+        private String to;
+        private Map<String, String> variables = new HashMap<>();
+    }
+}
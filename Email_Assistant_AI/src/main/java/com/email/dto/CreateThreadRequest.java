@@ -0,0 +1,12 @@
+package com.email.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class CreateThreadRequest {
+    private String subject;
+    private List<String> messages = new ArrayList<>();   // optional existing history, oldest first
+}
@@ -0,0 +1,19 @@
+package com.email.dto;
+
+import java.time.LocalDateTime;
+
+public record DeliveryStatusResponse(
+        String id,
+        String to,
+        OutboundEmailStatus status,
+        int attempts,
+        String lastError,
+        LocalDateTime createdAt,
+        LocalDateTime nextAttemptAt,
+        LocalDateTime sentAt
+) {
+    // What anyone holding the id may see: no recipient address, no SMTP error text
+    public DeliveryStatusResponse withoutDetails() {
+        return new DeliveryStatusResponse(id, null, status, attempts, null, createdAt, nextAttemptAt, sentAt);
+    }
+}
@@ -0,0 +1,6 @@
+package com.email.dto;
+
+public enum ExportFormat {
+    NDJSON,
+    CSV
+}
@@ -0,0 +1,11 @@
+package com.email.dto;
+
+public record HistorySearchHit(
+        long id,
+        String timestamp,
+        String tone,
+        String intent,
+        float score,
+        String emailContentHighlight,
+        String generatedResponseHighlight
+) {}
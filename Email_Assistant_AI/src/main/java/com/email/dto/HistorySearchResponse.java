@@ -0,0 +1,11 @@
+package com.email.dto;
+
+import java.util.List;
+
+public record HistorySearchResponse(
+        String query,
+        int page,
+        int size,
+        long totalHits,
+        List<HistorySearchHit> hits
+) {}
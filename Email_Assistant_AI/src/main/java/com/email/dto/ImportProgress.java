@@ -0,0 +1,13 @@
+package com.email.dto;
+
+import java.util.Map;
+
+public record ImportProgress(
+        String status,              // RUNNING, DONE
+        String currentFile,
+        long parsed,
+        long imported,
+        long failed,
+        double messagesPerSecond,
+        Map<EmailIntent, Long> intentCounts
+) {}
@@ -0,0 +1,5 @@
+package com.email.dto;
+
+public enum JobStatus {
+    QUEUED, RUNNING, SUCCEEDED, FAILED
+}
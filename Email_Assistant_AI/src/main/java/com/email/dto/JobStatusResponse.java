@@ -0,0 +1,14 @@
+package com.email.dto;
+
+import java.time.LocalDateTime;
+
+public record JobStatusResponse(
+        String id,
+        JobType type,
+        JobStatus status,
+        int attempts,
+        Object result,          // reply text or SummaryResponse JSON once SUCCEEDED
+        String error,
+        LocalDateTime createdAt,
+        LocalDateTime finishedAt
+) {}
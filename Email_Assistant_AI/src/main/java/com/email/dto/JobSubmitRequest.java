@@ -0,0 +1,11 @@
+package com.email.dto;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class JobSubmitRequest {
+    private JobType type;
+    private Map<String, Object> payload;
+}
@@ -0,0 +1,7 @@
+package com.email.dto;
+
+// Payload shape per type: GENERATE → AdvancedEmailRequest, THREAD_REPLY → ThreadAwareRequest,
+// FOLLOW_UP → FollowUpRequest, SUMMARIZE → {"emailContent": "..."}
+public enum JobType {
+    GENERATE, THREAD_REPLY, FOLLOW_UP, SUMMARIZE
+}
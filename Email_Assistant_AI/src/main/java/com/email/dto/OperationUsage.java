@@ -0,0 +1,13 @@
+package com.email.dto;
+
+public record OperationUsage(
+        String operation,
+        String provider,
+        String promptVersion,   // NONE for unversioned prompts
+        long requests,
+        long promptTokens,
+        long completionTokens,
+        long totalTokens,
+        double tokensPerSecond,  // completion tokens per second of provider call time
+        double estimatedCost     // from email.usage.price.<provider>.* (per million tokens)
+) {}
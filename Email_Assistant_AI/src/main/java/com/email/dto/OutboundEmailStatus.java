@@ -0,0 +1,8 @@
+package com.email.dto;
+
+public enum OutboundEmailStatus {
+    QUEUED,
+    SENDING,
+    SENT,
+    FAILED
+}
@@ -0,0 +1,11 @@
+package com.email.dto;
+
+import java.util.List;
+
+public record PreprocessResult(
+        String text,
+        int originalChars,
+        int removedChars,
+        int estimatedTokensSaved,
+        List<String> removedSections     // QUOTED_HISTORY, SIGNATURE, DISCLAIMER, MOBILE_FOOTER
+) {}
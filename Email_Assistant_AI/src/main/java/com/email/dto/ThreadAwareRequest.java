@@ -9,5 +9,6 @@ public class ThreadAwareRequest {
     private String emailContent;
     private List<String> previousEmails = new ArrayList<>();
     private EmailTone tone;
+    private Long threadId;  // ✅ server-side thread: send only the newest email, no previousEmails
 }
 
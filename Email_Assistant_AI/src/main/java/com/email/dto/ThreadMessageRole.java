@@ -0,0 +1,6 @@
+package com.email.dto;
+
+public enum ThreadMessageRole {
+    INCOMING,   // email received from the other party
+    REPLY       // reply generated for the user
+}
@@ -0,0 +1,12 @@
+package com.email.dto;
+
+import java.time.LocalDateTime;
+
+public record ThreadSummaryResponse(
+        Long id,
+        String subject,
+        int messageCount,
+        int summarizedThroughSeq,
+        String summary,
+        LocalDateTime updatedAt
+) {}
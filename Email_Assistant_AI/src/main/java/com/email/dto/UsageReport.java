@@ -0,0 +1,13 @@
+package com.email.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record UsageReport(
+        LocalDate from,
+        LocalDate to,
+        long totalTokens,
+        double estimatedCost,
+        List<OperationUsage> byOperation,  // highest total tokens first
+        List<UserUsage> byUser
+) {}
@@ -0,0 +1,8 @@
+package com.email.dto;
+
+public record UserUsage(
+        String username,
+        long requests,
+        long totalTokens,
+        double estimatedCost
+) {}
@@ -0,0 +1,56 @@
+package com.email.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Server-side email thread. Messages with seq <= summarizedThroughSeq are folded into the
+// rolling summary; only the newer ones are sent to the model verbatim.
+@Entity
+@Table(name = "conversation_thread")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationThread {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @JsonIgnore
+    private User user;
+
+    private String subject;
+
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    @Column(name = "summarized_through_seq", nullable = false)
+    private int summarizedThroughSeq;
+
+    @Column(name = "message_count", nullable = false)
+    private int messageCount;
+
+    @Version
+    private Long version;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
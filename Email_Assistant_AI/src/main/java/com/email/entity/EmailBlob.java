@@ -0,0 +1,32 @@
+package com.email.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Content-addressed, compressed email body. Written through EmailBlobStore (upsert),
+// the entity mainly exists so ddl-auto creates the table.
+@Entity
+@Table(name = "email_blob")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailBlob {
+    @Id
+    @Column(length = 64)
+    private String hash;  // SHA-256 hex of the UTF-8 body
+
+    @Lob
+    @Column(name = "compressed_bytes", columnDefinition = "LONGBLOB", nullable = false)
+    private byte[] compressedBytes;
+
+    @Column(nullable = false)
+    private int length;  // uncompressed length in characters
+
+    // Last store() of this body; cleanup leaves recently stored blobs alone (null = before tracking)
+    @Column(name = "last_used_at")
+    private LocalDateTime lastUsedAt;
+}
@@ -0,0 +1,27 @@
+package com.email.entity;
+
+import com.email.service.EmailBlobStore;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+
+// Stores email bodies as a hash reference into email_blob and loads them back transparently.
+// Writing only computes the hash: it also runs for query parameters and during flush, so it
+// must not touch the database. Services store the blob (EmailBlobStore.store/storeAll) before
+// saving the entity. Instantiated by Hibernate through Spring's bean container.
+@Converter
+@RequiredArgsConstructor
+public class EmailBodyConverter implements AttributeConverter<String, String> {
+
+    private final EmailBlobStore blobStore;
+
+    @Override
+    public String convertToDatabaseColumn(String body) {
+        return body != null ? EmailBlobStore.hashOf(body) : null;
+    }
+
+    @Override
+    public String convertToEntityAttribute(String hash) {
+        return hash != null ? blobStore.load(hash) : null;
+    }
+}
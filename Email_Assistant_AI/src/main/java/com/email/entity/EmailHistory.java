@@ -4,6 +4,7 @@ package com.email.entity;
 
 import com.email.dto.EmailIntent;
 import com.email.dto.EmailTone;
+import com.email.dto.RewriteMode;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -12,6 +13,8 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
+// Hash indexes for blob garbage collection are created by EmailBlobMigration once the body
+// columns are VARCHAR(64); MySQL cannot index the old TEXT columns without a prefix length
 @Table(name = "email_history")
 @Data
 @NoArgsConstructor
@@ -21,10 +24,13 @@ public class EmailHistory {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(columnDefinition = "TEXT", nullable = false)
+    // ✅ Both bodies live in email_blob; the columns only hold the content hash
+    @Convert(converter = EmailBodyConverter.class)
+    @Column(name = "email_content", length = 64, nullable = false)
     private String emailContent;
 
-    @Column(columnDefinition = "TEXT", nullable = false)
+    @Convert(converter = EmailBodyConverter.class)
+    @Column(name = "generated_response", length = 64, nullable = false)
     private String generatedResponse;
 
     @Enumerated(EnumType.STRING)
@@ -35,6 +41,10 @@ public class EmailHistory {
     @Column(nullable = false)
     private EmailIntent intent;
 
+    // Null for thread replies, follow-ups and rows saved before modes were recorded
+    @Enumerated(EnumType.STRING)
+    private RewriteMode mode;
+
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
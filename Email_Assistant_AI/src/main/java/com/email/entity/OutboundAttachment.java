@@ -0,0 +1,35 @@
+package com.email.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Attachment of a queued outbound email; the bytes stay in the spool file at storagePath
+@Entity
+@Table(name = "outbound_attachment", indexes = {
+        @Index(name = "idx_attachment_email", columnList = "outbound_email_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboundAttachment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "outbound_email_id", length = 36, nullable = false)
+    private String outboundEmailId;
+
+    @Column(nullable = false)
+    private String filename;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "storage_path", nullable = false, length = 1000)
+    private String storagePath;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+}
@@ -0,0 +1,64 @@
+package com.email.entity;
+
+import com.email.dto.OutboundEmailStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Durable outbound mail queue row. Workers claim rows with SELECT ... FOR UPDATE SKIP LOCKED,
+// so several app nodes can drain the same table.
+@Entity
+@Table(name = "outbound_email", indexes = {
+        @Index(name = "idx_outbound_status_next", columnList = "status, next_attempt_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboundEmail {
+    @Id
+    @Column(length = 36)
+    private String id;  // UUID, also the public delivery-status handle
+
+    @Column(name = "to_address", nullable = false)
+    private String toAddress;
+
+    @Column(name = "recipient_domain", nullable = false)
+    private String recipientDomain;
+
+    private String subject;
+
+    @Column(columnDefinition = "TEXT")
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OutboundEmailStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // SENDING rows whose lease ran out (node died mid-send) become claimable again
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) createdAt = LocalDateTime.now();
+        if (nextAttemptAt == null) nextAttemptAt = createdAt;
+    }
+}
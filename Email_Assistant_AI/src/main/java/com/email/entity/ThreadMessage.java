@@ -0,0 +1,45 @@
+package com.email.entity;
+
+import com.email.dto.ThreadMessageRole;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "thread_message", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_thread_message_seq", columnNames = {"thread_id", "seq"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThreadMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "thread_id", nullable = false)
+    private Long threadId;
+
+    @Column(nullable = false)
+    private int seq;  // 1-based position in the thread
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ThreadMessageRole role;
+
+    // ✅ Same content-addressed blob storage as history bodies
+    @Convert(converter = EmailBodyConverter.class)
+    @Column(length = 64, nullable = false)
+    private String content;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
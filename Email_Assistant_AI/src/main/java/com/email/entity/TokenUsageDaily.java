@@ -0,0 +1,52 @@
+package com.email.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Daily token rollup per user/operation/provider/prompt version. Written through
+// TokenUsageService (INSERT ... ON DUPLICATE KEY UPDATE); the entity mainly exists so
+// ddl-auto creates the table and its unique key.
+@Entity
+@Table(name = "token_usage_daily",
+        uniqueConstraints = @UniqueConstraint(name = "uk_token_usage_daily",
+                columnNames = {"usage_date", "username", "operation", "provider", "prompt_version"}),
+        indexes = @Index(name = "idx_token_usage_date", columnList = "usage_date"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenUsageDaily {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @Column(nullable = false, length = 100)
+    private String username;
+
+    @Column(nullable = false, length = 40)
+    private String operation;
+
+    @Column(nullable = false, length = 20)
+    private String provider;
+
+    @Column(name = "prompt_version", nullable = false, length = 20)
+    private String promptVersion;  // "NONE" for prompts that are not versioned
+
+    @Column(nullable = false)
+    private long requests;
+
+    @Column(name = "prompt_tokens", nullable = false)
+    private long promptTokens;
+
+    @Column(name = "completion_tokens", nullable = false)
+    private long completionTokens;
+
+    @Column(name = "call_millis", nullable = false)
+    private long callMillis;  // wall time of the provider calls, for tokens/second
+}
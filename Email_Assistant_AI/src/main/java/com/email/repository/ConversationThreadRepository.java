@@ -0,0 +1,12 @@
+package com.email.repository;
+
+import com.email.entity.ConversationThread;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ConversationThreadRepository extends JpaRepository<ConversationThread, Long> {
+    Optional<ConversationThread> findByIdAndUser_Username(Long id, String username);
+}
@@ -1,11 +1,17 @@
 package com.email.repository;
 
 import com.email.entity.EmailHistory;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface EmailHistoryRepository extends JpaRepository<EmailHistory, Long> {
@@ -13,6 +19,23 @@ public interface EmailHistoryRepository extends JpaRepository<EmailHistory, Long
 
     List<EmailHistory> findByIntent(com.email.dto.EmailIntent intent);
 
+    // Keyset pagination per user: pass the last id of the previous page and PageRequest.of(0, size)
+    List<EmailHistory> findByUser_IdAndIdGreaterThanOrderByIdAsc(Long userId, Long id, Pageable pageable);
+
+    List<EmailHistory> findByTimestampBeforeOrderByIdAsc(LocalDateTime cutoff, Pageable pageable);
+
+    // Keyset pagination: pass the last id of the previous page and PageRequest.of(0, size)
+    List<EmailHistory> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // Forward-only cursor (needs useCursorFetch=true on the MySQL URL); call inside a read-only transaction
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select h from EmailHistory h where h.user.username = :username order by h.id")
+    Stream<EmailHistory> streamByUsername(@Param("username") String username);
+
 
     @Query("SELECT e FROM EmailHistory e WHERE e.user.username = :username ORDER BY e.timestamp DESC LIMIT :limit")
     List<EmailHistory> findByUserUsernameOrderByTimestampDesc(@Param("username") String username, @Param("limit") int limit);
@@ -27,8 +50,11 @@ public interface EmailHistoryRepository extends JpaRepository<EmailHistory, Long
             "from EmailHistory h where h.user.username = :username group by h.intent")
     List<Object[]> countByIntentForUser(@Param("username") String username);
 
-    @Query("select avg(length(h.emailContent)) " +
-            "from EmailHistory h where h.user.username = :username")
+    // email_content holds a blob hash, so the length comes from email_blob (raw legacy rows fall back)
+    @Query(value = "select avg(coalesce(b.length, char_length(h.email_content))) " +
+            "from email_history h join users u on u.id = h.user_id " +
+            "left join email_blob b on b.hash = h.email_content " +
+            "where u.username = :username", nativeQuery = true)
     Double avgEmailLengthByUser(@Param("username") String username);
 
     // When you later add a confidenceScore field:
@@ -0,0 +1,12 @@
+package com.email.repository;
+
+import com.email.entity.OutboundAttachment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboundAttachmentRepository extends JpaRepository<OutboundAttachment, Long> {
+    List<OutboundAttachment> findByOutboundEmailId(String outboundEmailId);
+}
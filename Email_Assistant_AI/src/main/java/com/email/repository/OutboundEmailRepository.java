@@ -0,0 +1,21 @@
+package com.email.repository;
+
+import com.email.entity.OutboundEmail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboundEmailRepository extends JpaRepository<OutboundEmail, String> {
+
+    // Must run inside a transaction; locked rows are skipped so nodes never claim the same message
+    @Query(value = "select * from outbound_email " +
+            "where ((status = 'QUEUED' and next_attempt_at <= :now) " +
+            "or (status = 'SENDING' and locked_until < :now)) " +
+            "order by next_attempt_at limit :limit for update skip locked", nativeQuery = true)
+    List<OutboundEmail> lockDueForDelivery(@Param("now") LocalDateTime now, @Param("limit") int limit);
+}
@@ -0,0 +1,14 @@
+package com.email.repository;
+
+import com.email.entity.ThreadMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ThreadMessageRepository extends JpaRepository<ThreadMessage, Long> {
+    List<ThreadMessage> findByThreadIdAndSeqGreaterThanOrderBySeqAsc(Long threadId, int seq);
+
+    List<ThreadMessage> findByThreadIdAndSeqBetweenOrderBySeqAsc(Long threadId, int fromSeq, int toSeq);
+}
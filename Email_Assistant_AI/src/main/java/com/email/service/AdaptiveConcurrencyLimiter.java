@@ -0,0 +1,147 @@
+package com.email.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-flight limit for the LLM-backed endpoints, adjusted from observed latency (gradient
+// algorithm, as in Netflix concurrency-limits' Gradient2):
+//   gradient = clamp(tolerance * longRtt / shortRtt, 0.5, 1.0)
+//   limit    = smooth(limit * gradient + sqrt(limit))
+// longRtt is a slow EMA of request latency (the "healthy" baseline), shortRtt the mean of the
+// last sample window. While latency stays near the baseline the sqrt term lets the limit grow;
+// when a provider slows down the gradient drops below 1 and the limit shrinks, so excess requests
+// are shed at once instead of parking Tomcat threads until everything times out.
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final int sampleWindow;
+    private final int longWindow;
+
+    private volatile int limit;
+
+    // Guarded by this
+    private double estimatedLimit;
+    private double longRttNanos;
+    private long windowRttSum;
+    private int windowCount;
+    private int windowMaxInFlight;
+    private volatile double shortRttNanos;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry registry,
+                                      @Value("${email.concurrency.initial-limit:20}") int initialLimit,
+                                      @Value("${email.concurrency.min-limit:2}") int minLimit,
+                                      @Value("${email.concurrency.max-limit:150}") int maxLimit,
+                                      @Value("${email.concurrency.smoothing:0.2}") double smoothing,
+                                      @Value("${email.concurrency.rtt-tolerance:1.5}") double tolerance,
+                                      @Value("${email.concurrency.sample-window:10}") int sampleWindow,
+                                      @Value("${email.concurrency.long-window:600}") int longWindow) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+        this.sampleWindow = Math.max(sampleWindow, 1);
+        this.longWindow = Math.max(longWindow, 1);
+        this.estimatedLimit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        this.limit = (int) estimatedLimit;
+
+        Gauge.builder("email.concurrency.limit", () -> limit).register(registry);
+        Gauge.builder("email.concurrency.inflight", inFlight, AtomicInteger::get).register(registry);
+    }
+
+    public Optional<Permit> tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return Optional.empty();
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return Optional.of(new Permit(current + 1));
+            }
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    // ✅ Roughly how long until a slot frees up: the current per-request latency
+    public long retryAfterSeconds() {
+        double rtt = shortRttNanos > 0 ? shortRttNanos : longRttNanos;
+        return Math.max(1, Math.min(30, (long) Math.ceil(rtt / TimeUnit.SECONDS.toNanos(1))));
+    }
+
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        // Request completed (including provider errors and timeouts): its latency is a sample
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                onSample(System.nanoTime() - startNanos, inFlightAtStart);
+            }
+        }
+
+        // Request ended for a reason that says nothing about capacity (bad input, 401, ...)
+        public void releaseWithoutSample() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        // Slow EMA: the baseline only moves a little per sample
+        longRttNanos = longRttNanos == 0 ? rttNanos : longRttNanos + (rttNanos - longRttNanos) * 2.0 / (longWindow + 1);
+        windowRttSum += rttNanos;
+        windowCount++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+        if (windowCount < sampleWindow) {
+            return;
+        }
+
+        double shortRtt = (double) windowRttSum / windowCount;
+        int maxInFlight = windowMaxInFlight;
+        windowRttSum = 0;
+        windowCount = 0;
+        windowMaxInFlight = 0;
+        shortRttNanos = shortRtt;
+
+        // Latency fell well below the baseline (provider recovered): let the baseline catch up
+        if (longRttNanos / shortRtt > 2.0) {
+            longRttNanos *= 0.95;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRtt));
+        // Demand never came close to the limit: this window says nothing about growing it
+        if (gradient >= 1.0 && maxInFlight < estimatedLimit / 2) {
+            return;
+        }
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+        int previous = limit;
+        limit = (int) estimatedLimit;
+        if (limit != previous && (gradient < 1.0 || Math.abs(limit - previous) > 1)) {
+            System.out.println("🚦 Concurrency limit " + previous + " → " + limit + " (short rtt "
+                    + Math.round(shortRtt / 1_000_000) + " ms, baseline " + Math.round(longRttNanos / 1_000_000) + " ms)");
+        }
+    }
+}
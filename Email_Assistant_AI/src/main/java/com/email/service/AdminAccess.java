@@ -0,0 +1,19 @@
+package com.email.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+// Operator-only endpoints: users listed in email.admin.usernames (there are no roles beyond USER)
+@Component
+public class AdminAccess {
+
+    @Value("${email.admin.usernames:}")
+    private Set<String> adminUsernames;
+
+    public boolean isAdmin(Authentication auth) {
+        return auth != null && auth.getName() != null && adminUsernames.contains(auth.getName());
+    }
+}
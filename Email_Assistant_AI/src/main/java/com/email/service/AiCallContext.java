@@ -0,0 +1,67 @@
+package com.email.service;
+
+import com.email.dto.PromptVersion;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+// Who a provider call is made for, and with which prompt version, so token usage can be
+// attributed without threading a username through every generator method. Request threads
+// fall back to the Spring Security context; worker pools open a scope (or wrap() the task).
+public final class AiCallContext {
+
+    public static final String SYSTEM_USER = "system";
+
+    private static final ThreadLocal<AiCallContext> CURRENT = new ThreadLocal<>();
+
+    private final String username;
+    private final PromptVersion promptVersion;
+
+    private AiCallContext(String username, PromptVersion promptVersion) {
+        this.username = username;
+        this.promptVersion = promptVersion;
+    }
+
+    // Null arguments inherit from the enclosing scope
+    public static Scope open(String username, PromptVersion promptVersion) {
+        AiCallContext previous = CURRENT.get();
+        CURRENT.set(new AiCallContext(
+                username != null ? username : previous != null ? previous.username : null,
+                promptVersion != null ? promptVersion : previous != null ? previous.promptVersion : null));
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    public static String username() {
+        AiCallContext context = CURRENT.get();
+        if (context != null && context.username != null) {
+            return context.username;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.isAuthenticated() && auth.getName() != null ? auth.getName() : SYSTEM_USER;
+    }
+
+    public static PromptVersion promptVersion() {
+        AiCallContext context = CURRENT.get();
+        return context != null ? context.promptVersion : null;
+    }
+
+    // ✅ Carries the caller's user onto a pool thread (prompt version is per call, not carried)
+    public static Runnable wrap(Runnable task) {
+        String username = username();
+        return () -> {
+            try (Scope ignored = open(username, null)) {
+                task.run();
+            }
+        };
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
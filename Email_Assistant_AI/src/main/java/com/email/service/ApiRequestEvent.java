@@ -0,0 +1,32 @@
+package com.email.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// One per HTTP request (the event's duration is the request latency). Next to GC, allocation and
+// lock events in the same recording, it shows what the JVM was doing while a request was slow.
+@Name("com.email.ApiRequest")
+@Label("API Request")
+@Category({"Email Assistant", "HTTP"})
+@Description("An /api request, from the first filter to the response")
+public class ApiRequestEvent extends Event {
+
+    @Label("User")
+    String user;
+
+    @Label("Method")
+    String method;
+
+    @Label("Operation")
+    @Description("Matched route pattern, or the raw URI when no handler matched")
+    String operation;
+
+    @Label("Status")
+    int status;
+
+    @Label("Trace Id")
+    String traceId;
+}
@@ -0,0 +1,39 @@
+package com.email.service;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletRequest;
+
+// Runs a callback once the response is really finished: right away for a plain request, or when
+// an async one (WebAsyncTask, SSE, streaming body) completes. The container always fires
+// onComplete, after a timeout or error as well, so the callback runs exactly once either way.
+final class AsyncCompletion {
+
+    private AsyncCompletion() {
+    }
+
+    static void whenComplete(HttpServletRequest request, Runnable callback) {
+        if (!request.isAsyncStarted()) {
+            callback.run();
+            return;
+        }
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                callback.run();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package com.email.service;
+
+import com.email.entity.OutboundAttachment;
+import com.email.repository.OutboundAttachmentRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Keeps outbound attachments on disk between upload and delivery. Multipart parts are already
+// written to temp files by the container (file-size-threshold=0); transferTo moves them here.
+@Service
+@RequiredArgsConstructor
+public class AttachmentSpoolService {
+
+    private final OutboundAttachmentRepository attachmentRepository;
+
+    @Value("${email.attachments.spool-dir:./data/attachment-spool}")
+    private String spoolDir;
+
+    @Value("${email.attachments.max-count:10}")
+    private int maxCount;
+
+    @Value("${email.attachments.max-file-bytes:26214400}")
+    private long maxFileBytes;
+
+    @Value("${email.attachments.max-total-bytes:36700160}")
+    private long maxTotalBytes;
+
+    public void validate(List<MultipartFile> files) {
+        if (files.size() > maxCount) {
+            throw new IllegalArgumentException("Too many attachments (max " + maxCount + ")");
+        }
+        long total = 0;
+        for (MultipartFile file : files) {
+            if (file.getSize() > maxFileBytes) {
+                throw new IllegalArgumentException("Attachment " + file.getOriginalFilename()
+                        + " exceeds " + maxFileBytes + " bytes");
+            }
+            total += file.getSize();
+        }
+        if (total > maxTotalBytes) {
+            throw new IllegalArgumentException("Attachments exceed " + maxTotalBytes + " bytes in total");
+        }
+    }
+
+    // Writes the files only; the rows are saved with the outbound email (see save())
+    public List<OutboundAttachment> spool(String outboundEmailId, List<MultipartFile> files) throws IOException {
+        Path dir = Paths.get(spoolDir, outboundEmailId);
+        Files.createDirectories(dir);
+
+        List<OutboundAttachment> attachments = new ArrayList<>();
+        int n = 0;
+        for (MultipartFile file : files) {
+            if (file.isEmpty()) {
+                continue;
+            }
+            String filename = sanitize(file.getOriginalFilename());
+            Path target = dir.resolve((n++) + "-" + filename);
+            file.transferTo(target);  // ✅ file move/copy, never a byte[] in heap
+
+            OutboundAttachment attachment = new OutboundAttachment();
+            attachment.setOutboundEmailId(outboundEmailId);
+            attachment.setFilename(filename);
+            attachment.setContentType(file.getContentType());
+            attachment.setStoragePath(target.toAbsolutePath().toString());
+            attachment.setSizeBytes(Files.size(target));
+            attachments.add(attachment);
+        }
+        return attachments;
+    }
+
+    // Call inside the transaction that saves the outbound email
+    public List<OutboundAttachment> save(List<OutboundAttachment> attachments) {
+        return attachmentRepository.saveAll(attachments);
+    }
+
+    public List<OutboundAttachment> attachmentsFor(String outboundEmailId) {
+        return attachmentRepository.findByOutboundEmailId(outboundEmailId);
+    }
+
+    // Called once a message is finally SENT or FAILED
+    public void deleteSpool(String outboundEmailId) {
+        Path dir = Paths.get(spoolDir, outboundEmailId);
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.out.println("⚠️ Could not delete spooled file " + path + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("⚠️ Could not clean attachment spool " + dir + ": " + e.getMessage());
+        }
+    }
+
+    // Last path segment of a client-supplied name, cut as plain text: "/" or a NUL byte must not reach Paths.get
+    static String sanitize(String original) {
+        if (original == null) {
+            return "attachment";
+        }
+        String name = original.substring(Math.max(original.lastIndexOf('/'), original.lastIndexOf('\\')) + 1);
+        name = name.replaceAll("[^A-Za-z0-9._-]", "_").replaceAll("^\\.+", "");
+        return name.isEmpty() ? "attachment" : name;
+    }
+}
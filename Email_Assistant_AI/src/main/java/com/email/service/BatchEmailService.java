@@ -0,0 +1,333 @@
+package com.email.service;
+
+import com.email.ai.EmailAIProvider;
+import com.email.ai.EmailAIProviderRegistry;
+import com.email.dto.*;
+import com.email.entity.EmailHistory;
+import com.email.entity.User;
+import com.email.repository.UserRepository;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Many emails in one request: items run on a shared bounded pool, every provider call goes
+// through a per-provider throttle, results are emitted as each item finishes and history
+// rows are written in batches instead of one transaction per item.
+@Service
+@RequiredArgsConstructor
+public class BatchEmailService {
+
+    private final EmailGeneratorService generatorService;
+    private final EmailHistoryService historyService;
+    private final ReplyReuseService replyReuseService;
+    private final EmailAIProviderRegistry providerRegistry;
+    private final UserRepository userRepository;
+
+    @Value("${email.batch.parallelism:4}")
+    private int parallelism;
+
+    @Value("${email.batch.max-items:500}")
+    private int maxItems;
+
+    @Value("${email.batch.history-flush-size:50}")
+    private int historyFlushSize;
+
+    @Value("${email.batch.gemini.max-concurrency:2}")
+    private int geminiConcurrency;
+
+    @Value("${email.batch.gemini.max-requests-per-minute:15}")
+    private int geminiRpm;
+
+    @Value("${email.batch.ollama.max-concurrency:1}")
+    private int ollamaConcurrency;
+
+    @Value("${email.batch.ollama.max-requests-per-minute:0}")
+    private int ollamaRpm;
+
+    // The NDJSON response has to finish within the async request timeout
+    @Value("${spring.mvc.async.request-timeout:15m}")
+    private Duration asyncTimeout;
+
+    private ExecutorService workerPool;
+    private final Map<String, ProviderThrottle> throttles = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        this.workerPool = Executors.newFixedThreadPool(parallelism);
+        throttles.put("GEMINI", new ProviderThrottle(geminiConcurrency, geminiRpm));
+        throttles.put("OLLAMA", new ProviderThrottle(ollamaConcurrency, ollamaRpm));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workerPool.shutdown();
+        workerPool.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    // ✅ Accepts a JSON array or NDJSON: MappingIterator unwraps a root array, otherwise reads
+    // whitespace-separated root objects. Stops reading as soon as max-items is exceeded.
+    public List<BatchItem> readItems(InputStream in) {
+        List<BatchItem> items = new ArrayList<>();
+        try (MappingIterator<BatchItem> it = new ObjectMapper().readerFor(BatchItem.class).readValues(in)) {
+            while (it.hasNextValue()) {
+                if (items.size() == maxItems) {
+                    throw new IllegalArgumentException("Too many items (max " + maxItems + ")");
+                }
+                items.add(it.nextValue());
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Malformed batch input: " + e.getMessage());
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("Batch contains no items");
+        }
+        return items;
+    }
+
+    // ✅ A paced provider needs (items - 1) × its call interval; a batch that cannot finish before
+    // the async request timeout (with 10% to spare) is rejected up front instead of being cut off
+    // part-way. Counts are an upper bound: reused replies skip the provider.
+    public void checkFitsInTimeout(List<BatchItem> items, String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
+        Map<String, Integer> callsPerProvider = new HashMap<>();
+        for (BatchItem item : items) {
+            String provider = providerFor(item, user);
+            if (provider != null) {
+                callsPerProvider.merge(provider, 1, Integer::sum);
+            }
+        }
+        long budgetNanos = asyncTimeout.toNanos() * 9 / 10;
+        callsPerProvider.forEach((provider, calls) -> {
+            ProviderThrottle throttle = throttles.get(provider);
+            if (throttle == null || throttle.intervalNanos == 0) {
+                return;
+            }
+            long fit = budgetNanos / throttle.intervalNanos + 1;
+            if (calls > fit) {
+                throw new IllegalArgumentException(calls + " items need " + provider + ", which is paced to "
+                        + TimeUnit.MINUTES.toNanos(1) / throttle.intervalNanos + "/min; at most " + fit
+                        + " fit in one request (" + asyncTimeout.toMinutes() + " min). Split the batch.");
+            }
+        });
+    }
+
+    // Which provider an item will call, or null if it needs none (invalid, or local intent is enough)
+    private String providerFor(BatchItem item, User user) {
+        String content = item.getEmailContent();
+        if (content == null || content.isBlank()) {
+            return null;
+        }
+        BatchOperation operation = item.getOperation() != null ? item.getOperation() : BatchOperation.GENERATE_REPLY;
+        return switch (operation) {
+            case SUMMARIZE, SUBJECT -> "GEMINI";
+            case DETECT_INTENT -> generatorService.detectIntentLocal(content).getIntent() != EmailIntent.OTHER
+                    ? null : "GEMINI";
+            default -> providerRegistry.getProvider(item.getProvider() != null
+                    ? item.getProvider().name()
+                    : operation == BatchOperation.GENERATE_REPLY ? user.getPreferredAiProvider() : null)
+                    .getProviderName().toUpperCase();
+        };
+    }
+
+    public void process(List<BatchItem> items, String username, Consumer<BatchItemResult> results) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
+        long start = System.nanoTime();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<EmailHistory> pending = new ArrayList<>();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            int index = i;
+            futures.add(CompletableFuture.runAsync(AiCallContext.wrap(() -> {
+                BatchItemResult result = processItem(index, items.get(index), user, pending);
+                (result.error() == null ? succeeded : failed).incrementAndGet();
+                results.accept(result);
+            }), workerPool));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        List<EmailHistory> remaining;
+        synchronized (pending) {
+            remaining = new ArrayList<>(pending);
+            pending.clear();
+        }
+        flushHistory(remaining);
+
+        results.accept(new BatchItemResult(items.size(), null, null, "DONE",
+                Map.of("succeeded", succeeded.get(), "failed", failed.get()), null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        System.out.println("📦 Batch for " + username + " finished: " + succeeded.get() + " ok, " + failed.get() + " failed");
+    }
+
+    private BatchItemResult processItem(int index, BatchItem item, User user, List<EmailHistory> pending) {
+        long start = System.nanoTime();
+        BatchOperation operation = item.getOperation() != null ? item.getOperation() : BatchOperation.GENERATE_REPLY;
+        try {
+            String content = item.getEmailContent();
+            if (content == null || content.isBlank()) {
+                throw new IllegalArgumentException("emailContent is required");
+            }
+
+            // Summaries, subjects and remote intent detection call Gemini directly
+            Object result = switch (operation) {
+                case SUMMARIZE -> throttled("GEMINI", () -> generatorService.summarizeEmail(content));
+                case SUBJECT -> throttled("GEMINI", () -> generatorService.generateSubjectLines(content));
+                case DETECT_INTENT -> {
+                    IntentResponse local = generatorService.detectIntentLocal(content);
+                    yield local.getIntent() != EmailIntent.OTHER
+                            ? local
+                            : throttled("GEMINI", () -> generatorService.detectIntent(content));
+                }
+                default -> rewrite(item, operation.toRewriteMode(), user, pending);
+            };
+            if (result instanceof String text && !EmailMetrics.OUTCOME_SUCCESS.equals(EmailMetrics.outcomeOf(text))) {
+                throw new IllegalStateException(text);
+            }
+            return new BatchItemResult(index, item.getId(), operation, "OK", result, null, elapsedMs(start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BatchItemResult(index, item.getId(), operation, "ERROR", null, "Interrupted", elapsedMs(start));
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return new BatchItemResult(index, item.getId(), operation, "ERROR", null, error, elapsedMs(start));
+        }
+    }
+
+    private String rewrite(BatchItem item, RewriteMode mode, User user, List<EmailHistory> pending)
+            throws InterruptedException {
+        String content = item.getEmailContent();
+        // ✅ Local keywords only: a remote classification would double the provider calls per item
+        EmailIntent intent = generatorService.detectIntentLocal(content).getIntent();
+
+        if (mode == RewriteMode.GENERATE_REPLY) {
+            Optional<String> reused = replyReuseService.findReusableReply(user.getId(), content, item.getTone(), intent);
+            if (reused.isPresent()) {
+                addHistory(pending, generatorService.newHistory(content, reused.get(), item.getTone(), intent, mode, user));
+                return reused.get();
+            }
+        }
+
+        String providerName = item.getProvider() != null
+                ? item.getProvider().name()
+                : mode == RewriteMode.GENERATE_REPLY ? user.getPreferredAiProvider() : null;
+        EmailAIProvider provider = providerRegistry.getProvider(providerName);
+
+        AdvancedEmailRequest request = new AdvancedEmailRequest();
+        request.setEmailContent(content);
+        request.setTone(item.getTone());
+        request.setMode(mode);
+        request.setPromptVersion(item.getPromptVersion());
+
+        String response = throttled(provider.getProviderName(), () -> generatorService.rewrite(request, provider));
+        // ✅ Provider errors come back as text: report the item as ERROR, never save or index it
+        if (!EmailMetrics.OUTCOME_SUCCESS.equals(EmailMetrics.outcomeOf(response))) {
+            throw new IllegalStateException(response);
+        }
+        addHistory(pending, generatorService.newHistory(content, response, item.getTone(), intent, mode, user));
+        return response;
+    }
+
+    private void addHistory(List<EmailHistory> pending, EmailHistory history) {
+        List<EmailHistory> toFlush = null;
+        synchronized (pending) {
+            pending.add(history);
+            if (pending.size() >= historyFlushSize) {
+                toFlush = new ArrayList<>(pending);
+                pending.clear();
+            }
+        }
+        if (toFlush != null) {
+            flushHistory(toFlush);
+        }
+    }
+
+    private void flushHistory(List<EmailHistory> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            historyService.saveAll(rows).forEach(replyReuseService::index);
+            System.out.println("✅ Batch history flushed: " + rows.size() + " rows");
+        } catch (Exception e) {
+            System.out.println("❌ Batch history flush failed (" + rows.size() + " rows): " + e.getMessage());
+        }
+    }
+
+    private <T> T throttled(String providerName, Supplier<T> call) throws InterruptedException {
+        ProviderThrottle throttle = throttles.computeIfAbsent(providerName.toUpperCase(),
+                name -> new ProviderThrottle(parallelism, 0));
+        return throttle.call(call);
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    // Caps in-flight calls to one provider and spaces call starts to its requests-per-minute quota
+    private static final class ProviderThrottle {
+        private final Semaphore permits;
+        private final long intervalNanos;
+        private long nextSlotNanos = Long.MIN_VALUE;  // nanoTime() may be negative
+
+        ProviderThrottle(int maxConcurrency, int requestsPerMinute) {
+            this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+            this.intervalNanos = requestsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / requestsPerMinute : 0;
+        }
+
+        <T> T call(Supplier<T> call) throws InterruptedException {
+            permits.acquire();
+            try {
+                awaitSlot();
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }
+
+        private void awaitSlot() throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long slot;
+            synchronized (this) {
+                slot = Math.max(System.nanoTime(), nextSlotNanos);
+                nextSlotNanos = slot + intervalNanos;
+            }
+            long wait;
+            while ((wait = slot - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+}
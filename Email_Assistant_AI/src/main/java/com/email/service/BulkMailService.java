@@ -0,0 +1,216 @@
+package com.email.service;
+
+import com.email.dto.BulkSendProgress;
+import com.email.dto.BulkSendRequest;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Mail merge: renders one message at a time and pushes it through a few long-lived SMTP
+// sessions (several messages per session), paced to email.bulk.max-messages-per-second.
+@Service
+@RequiredArgsConstructor
+public class BulkMailService {
+
+    private final EmailSender emailSender;
+    private final SmtpTransportPool transportPool;
+
+    @Value("${email.bulk.connections:2}")
+    private int connections;
+
+    @Value("${email.bulk.messages-per-connection:100}")
+    private int messagesPerConnection;
+
+    @Value("${email.bulk.max-messages-per-second:5}")
+    private double maxMessagesPerSecond;
+
+    @Value("${email.bulk.max-recipients:4000}")
+    private int maxRecipients;
+
+    // The NDJSON response has to finish within the async request timeout
+    @Value("${spring.mvc.async.request-timeout:15m}")
+    private Duration asyncTimeout;
+
+    private final Object pacerLock = new Object();
+    private long nextSendNanos = Long.MIN_VALUE;  // nanoTime() may be negative
+
+    public void validate(BulkSendRequest request) {
+        if (request.getBodyTemplate() == null || request.getRecipients() == null || request.getRecipients().isEmpty()) {
+            throw new IllegalArgumentException("bodyTemplate and at least one recipient are required");
+        }
+        if (request.getRecipients().size() > maxRecipients) {
+            throw new IllegalArgumentException("Too many recipients (max " + maxRecipients + ")");
+        }
+        // ✅ Paced sends that would outlast the request are refused up front, not cut off midway
+        if (maxMessagesPerSecond > 0) {
+            long fit = (long) (asyncTimeout.toMillis() * 9 / 10 / 1000.0 * maxMessagesPerSecond) + 1;
+            if (request.getRecipients().size() > fit) {
+                throw new IllegalArgumentException(request.getRecipients().size() + " recipients at "
+                        + maxMessagesPerSecond + "/s do not fit in one request (" + asyncTimeout.toMinutes()
+                        + " min); at most " + fit + ". Split the list.");
+            }
+        }
+    }
+
+    public void send(BulkSendRequest request, Consumer<BulkSendProgress> progress) {
+        List<BulkSendRequest.Recipient> recipients = request.getRecipients();
+        int total = recipients.size();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        // A client that went away (progress write fails) stops the remaining sends
+        AtomicBoolean abandoned = new AtomicBoolean();
+        Consumer<BulkSendProgress> report = p -> {
+            if (abandoned.get()) {
+                return;
+            }
+            try {
+                progress.accept(p);
+            } catch (RuntimeException e) {
+                abandoned.set(true);
+                System.out.println("⚠️ Bulk send abandoned by the client: " + e.getMessage());
+            }
+        };
+
+        int sessions = Math.max(1, Math.min(connections, total));
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        try {
+            List<CompletableFuture<Void>> workers = new ArrayList<>();
+            for (int s = 0; s < sessions; s++) {
+                workers.add(CompletableFuture.runAsync(() ->
+                        runSession(request, next, sent, failed, abandoned, report), executor));
+            }
+            // Interruptible wait: on async timeout Spring cancels this task, which stops the sessions
+            CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            System.out.println("⚠️ Bulk send interrupted: " + sent.get() + " of " + total + " sent");
+            return;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Bulk send failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        report.accept(new BulkSendProgress(total, null, "DONE", null, sent.get(), failed.get(), total));
+        System.out.println("📬 Bulk send finished: " + sent.get() + " sent, " + failed.get() + " failed");
+    }
+
+    // One SMTP session: keeps its transport for up to messagesPerConnection messages
+    private void runSession(BulkSendRequest request, AtomicInteger next, AtomicInteger sent,
+                            AtomicInteger failed, AtomicBoolean abandoned, Consumer<BulkSendProgress> progress) {
+        List<BulkSendRequest.Recipient> recipients = request.getRecipients();
+        int total = recipients.size();
+        Transport transport = null;
+        int sentOnTransport = 0;
+
+        try {
+            int index;
+            while (!abandoned.get() && (index = next.getAndIncrement()) < total) {
+                BulkSendRequest.Recipient recipient = recipients.get(index);
+                try {
+                    if (transport == null || sentOnTransport >= messagesPerConnection) {
+                        if (transport != null) {
+                            transportPool.release(transport, false);
+                            transport = null;
+                        }
+                        transport = transportPool.borrow();
+                        sentOnTransport = 0;
+                    }
+
+                    MimeMessage message = emailSender.buildMessage(
+                            recipient.getTo(),
+                            render(request.getSubjectTemplate(), recipient.getVariables()),
+                            render(request.getBodyTemplate(), recipient.getVariables()));
+                    message.saveChanges();
+
+                    awaitSendSlot();
+                    transport.sendMessage(message, message.getAllRecipients());
+                    sentOnTransport++;
+
+                    progress.accept(new BulkSendProgress(index, recipient.getTo(), "SENT", null,
+                            sent.incrementAndGet(), failed.get(), total));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    if (transport != null && !transport.isConnected()) {
+                        transportPool.release(transport, true);
+                        transport = null;
+                    }
+                    progress.accept(new BulkSendProgress(index, recipient.getTo(), "FAILED", e.getMessage(),
+                            sent.get(), failed.incrementAndGet(), total));
+                }
+            }
+        } finally {
+            if (transport != null) {
+                transportPool.release(transport, false);
+            }
+        }
+    }
+
+    // ✅ Global pacing across all sessions: each send reserves the next 1/rate slot
+    private void awaitSendSlot() throws InterruptedException {
+        if (maxMessagesPerSecond <= 0) {
+            return;
+        }
+        long interval = (long) (1_000_000_000L / maxMessagesPerSecond);
+        long slot;
+        synchronized (pacerLock) {
+            long now = System.nanoTime();
+            slot = Math.max(now, nextSendNanos);
+            nextSendNanos = slot + interval;
+        }
+        long wait;
+        while ((wait = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    // {{name}} placeholders, single left-to-right pass; unknown variables render as empty
+    static String render(String template, Map<String, String> variables) {
+        if (template == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(template.length() + 64);
+        int pos = 0;
+        while (pos < template.length()) {
+            int open = template.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            int close = template.indexOf("}}", open + 2);
+            if (close < 0) {
+                break;
+            }
+            out.append(template, pos, open);
+            String value = variables != null ? variables.get(template.substring(open + 2, close).trim()) : null;
+            if (value != null) {
+                out.append(value);
+            }
+            pos = close + 2;
+        }
+        out.append(template, pos, template.length());
+        return out.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package com.email.service;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+
+// Load shedding for the endpoints that wait on an LLM: over the adaptive limit → 503 with
+// Retry-After straight away. Everything else (history, analytics, auth, ...) is never shed and,
+// since max-limit stays below server.tomcat.threads.max, always finds a free worker thread even
+// when every LLM slot is taken by a slow provider.
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final EmailMetrics metrics;
+
+    @Value("${email.concurrency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${email.concurrency.paths:/api/email/generate,/api/email/thread-reply,/api/email/follow-up,/api/email/detect-intent,/api/email/subject,/api/email/summarize,/api/email/score-quality,/api/email/detect-risk}")
+    private Set<String> limitedPaths;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !limitedPaths.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Optional<AdaptiveConcurrencyLimiter.Permit> acquired = limiter.tryAcquire();
+        if (acquired.isEmpty()) {
+            metrics.shed(request.getRequestURI());
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(limiter.retryAfterSeconds()));
+            response.getWriter().write("Service busy (concurrency limit " + limiter.limit() + "). Try again shortly.");
+            return;
+        }
+
+        AdaptiveConcurrencyLimiter.Permit permit = acquired.get();
+        try {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            // Async handler: the slot stays taken until the response is actually complete
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    release(permit, response);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            release(permit, response);
+        }
+    }
+
+    // 4xx means the request never reached the provider (or was rejected by it up front)
+    private static void release(AdaptiveConcurrencyLimiter.Permit permit, HttpServletResponse response) {
+        int status = response.getStatus();
+        if (status >= 400 && status < 500) {
+            permit.releaseWithoutSample();
+        } else {
+            permit.release();
+        }
+    }
+}
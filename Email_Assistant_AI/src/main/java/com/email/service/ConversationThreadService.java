@@ -0,0 +1,196 @@
+package com.email.service;
+
+import com.email.ai.EmailAIProvider;
+import com.email.ai.EmailAIProviderRegistry;
+import com.email.dto.CreateThreadRequest;
+import com.email.dto.ThreadMessageRole;
+import com.email.dto.ThreadSummaryResponse;
+import com.email.entity.ConversationThread;
+import com.email.entity.ThreadMessage;
+import com.email.entity.User;
+import com.email.repository.ConversationThreadRepository;
+import com.email.repository.ThreadMessageRepository;
+import com.email.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Threads live on the server: a thread reply sends only the newest email. The prompt gets the
+// rolling summary plus the unsummarized tail, and the summary is advanced in the background
+// (old summary + messages leaving the recent window → new summary), so its size stays bounded.
+@Service
+@RequiredArgsConstructor
+public class ConversationThreadService {
+
+    private final ConversationThreadRepository threadRepository;
+    private final ThreadMessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final EmailAIProviderRegistry providerRegistry;
+    private final EmailPreprocessor preprocessor;
+    private final TransactionTemplate transactionTemplate;
+    private final FairLlmScheduler scheduler;
+    private final EmailBlobStore blobStore;
+
+    @Value("${email.threads.recent-messages:4}")
+    private int recentMessages;
+
+    @Value("${email.threads.summary-max-words:250}")
+    private int summaryMaxWords;
+
+    private ExecutorService summaryPool;
+    private final Set<Long> summarizing = ConcurrentHashMap.newKeySet();
+
+    // Rolling summary + unsummarized messages, oldest first (newest email not included)
+    public record ThreadContext(String summary, List<ThreadMessage> recent) {}
+
+    @PostConstruct
+    public void init() {
+        this.summaryPool = Executors.newFixedThreadPool(2);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        summaryPool.shutdown();
+    }
+
+    public ThreadSummaryResponse create(CreateThreadRequest request, String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
+        ConversationThread thread = transactionTemplate.execute(status -> {
+            ConversationThread created = new ConversationThread();
+            created.setUser(user);
+            created.setSubject(request.getSubject());
+            created = threadRepository.save(created);
+            for (String message : request.getMessages()) {
+                append(created, ThreadMessageRole.INCOMING, message);
+            }
+            return threadRepository.save(created);
+        });
+        refreshSummaryAsync(thread.getId());
+        return toResponse(thread);
+    }
+
+    public Optional<ThreadSummaryResponse> get(Long threadId, String username) {
+        return threadRepository.findByIdAndUser_Username(threadId, username).map(this::toResponse);
+    }
+
+    // ✅ Context to prompt with; nothing is stored until the reply has actually been generated
+    public ThreadContext loadContext(Long threadId, String username) {
+        ConversationThread thread = threadRepository.findByIdAndUser_Username(threadId, username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Thread not found: " + threadId));
+        List<ThreadMessage> unsummarized = messageRepository
+                .findByThreadIdAndSeqGreaterThanOrderBySeqAsc(threadId, thread.getSummarizedThroughSeq());
+        return new ThreadContext(thread.getSummary(), unsummarized);
+    }
+
+    // Incoming email and our reply go in together, so a client retrying after a failed
+    // generation doesn't leave the same email in the thread twice
+    public void recordExchange(Long threadId, String username, String incoming, String reply) {
+        transactionTemplate.executeWithoutResult(status -> {
+            ConversationThread thread = threadRepository.findByIdAndUser_Username(threadId, username)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Thread not found: " + threadId));
+            append(thread, ThreadMessageRole.INCOMING, incoming);
+            append(thread, ThreadMessageRole.REPLY, reply);
+            threadRepository.save(thread);
+        });
+        refreshSummaryAsync(threadId);
+    }
+
+    private void append(ConversationThread thread, ThreadMessageRole role, String content) {
+        ThreadMessage message = new ThreadMessage();
+        message.setThreadId(thread.getId());
+        message.setSeq(thread.getMessageCount() + 1);
+        message.setRole(role);
+        message.setContent(content != null ? content : "");
+        blobStore.store(message.getContent());  // the entity only keeps the hash
+        messageRepository.save(message);
+        thread.setMessageCount(message.getSeq());
+    }
+
+    private void refreshSummaryAsync(Long threadId) {
+        if (summarizing.add(threadId)) {
+            summaryPool.execute(AiCallContext.wrap(() -> {
+                try {
+                    refreshSummary(threadId);
+                } finally {
+                    summarizing.remove(threadId);
+                }
+            }));
+        }
+    }
+
+    // Folds every message older than the recent window into the summary (one model call)
+    private void refreshSummary(Long threadId) {
+        try {
+            ConversationThread thread = threadRepository.findById(threadId).orElse(null);
+            if (thread == null) {
+                return;
+            }
+            int foldFrom = thread.getSummarizedThroughSeq() + 1;
+            int foldThrough = thread.getMessageCount() - recentMessages;
+            if (foldThrough < foldFrom) {
+                return;
+            }
+
+            StringBuilder newMessages = new StringBuilder();
+            for (ThreadMessage message : messageRepository.findByThreadIdAndSeqBetweenOrderBySeqAsc(threadId, foldFrom, foldThrough)) {
+                newMessages.append(message.getRole() == ThreadMessageRole.REPLY ? "Us: " : "Them: ")
+                        .append(preprocessor.clean(message.getContent())).append("\n\n");
+            }
+            String prompt = """
+                    You maintain a running summary of an email conversation.
+                    Update the summary with the new messages. Keep names, commitments, open questions,
+                    decisions and deadlines. At most %d words. Return only the summary text.
+
+                    Current summary:
+                    %s
+
+                    New messages:
+                    %s
+                    """.formatted(summaryMaxWords,
+                    thread.getSummary() != null ? thread.getSummary() : "(none yet)", newMessages);
+
+            EmailAIProvider provider = providerRegistry.getDefaultProvider();
+            String summary = scheduler.call(provider.getProviderName(), "thread_summary", prompt.length(),
+                    () -> provider.generateReply(prompt));
+            // Anything but a real summary (rate limited, empty content, ...) would replace the folded messages for good
+            if (summary == null || summary.isBlank()
+                    || !EmailMetrics.OUTCOME_SUCCESS.equals(EmailMetrics.outcomeOf(summary))) {
+                System.out.println("⚠️ Thread " + threadId + " summary not updated: " + summary);
+                return;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                ConversationThread current = threadRepository.findById(threadId).orElseThrow();
+                if (current.getSummarizedThroughSeq() == foldFrom - 1) {
+                    current.setSummary(summary.strip());
+                    current.setSummarizedThroughSeq(foldThrough);
+                    threadRepository.save(current);
+                }
+            });
+            System.out.println("🧵 Thread " + threadId + " summary now covers messages 1-" + foldThrough);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // A message was appended meanwhile; the next reply triggers another fold
+        } catch (Exception e) {
+            System.out.println("❌ Thread " + threadId + " summary failed: " + e.getMessage());
+        }
+    }
+
+    private ThreadSummaryResponse toResponse(ConversationThread thread) {
+        return new ThreadSummaryResponse(thread.getId(), thread.getSubject(), thread.getMessageCount(),
+                thread.getSummarizedThroughSeq(), thread.getSummary(), thread.getUpdatedAt());
+    }
+}
@@ -1,10 +1,12 @@
 package com.email.service;
 
 
+import com.email.dto.ArchiveStats;
 import com.email.dto.EmailAnalyticsResponse;
 import com.email.dto.EmailIntent;
 import com.email.dto.EmailTone;
 import com.email.repository.EmailHistoryRepository;
+import com.email.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -17,12 +19,14 @@ import java.util.stream.Collectors;
 public class EmailAnalyticsService {
 
     private final EmailHistoryRepository historyRepository;
+    private final UserRepository userRepository;
+    private final HistoryArchiveStore archiveStore;
 
     public EmailAnalyticsResponse getAnalyticsForUser(String username) {
-        long total = historyRepository.countByUser_Username(username);
+        long hotTotal = historyRepository.countByUser_Username(username);
 
         Double avgLen = historyRepository.avgEmailLengthByUser(username);
-        double averageLength = avgLen != null ? avgLen : 0.0;
+        double hotAverageLength = avgLen != null ? avgLen : 0.0;
 
         Map<EmailTone, Long> toneCounts = historyRepository.countByToneForUser(username).stream()
                 .collect(Collectors.toMap(
@@ -36,6 +40,18 @@ public class EmailAnalyticsService {
                         row -> (Long) row[1]
                 ));
 
+        // ✅ Fold in the archived tier from its running aggregates (no segment scan)
+        ArchiveStats archived = userRepository.findByUsername(username)
+                .map(user -> archiveStore.stats(user.getId()))
+                .orElseGet(ArchiveStats::new);
+        archived.getToneCounts().forEach((tone, count) -> toneCounts.merge(tone, count, Long::sum));
+        archived.getIntentCounts().forEach((intent, count) -> intentCounts.merge(intent, count, Long::sum));
+
+        long total = hotTotal + archived.getCount();
+        double averageLength = total > 0
+                ? (hotAverageLength * hotTotal + archived.getTotalContentLength()) / total
+                : 0.0;
+
         return new EmailAnalyticsResponse(
                 total,
                 toneCounts,
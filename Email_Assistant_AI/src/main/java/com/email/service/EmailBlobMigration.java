@@ -0,0 +1,147 @@
+package com.email.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// One-off move of body columns from raw TEXT to blob hashes. ddl-auto=update never alters an
+// existing column, so on a database created before the blob store this:
+//   1. backfills raw bodies into email_blob and replaces them with their hash (keyset batches),
+//   2. shrinks the column to VARCHAR(64),
+//   3. creates the hash index blob GC relies on.
+// Every step checks information_schema first, so later startups do nothing. Runs once the app
+// is up: reads handle raw and hashed rows alike (EmailBlobStore.load), new rows are hashed.
+@Component
+@RequiredArgsConstructor
+public class EmailBlobMigration {
+
+    private static final int BATCH = 500;
+
+    // table → body column → index name ("" = no index)
+    private static final Map<String, Map<String, String>> BODY_COLUMNS = Map.of(
+            "email_history", Map.of(
+                    "email_content", "idx_history_email_content",
+                    "generated_response", "idx_history_generated_response"),
+            "thread_message", Map.of(
+                    "content", ""));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmailBlobStore blobStore;
+
+    @Value("${email.blob.migration.enabled:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        BODY_COLUMNS.forEach((table, columns) -> {
+            try {
+                List<String> raw = columns.keySet().stream().filter(column -> !isHashColumn(table, column)).toList();
+                if (!raw.isEmpty()) {
+                    long rows = backfill(table, raw);
+                    for (String column : raw) {
+                        jdbcTemplate.execute("ALTER TABLE " + table + " MODIFY " + column + " VARCHAR(64) NOT NULL");
+                    }
+                    System.out.println("✅ Moved " + rows + " " + table + " bodies to email_blob, " + raw + " now VARCHAR(64)");
+                }
+                columns.forEach((column, index) -> {
+                    if (!index.isEmpty() && !indexExists(table, index)) {
+                        jdbcTemplate.execute("CREATE INDEX " + index + " ON " + table + " (" + column + ")");
+                        System.out.println("✅ Created index " + index);
+                    }
+                });
+            } catch (Exception e) {
+                System.out.println("❌ Email blob migration of " + table + " failed (retried on next start): " + e.getMessage());
+            }
+        });
+    }
+
+    // Rewrites every row whose body is not yet a stored hash; returns how many rows changed
+    private long backfill(String table, List<String> columns) {
+        String select = "SELECT id, " + String.join(", ", columns) + " FROM " + table
+                + " WHERE id > ? ORDER BY id LIMIT " + BATCH;
+        String update = "UPDATE " + table + " SET " + String.join(" = ?, ", columns) + " = ? WHERE id = ?";
+        long changed = 0;
+        long lastId = 0;
+        List<Map<String, Object>> batch;
+        do {
+            batch = jdbcTemplate.queryForList(select, lastId);
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<String> candidates = new ArrayList<>();
+            for (Map<String, Object> row : batch) {
+                for (String column : columns) {
+                    String value = (String) row.get(column);
+                    if (value != null && EmailBlobStore.looksLikeHash(value)) {
+                        candidates.add(value);
+                    }
+                }
+            }
+            Set<String> stored = blobStore.existing(candidates);
+
+            List<String> bodies = new ArrayList<>();
+            List<Map<String, Object>> rawRows = new ArrayList<>();
+            for (Map<String, Object> row : batch) {
+                boolean raw = false;
+                for (String column : columns) {
+                    String value = (String) row.get(column);
+                    if (value != null && !stored.contains(value)) {
+                        bodies.add(value);
+                        raw = true;
+                    }
+                }
+                if (raw) {
+                    rawRows.add(row);
+                }
+            }
+            if (!rawRows.isEmpty()) {
+                blobStore.storeAll(bodies);
+                List<Object[]> args = new ArrayList<>(rawRows.size());
+                for (Map<String, Object> row : rawRows) {
+                    Object[] values = new Object[columns.size() + 1];
+                    for (int i = 0; i < columns.size(); i++) {
+                        String value = (String) row.get(columns.get(i));
+                        values[i] = value == null || stored.contains(value) ? value : EmailBlobStore.hashOf(value);
+                    }
+                    values[columns.size()] = row.get("id");
+                    args.add(values);
+                }
+                jdbcTemplate.batchUpdate(update, args);
+                changed += rawRows.size();
+            }
+            lastId = ((Number) batch.get(batch.size() - 1).get("id")).longValue();
+        } while (batch.size() == BATCH);
+        return changed;
+    }
+
+    private boolean isHashColumn(String table, String column) {
+        List<Map<String, Object>> info = jdbcTemplate.queryForList(
+                "SELECT DATA_TYPE, CHARACTER_MAXIMUM_LENGTH FROM information_schema.COLUMNS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?", table, column);
+        if (info.isEmpty()) {
+            return true;  // table not created yet: nothing to migrate
+        }
+        Object length = info.get(0).get("CHARACTER_MAXIMUM_LENGTH");
+        return "varchar".equalsIgnoreCase(String.valueOf(info.get(0).get("DATA_TYPE")))
+                && length != null && ((Number) length).longValue() == 64;
+    }
+
+    private boolean indexExists(String table, String index) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.STATISTICS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?",
+                Integer.class, table, index);
+        return count != null && count > 0;
+    }
+}
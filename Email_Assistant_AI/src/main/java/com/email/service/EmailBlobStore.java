@@ -0,0 +1,235 @@
+package com.email.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Content-addressed store for email bodies: SHA-256 → Deflate(shared dictionary) bytes in email_blob.
+// Identical bodies are written once; history rows only keep the 64-char hash.
+@Service
+@RequiredArgsConstructor
+public class EmailBlobStore {
+
+    private static final byte CODEC_DEFLATE_DICT_V1 = 1;
+    private static final int DELETE_BATCH = 500;
+
+    // Phrases that show up in most emails; priming Deflate with them helps short bodies the most.
+    // Never change this in place: add a new codec version instead, old blobs depend on it.
+    private static final byte[] DICTIONARY_V1 = String.join("\n",
+            "Dear Sir or Madam,", "Hi team,", "Hello,", "Hi,", "Dear ",
+            "I hope this email finds you well.", "I hope you are doing well.",
+            "Thank you for your email.", "Thank you for reaching out.", "Thanks for getting back to me.",
+            "I am writing to", "I wanted to follow up on", "Just following up on my previous email",
+            "Please let me know if you have any questions.", "Please find attached",
+            "Looking forward to hearing from you.", "I look forward to your response.",
+            "at your earliest convenience", "Please do not hesitate to contact me",
+            "Best regards,", "Kind regards,", "Regards,", "Sincerely,", "Thanks,", "Thank you,",
+            "application", "interview", "position", "schedule", "meeting", "support", "issue",
+            "refund", "pricing", "order", "account", "request", "available", "information",
+            "On Mon, Tue, Wed, Thu, Fri, Sat, Sun, wrote:", "-----Original Message-----",
+            "From: Sent: To: Subject: Re: Fwd:"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${email.blob.cache-size:2000}")
+    private int cacheSize;
+
+    // A blob stored within this window may be about to get its history row, so cleanup skips it
+    @Value("${email.blob.gc-grace-hours:24}")
+    private long gcGraceHours;
+
+    private final Map<String, String> bodyCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+
+    // ✅ Dedup on write: the first copy is kept, returns the hash either way. An existing blob
+    // gets its last_used_at refreshed (at most hourly, so repeats don't turn into writes), which
+    // keeps deleteUnreferenced() from removing it before the new history row is committed.
+    private static final String UPSERT =
+            "INSERT INTO email_blob (hash, compressed_bytes, length, last_used_at) VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE last_used_at = " +
+                    "CASE WHEN last_used_at IS NULL OR last_used_at < ? THEN ? ELSE last_used_at END";
+
+    public String store(String body) {
+        String hash = hashOf(body);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(UPSERT, hash, compress(body), body.length(), now, touchBefore(now), now);
+        bodyCache.put(hash, body);
+        return hash;
+    }
+
+    // ✅ Batched store() for imports: one JDBC batch, duplicates within the batch collapsed,
+    // cache left alone so a large import does not evict the working set
+    public List<String> storeAll(List<String> bodies) {
+        Map<String, String> unique = new LinkedHashMap<>();
+        List<String> hashes = new ArrayList<>(bodies.size());
+        for (String body : bodies) {
+            String hash = hashOf(body);
+            hashes.add(hash);
+            unique.putIfAbsent(hash, body);
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Timestamp touchBefore = touchBefore(now);
+        List<Object[]> rows = new ArrayList<>(unique.size());
+        unique.forEach((hash, body) -> rows.add(new Object[]{hash, compress(body), body.length(), now, touchBefore, now}));
+        jdbcTemplate.batchUpdate(UPSERT, rows);
+        return hashes;
+    }
+
+    // Which of these hashes have a blob (one IN query per 500)
+    public Set<String> existing(Collection<String> hashes) {
+        List<String> all = new ArrayList<>(hashes);
+        Set<String> found = new HashSet<>();
+        for (int from = 0; from < all.size(); from += DELETE_BATCH) {
+            List<String> batch = all.subList(from, Math.min(all.size(), from + DELETE_BATCH));
+            found.addAll(jdbcTemplate.queryForList(
+                    "SELECT hash FROM email_blob WHERE hash IN (" + String.join(",", Collections.nCopies(batch.size(), "?")) + ")",
+                    String.class, batch.toArray()));
+        }
+        return found;
+    }
+
+    public String load(String hash) {
+        String cached = bodyCache.get(hash);
+        if (cached != null) {
+            return cached;
+        }
+        // ✅ Rows written before the blob store hold the raw body in the column
+        if (!looksLikeHash(hash)) {
+            return hash;
+        }
+        List<byte[]> rows = jdbcTemplate.query(
+                "SELECT compressed_bytes FROM email_blob WHERE hash = ?",
+                (rs, rowNum) -> rs.getBytes(1), hash);
+        if (rows.isEmpty()) {
+            return hash;
+        }
+        String body = decompress(rows.get(0));
+        bodyCache.put(hash, body);
+        return body;
+    }
+
+    // Deletes the given blobs unless some email_history row still points at them or they were
+    // stored within the grace period (a save may be in flight). Set-based, 500 hashes per statement;
+    // the history lookups use idx_history_email_content / idx_history_generated_response.
+    public int deleteUnreferenced(Collection<String> hashes) {
+        Timestamp storedBefore = Timestamp.valueOf(LocalDateTime.now().minusHours(gcGraceHours));
+        List<String> all = new ArrayList<>(hashes);
+        int deleted = 0;
+        for (int from = 0; from < all.size(); from += DELETE_BATCH) {
+            List<String> batch = all.subList(from, Math.min(all.size(), from + DELETE_BATCH));
+            List<Object> args = new ArrayList<>(batch);
+            args.add(storedBefore);
+            deleted += jdbcTemplate.update(
+                    "DELETE FROM email_blob WHERE hash IN (" + String.join(",", Collections.nCopies(batch.size(), "?")) + ") " +
+                            "AND (last_used_at IS NULL OR last_used_at < ?) " +
+                            "AND NOT EXISTS (SELECT 1 FROM email_history h WHERE h.email_content = email_blob.hash) " +
+                            "AND NOT EXISTS (SELECT 1 FROM email_history h WHERE h.generated_response = email_blob.hash)",
+                    args.toArray());
+            batch.forEach(bodyCache::remove);
+        }
+        return deleted;
+    }
+
+    // Refresh last_used_at only when it is over an hour old
+    private static Timestamp touchBefore(Timestamp now) {
+        return Timestamp.valueOf(now.toLocalDateTime().minusHours(1));
+    }
+
+    public static String hashOf(String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static byte[] compress(String body) {
+        byte[] input = body.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            out.write(CODEC_DEFLATE_DICT_V1);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decompress(byte[] stored) {
+        if (stored.length == 0 || stored[0] != CODEC_DEFLATE_DICT_V1) {
+            throw new IllegalStateException("Unknown email blob codec");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, 1, stored.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY_V1);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Truncated email blob");
+                    }
+                    continue;
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt email blob: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public static boolean looksLikeHash(String value) {
+        if (value.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,27 +2,35 @@ package com.email.service;                      // ✅ DTO EmailTone
 
 import com.email.ai.EmailAIProvider;
 import com.email.ai.EmailAIProviderRegistry;
+import com.email.ai.ProviderQuotaCoordinator;
+import com.email.ai.RequestDeadline;
+import com.email.ai.TokenUsage;
 import com.email.dto.*;
 import com.email.entity.EmailHistory;
+import com.email.entity.ThreadMessage;
 import com.email.entity.User;
 import com.email.repository.UserRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Tags;
 import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -32,19 +40,36 @@ public class EmailGeneratorService {
     private final EmailHistoryService historyService;
     private final UserRepository userRepository;  // ✅ NEW: Load user from DB
     private final EmailAIProviderRegistry providerRegistry;
+    private final ReplyReuseService replyReuseService;
+    private final EmailPreprocessor preprocessor;  // ✅ strips quoted history/signatures before prompting
+    private final TokenBudgetService tokenBudget;
+    private final ConversationThreadService threadService;
+    private final EmailMetrics metrics;
+    private final FairLlmScheduler scheduler;
+    private final ProviderQuotaCoordinator quota;
 
     @Value("${gemini.api.url}")
     private String geminiApiUrl;
 
     @Value("${gemini.api.key}")
     private String geminiApiKey;
+
+    // ✅ One timeout per Gemini request; a request deadline shortens it further
+    @Value("${gemini.timeout:20s}")
+    private Duration geminiTimeout;
     private WebClient webClient;  // ✅ Lazy init
 
+    @Value("${email.prompt.budget.summarize:6000}")
+    private int summarizeBudgetTokens;
+
+    @Value("${email.prompt.budget.thread-reply:6000}")
+    private int threadReplyBudgetTokens;
+
     @PostConstruct
     public void init() {
         this.webClient = webClientBuilder
                 .clientConnector(new org.springframework.http.client.reactive.ReactorClientHttpConnector(
-                        HttpClient.create().responseTimeout(Duration.ofSeconds(20))))
+                        HttpClient.create().responseTimeout(geminiTimeout)))
                 .build();
         debugEnv();
     }
@@ -60,16 +85,28 @@ public class EmailGeneratorService {
 
     // in EmailGeneratorService
     public String geminiGenerateText(String prompt) {
-        String response = callGeminiApi(prompt);
+        String response = callGeminiApi("generate_text", prompt);
         return extractResponseContent(response);
     }
 
-    private String callGeminiApi(String prompt) {
+    private String callGeminiApi(String operation, String prompt) {
+        return scheduler.call("GEMINI", operation, prompt.length(), () -> callGeminiApiWithRetry(operation, prompt));
+    }
+
+    private String callGeminiApiWithRetry(String operation, String prompt) {
         int maxRetries = 3;
         for (int attempt = 0; attempt < maxRetries; attempt++) {
             try {
-                // ✅ Add 1s delay between requests
-                Thread.sleep(1000 * attempt);
+                // ✅ Add 1s delay between requests (only while the request deadline leaves room for another try)
+                RequestDeadline.sleep(1000L * attempt);
+
+                // ✅ Every attempt spends a request from the cluster-wide Gemini quota (prompt + max output tokens)
+                Optional<ProviderQuotaCoordinator.Permit> permit =
+                        quota.acquire("GEMINI", geminiApiKey, prompt.length() / 4 + 800);
+                if (permit.isEmpty()) {
+                    metrics.rateLimited("GEMINI");
+                    return "Rate limited: the Gemini quota shared by all nodes is used up. Try again in a minute.";
+                }
 
                 Map<String, Object> requestBody = Map.of(
                         "contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))),
@@ -81,24 +118,41 @@ public class EmailGeneratorService {
                         )
                 );
 
-                String response = webClient.post()
-                        .uri(geminiApiUrl + "?key=" + geminiApiKey)
-                        .header("Content-Type", "application/json")
-                        .bodyValue(requestBody)
-                        .retrieve()
-                        .onStatus(HttpStatusCode::is4xxClientError, clientResponse ->
-                                Mono.error(new RuntimeException("Gemini API Error: " + clientResponse.statusCode())))
-                        .bodyToMono(String.class)
-                        .block(Duration.ofSeconds(15));  // ✅ Reduced timeout
-
-                return response;
+                // ✅ One span per attempt, so retries and their backoff show up in the trace
+                TokenUsage used = null;
+                try {
+                    String response = metrics.time("provider.attempt",
+                            Tags.of("provider", "GEMINI", "attempt", String.valueOf(attempt + 1)),
+                            () -> webClient.post()
+                                    .uri(geminiApiUrl + "?key=" + geminiApiKey)
+                                    .header("Content-Type", "application/json")
+                                    .bodyValue(requestBody)
+                                    .retrieve()
+                                    .onStatus(HttpStatusCode::is4xxClientError, clientResponse ->
+                                            Mono.error(new RuntimeException("Gemini API Error: " + clientResponse.statusCode())))
+                                    .bodyToMono(String.class)
+                                    .block(RequestDeadline.timeout(geminiTimeout)));  // ✅ Cancels the HTTP call on timeout
+
+                    reportGeminiUsage(response);
+                    used = TokenUsage.peek();
+                    return response;
+                } finally {
+                    permit.get().settle(used);  // a failed attempt keeps its estimate spent
+                }
 
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Error processing request: interrupted";
+            } catch (RequestDeadline.ExceededException e) {
+                throw e;
             } catch (Exception e) {
                 if (e.getMessage().contains("429") || e.getMessage().contains("Too Many Requests")) {
                     System.out.println("⏳ Rate limited. Retry " + (attempt + 1) + "/" + maxRetries);
+                    metrics.rateLimited("GEMINI");
                     if (attempt == maxRetries - 1) {
                         return "Rate limited by Gemini. Try again in 1-2 minutes. (Free tier: 15 RPM)";
                     }
+                    metrics.retry("GEMINI", operation);
                     continue;
                 }
                 throw new RuntimeException("Gemini API failed: " + e.getMessage(), e);
@@ -115,12 +169,19 @@ public class EmailGeneratorService {
                 ? emailRequest.getPromptVersion()
                 : PromptVersion.V2_STRUCTURED;
 
-        String prompt = buildPromptForVersion(
-                emailRequest.getEmailContent(),
-                emailRequest.getTone(),
-                version
-        );
         User user = userRepository.findByUsername(auth.getName()).orElseThrow();
+
+        // ✅ Near-duplicate of a past email with same tone + intent → reuse that reply, no LLM call
+        Optional<String> reused = replyReuseService.findReusableReply(
+                user.getId(), emailRequest.getEmailContent(), emailRequest.getTone(), intent);
+        if (reused.isPresent()) {
+            saveToHistory(emailRequest.getEmailContent(), reused.get(),
+                    emailRequest.getTone(), intent, RewriteMode.GENERATE_REPLY, auth);
+            return reused.get();
+        }
+
+        PromptParts prompt = metrics.time("prompt.build", Tags.of("operation", "generate_reply"),
+                () -> buildPromptForVersion(emailRequest.getEmailContent(), emailRequest.getTone(), version));
         String preferredProvider = user.getPreferredAiProvider();
 
         EmailAIProvider provider = providerRegistry.getProvider(
@@ -131,10 +192,14 @@ public class EmailGeneratorService {
 //                emailRequest.getProvider() != null ? emailRequest.getProvider().name() : null
 //        );
 
-        String finalResponse = provider.generateReply(prompt);
+        String finalResponse;
+        try (AiCallContext.Scope ignored = AiCallContext.open(auth.getName(), version)) {
+            finalResponse = scheduler.call(provider.getProviderName(), "generate_reply", prompt.length(),
+                    () -> provider.generateReply(prompt.preamble(), prompt.body()));
+        }
 
         saveToHistory(emailRequest.getEmailContent(), finalResponse,
-                emailRequest.getTone(), intent, auth);
+                emailRequest.getTone(), intent, RewriteMode.GENERATE_REPLY, auth);
 
 
         return finalResponse;
@@ -142,20 +207,33 @@ public class EmailGeneratorService {
 
 
     public String processMode(AdvancedEmailRequest request, Authentication auth) {
-        String prompt = buildModeSpecificPrompt(request);
-
         EmailAIProvider provider = providerRegistry.getProvider(
                 request.getProvider() != null ? request.getProvider().name() : null
         );
 
-        String finalResponse = provider.generateReply(prompt);
+        String finalResponse = rewrite(request, provider);
 
         EmailIntent intent = detectIntent(request.getEmailContent()).getIntent();
-        saveToHistory(request.getEmailContent(), finalResponse, request.getTone(), intent, auth);
+        saveToHistory(request.getEmailContent(), finalResponse, request.getTone(), intent, request.getMode(), auth);
         return finalResponse;
     }
 
-    private String buildModeSpecificPrompt(AdvancedEmailRequest request) {
+    // ✅ Prompt + provider call only; callers decide how (and when) history is persisted
+    public String rewrite(AdvancedEmailRequest request, EmailAIProvider provider) {
+        String operation = request.getMode() != null ? request.getMode().name().toLowerCase() : "rewrite";
+        PromptParts prompt = metrics.time("prompt.build", Tags.of("operation", operation),
+                () -> buildModeSpecificPrompt(request));
+        // Only GENERATE_REPLY prompts are versioned
+        PromptVersion version = request.getMode() == RewriteMode.GENERATE_REPLY
+                ? (request.getPromptVersion() != null ? request.getPromptVersion() : PromptVersion.V2_STRUCTURED)
+                : null;
+        try (AiCallContext.Scope ignored = AiCallContext.open(null, version)) {
+            return scheduler.call(provider.getProviderName(), operation, prompt.length(),
+                    () -> provider.generateReply(prompt.preamble(), prompt.body()));
+        }
+    }
+
+    PromptParts buildModeSpecificPrompt(AdvancedEmailRequest request) {
         String emailContent = request.getEmailContent();
         RewriteMode mode = request.getMode();
         EmailTone toneEnum = request.getTone();
@@ -165,32 +243,77 @@ public class EmailGeneratorService {
                 : PromptVersion.V2_STRUCTURED;
 
         // Only GENERATE_REPLY uses versioned prompts; others keep specialized instructions
-        String basePrompt = switch (mode) {
+        PromptParts basePrompt = switch (mode) {
             case GENERATE_REPLY -> buildPromptForVersion(emailContent, toneEnum, version);
 
-            case POLISH -> "Polish this email: fix grammar, improve clarity, keep meaning same.\n\n" + emailContent;
+            case POLISH -> new PromptParts("Polish this email: fix grammar, improve clarity, keep meaning same.\n\n", emailContent);
 
-            case SHORTEN -> "Shorten this email: keep all key points, remove redundancy.\n\n" + emailContent;
+            case SHORTEN -> new PromptParts("Shorten this email: keep all key points, remove redundancy.\n\n", emailContent);
 
-            case EXPAND -> "Expand this email: add polite details and clarification while keeping original intent.\n\n" + emailContent;
+            case EXPAND -> new PromptParts("Expand this email: add polite details and clarification while keeping original intent.\n\n", emailContent);
 
-            case MAKE_FORMAL -> "Rewrite this email as a completely formal business email.\n\n" + emailContent;
+            case MAKE_FORMAL -> new PromptParts("Rewrite this email as a completely formal business email.\n\n", emailContent);
 
             default -> throw new IllegalArgumentException("Unknown mode: " + mode);
         };
 
-        return basePrompt + "\n\nTone: " + tone;
+        return new PromptParts(basePrompt.preamble(), basePrompt.body() + "\n\nTone: " + tone);
     }
 
 
     // ✅ NEW: Thread-aware with Authentication
     public String generateThreadAwareReply(ThreadAwareRequest request, Authentication auth) {
-        String prompt = buildThreadAwarePrompt(request);
-        String response = callGeminiApi(prompt);
+        if (request.getThreadId() != null && auth != null) {
+            return generateStoredThreadReply(request, auth);
+        }
+        String prompt = metrics.time("prompt.build", Tags.of("operation", "thread_reply"),
+                () -> buildThreadAwarePrompt(request));
+        String response = callGeminiApi("thread_reply", prompt);
         String finalResponse = extractResponseContent(response);
 
         EmailIntent intent = detectIntent(request.getEmailContent()).getIntent();
-        saveToHistory(request.getEmailContent(), finalResponse, request.getTone(), intent, auth);
+        saveToHistory(request.getEmailContent(), finalResponse, request.getTone(), intent, null, auth);
+        return finalResponse;
+    }
+
+    // ✅ Server-side thread: prompt = rolling summary + unsummarized tail + newest email
+    private String generateStoredThreadReply(ThreadAwareRequest request, Authentication auth) {
+        ConversationThreadService.ThreadContext context =
+                threadService.loadContext(request.getThreadId(), auth.getName());
+
+        String latest = preprocessor.clean(request.getEmailContent());
+        StringBuilder recent = new StringBuilder();
+        for (ThreadMessage message : context.recent()) {
+            recent.append(message.getRole() == ThreadMessageRole.REPLY ? "Us: " : "Them: ")
+                    .append(preprocessor.clean(message.getContent())).append("\n\n");
+        }
+        String summary = context.summary() != null ? context.summary() : "";
+        int historyBudget = threadReplyBudgetTokens - TokenBudgetService.estimateTokens(latest)
+                - TokenBudgetService.estimateTokens(summary);
+        String recentBlock = tokenBudget.fitToBudget(recent.toString(), historyBudget, this::condenseChunk);
+
+        StringBuilder prompt = new StringBuilder();
+        if (!summary.isBlank()) {
+            prompt.append("Summary of the earlier conversation:\n").append(summary).append("\n\n");
+        }
+        if (!recentBlock.isBlank()) {
+            prompt.append("Most recent messages:\n").append(recentBlock).append("\n");
+        }
+        prompt.append("\nReply to latest: ").append(latest)
+                .append("\n\nGenerate professional reply considering full context. No subject.");
+        if (request.getTone() != null) {
+            prompt.append(" Tone: ").append(request.getTone().name().toLowerCase());
+        }
+
+        String finalResponse = extractResponseContent(callGeminiApi("thread_reply", prompt.toString()));
+        // ✅ A failed generation is not part of the conversation; the client can retry with the same email
+        if (EmailMetrics.OUTCOME_SUCCESS.equals(EmailMetrics.outcomeOf(finalResponse))) {
+            RequestDeadline.checkCurrent();  // client gone: it never saw this reply
+            threadService.recordExchange(request.getThreadId(), auth.getName(), request.getEmailContent(), finalResponse);
+        }
+
+        EmailIntent intent = detectIntent(request.getEmailContent()).getIntent();
+        saveToHistory(request.getEmailContent(), finalResponse, request.getTone(), intent, null, auth);
         return finalResponse;
     }
 
@@ -213,18 +336,21 @@ public class EmailGeneratorService {
                 Do not include subject line.
                 
                 Original email: %s
-                """.formatted(followUpType, urgency, request.getDaysPassed(), request.getEmailContent());
+                """.formatted(followUpType, urgency, request.getDaysPassed(), preprocessor.clean(request.getEmailContent()));
 
-        String response = callGeminiApi(prompt);
+        String response = callGeminiApi("follow_up", prompt);
         String finalResponse = extractResponseContent(response);
 
         EmailIntent intent = detectIntent(request.getEmailContent()).getIntent();
-        saveToHistory(request.getEmailContent(), finalResponse, EmailTone.FOLLOW_UP, intent, auth);  // ✅ Fixed: inten → intent
+        saveToHistory(request.getEmailContent(), finalResponse, EmailTone.FOLLOW_UP, intent, null, auth);  // ✅ Fixed: inten → intent
         return finalResponse;
     }
 
     // ✅ CRITICAL: FIXED user loading + history saving
-    private void saveToHistory(String emailContent, String response, EmailTone tone, EmailIntent intent, Authentication auth) {
+    private void saveToHistory(String emailContent, String response, EmailTone tone, EmailIntent intent,
+                               RewriteMode mode, Authentication auth) {
+        // ✅ Client gone or out of time: nobody saw this reply, so it doesn't become history
+        RequestDeadline.checkCurrent();
         if (auth == null || auth.getName() == null) {
             System.out.println("⚠️ No auth - skipping history save");
             return;
@@ -234,20 +360,27 @@ public class EmailGeneratorService {
             User currentUser = userRepository.findByUsername(auth.getName())
                     .orElseThrow(() -> new RuntimeException("User not found: " + auth.getName()));
 
-            EmailHistory history = new EmailHistory();
-            history.setEmailContent(emailContent);
-            history.setGeneratedResponse(response);
-            history.setTone(tone != null ? tone : EmailTone.FORMAL);
-            history.setIntent(intent != null ? intent : EmailIntent.OTHER);
-            history.setUser(currentUser);
-
-            historyService.save(history);
+            EmailHistory saved = historyService.save(
+                    newHistory(emailContent, response, tone, intent, mode, currentUser));
+            replyReuseService.index(saved);
             System.out.println("✅ History saved for user: " + currentUser.getUsername());
         } catch (Exception e) {
             System.out.println("❌ History save failed: " + e.getMessage());
         }
     }
 
+    public EmailHistory newHistory(String emailContent, String response, EmailTone tone, EmailIntent intent,
+                                   RewriteMode mode, User user) {
+        EmailHistory history = new EmailHistory();
+        history.setEmailContent(emailContent);
+        history.setGeneratedResponse(response);
+        history.setTone(tone != null ? tone : EmailTone.FORMAL);
+        history.setIntent(intent != null ? intent : EmailIntent.OTHER);
+        history.setMode(mode);
+        history.setUser(user);
+        return history;
+    }
+
     // ✅ All your existing methods stay the same (unchanged)
     /*private String extractResponseContent(String response) {
         try {
@@ -275,7 +408,26 @@ public class EmailGeneratorService {
     }*/
 
 
-    private String extractResponseContent(String response) {
+    // usageMetadata is only read here; the text itself is parsed later by extractResponseContent
+    private void reportGeminiUsage(String response) {
+        if (response == null || !response.contains("usageMetadata")) {
+            return;
+        }
+        try {
+            JsonNode usage = new ObjectMapper().readTree(response).path("usageMetadata");
+            TokenUsage.report(usage.path("promptTokenCount").asLong(0),
+                    usage.path("candidatesTokenCount").asLong(0) + usage.path("thoughtsTokenCount").asLong(0));
+        } catch (Exception e) {
+            metrics.parseFailure("usage_metadata");
+        }
+    }
+
+    // Package-private (like the other parsing/prompt helpers below) for the JMH benchmarks in src/jmh
+    String extractResponseContent(String response) {
+        return metrics.time("response.parse", () -> parseResponseContent(response));
+    }
+
+    private String parseResponseContent(String response) {
         // ✅ FIRST: Check if it's our error message (plain text)
         if (response.contains("Rate limited") || response.contains("Max retries") ||
                 response.startsWith("Gemini API Error") || response.startsWith("Error processing")) {
@@ -305,6 +457,7 @@ public class EmailGeneratorService {
             return parts.get(0).path("text").asText();
 
         } catch (Exception e) {
+            metrics.parseFailure("provider_response");
             System.out.println("Raw Gemini response (parse failed): " + response.substring(0, 200));
             return "Error processing Gemini response: " + e.getMessage() + ". Raw: " + response.substring(0, 100);
         }
@@ -313,13 +466,15 @@ public class EmailGeneratorService {
 
     public IntentResponse detectIntent(String emailContent) {
         // ✅ STEP 1: Try LOCAL keyword detection FIRST (instant, no rate limits)
-        IntentResponse localResult = detectIntentLocal(emailContent);
+        IntentResponse localResult = metrics.time("intent.detect", Tags.of("method", "local"),
+                () -> detectIntentLocal(emailContent));
         if (localResult != null && !localResult.getIntent().equals(EmailIntent.OTHER)) {
             System.out.println("✅ LOCAL Intent: " + localResult.getIntent() + " - " + localResult.getReason());
             return localResult;
         }
 
         // ✅ STEP 2: Try Gemini (with rate limit protection)
+        EmailMetrics.Stage llmStage = metrics.start("intent.detect");
         try {
             String prompt = """
                 Classify this email into EXACTLY ONE intent from: COMPLAINT, JOB_APPLICATION, INTERVIEW_REPLY, FOLLOW_UP, SALES_INQUIRY, SUPPORT_REQUEST, GREETING, OTHER.
@@ -328,11 +483,12 @@ public class EmailGeneratorService {
                 {"intent": "INTENT_NAME", "reason": "brief explanation"}
                 
                 Email: %s
-                """.formatted(emailContent);
+                """.formatted(preprocessor.clean(emailContent));
 
-            String response = callGeminiApi(prompt);
+            String response = callGeminiApi("intent", prompt);
             if (response.contains("Rate limited") || response.contains("429")) {
                 System.out.println("⚠️ Gemini rate limited → Using local fallback");
+                metrics.fallback("intent", "rate_limited");
                 return detectIntentLocal(emailContent);
             }
 
@@ -352,12 +508,18 @@ public class EmailGeneratorService {
 
         } catch (Exception e) {
             System.out.println("❌ Gemini failed → Local fallback: " + e.getMessage());
+            if (e instanceof JsonProcessingException) {
+                metrics.parseFailure("intent");
+            }
+            metrics.fallback("intent", "error");
             return detectIntentLocal(emailContent);
+        } finally {
+            llmStage.stop(Tags.of("method", "llm"));
         }
     }
 
     // ✅ NEW: INSTANT keyword-based detection (NO API CALLS)
-    private IntentResponse detectIntentLocal(String emailContent) {
+    public IntentResponse detectIntentLocal(String emailContent) {
         if (emailContent == null) return new IntentResponse(EmailIntent.OTHER, "Empty email");
 
         String lower = emailContent.toLowerCase();
@@ -411,7 +573,7 @@ public class EmailGeneratorService {
     }
 
 
-    private String cleanJsonResponse(String text) {
+    String cleanJsonResponse(String text) {
         if (text == null) return "{}";
         return text
                 .replaceAll("```json", "")
@@ -431,18 +593,31 @@ public class EmailGeneratorService {
                 %s
                 """.formatted(
                 emailRequest.getTone() != null ? emailRequest.getTone().name().toLowerCase() : "professional",
-                emailRequest.getEmailContent()
+                preprocessor.clean(emailRequest.getEmailContent())
         );
     }
 
 
 
-    private String buildThreadAwarePrompt(ThreadAwareRequest request) {
-        StringBuilder prompt = new StringBuilder("Thread context:\n");
+    String buildThreadAwarePrompt(ThreadAwareRequest request) {
+        String latest = preprocessor.clean(request.getEmailContent());
+        StringBuilder thread = new StringBuilder();
         for (int i = 0; i < request.getPreviousEmails().size(); i++) {
-            prompt.append((i + 1)).append(". ").append(request.getPreviousEmails().get(i)).append("\n");
+            thread.append((i + 1)).append(". ").append(preprocessor.clean(request.getPreviousEmails().get(i))).append("\n");
         }
-        prompt.append("\nReply to latest: ").append(request.getEmailContent())
+        int totalTokens = tokenBudget.enforceLimit("thread-reply", thread + latest);
+
+        StringBuilder prompt = new StringBuilder();
+        if (totalTokens <= threadReplyBudgetTokens) {
+            prompt.append("Thread context:\n").append(thread);
+        } else {
+            // ✅ Over budget: the latest email stays verbatim, earlier messages are condensed
+            int historyBudget = threadReplyBudgetTokens - TokenBudgetService.estimateTokens(latest);
+            prompt.append("Thread context (earlier messages, condensed):\n")
+                    .append(tokenBudget.fitToBudget(thread.toString(), historyBudget, this::condenseChunk))
+                    .append("\n");
+        }
+        prompt.append("\nReply to latest: ").append(latest)
                 .append("\n\nGenerate professional reply considering full context. No subject.");
         if (request.getTone() != null) {
             prompt.append(" Tone: ").append(request.getTone().name().toLowerCase());
@@ -459,9 +634,9 @@ public class EmailGeneratorService {
         NO other text, NO explanations.
         
         Email: %s
-        """.formatted(emailContent);
+        """.formatted(preprocessor.clean(emailContent));
 
-        String response = callGeminiApi(prompt);
+        String response = callGeminiApi("subject", prompt);
         String subjectsText = extractResponseContent(response);
         String cleanJson = cleanJsonResponse(subjectsText);
 
@@ -469,12 +644,18 @@ public class EmailGeneratorService {
             ObjectMapper mapper = new ObjectMapper();
             return mapper.readValue(cleanJson, mapper.getTypeFactory().constructCollectionType(List.class, String.class));
         } catch (Exception e) {
+            metrics.parseFailure("subject");
+            metrics.fallback("subject", "default_subjects");
             return List.of("Re: Your Email", "Follow-up", "Regarding Your Message");
         }
     }
 
 
     public SummaryResponse summarizeEmail(String emailContent) {
+        String content = preprocessor.clean(emailContent);
+        tokenBudget.enforceLimit("summarize", content);
+        content = tokenBudget.fitToBudget(content, summarizeBudgetTokens, this::condenseChunk);
+
         String prompt = """
         Analyze this email and return ONLY valid JSON with:
         {
@@ -485,9 +666,9 @@ public class EmailGeneratorService {
         Use null for empty arrays. Be precise.
         
         Email: %s
-        """.formatted(emailContent);
+        """.formatted(content);
 
-        String response = callGeminiApi(prompt);
+        String response = callGeminiApi("summarize", prompt);
         String summaryText = extractResponseContent(response);
         String cleanJson = cleanJsonResponse(summaryText);
 
@@ -495,6 +676,8 @@ public class EmailGeneratorService {
             ObjectMapper mapper = new ObjectMapper();
             return mapper.readValue(cleanJson, SummaryResponse.class);
         } catch (Exception e) {
+            metrics.parseFailure("summarize");
+            metrics.fallback("summarize", "default_summary");
             return new SummaryResponse(
                     "Could not summarize email",
                     List.of("Review email manually"),
@@ -506,6 +689,26 @@ public class EmailGeneratorService {
 
 
 
+    // Map step of map-reduce: notes for one chunk of an over-budget input
+    private String condenseChunk(String chunk) {
+        String prompt = """
+        This is one part of a longer email or email thread. Extract its key facts, requests,
+        decisions, action items and deadlines as short bullet points. No preamble.
+
+        Part:
+        %s
+        """.formatted(chunk);
+        String notes = extractResponseContent(callGeminiApi("condense", prompt));
+        // ✅ Error text must not become the chunk's "notes" and be summarized as if it were the email
+        String outcome = EmailMetrics.outcomeOf(notes);
+        if (!EmailMetrics.OUTCOME_SUCCESS.equals(outcome)) {
+            throw new ResponseStatusException(EmailMetrics.OUTCOME_RATE_LIMITED.equals(outcome)
+                    ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.BAD_GATEWAY,
+                    "Condensing part of the input failed: " + notes);
+        }
+        return notes;
+    }
+
     public QualityResponse scoreEmailQuality(String emailContent) {
         String prompt = """
         Analyze this email for quality and return ONLY valid JSON:
@@ -517,15 +720,16 @@ public class EmailGeneratorService {
         Scores 0-10. Be precise and honest.
 
         Email: %s
-        """.formatted(emailContent);
+        """.formatted(preprocessor.clean(emailContent));
 
-        String response = callGeminiApi(prompt);
+        String response = callGeminiApi("quality", prompt);
         System.out.println("RAW quality response = " + response);
         String cleanText = extractResponseContent(response);
         System.out.println("EXTRACTED quality = " + cleanText);
 
         // If Gemini responded with an error message, don’t try to parse
         if (cleanText.startsWith("Gemini API Error") || cleanText.startsWith("Rate limited")) {
+            metrics.fallback("quality", "provider_error");
             return new QualityResponse("error", 0.0, 0.0);
         }
 
@@ -537,6 +741,7 @@ public class EmailGeneratorService {
             return mapper.readValue(cleanJson, QualityResponse.class);
         } catch (JsonProcessingException e) {
             System.out.println("❌ Quality parse error: " + e.getMessage());
+            metrics.parseFailure("quality");
             return new QualityResponse("error", 0.0, 0.0);
         }
     }
@@ -554,14 +759,15 @@ public class EmailGeneratorService {
         Scores 0-10. Zero = safe.
 
         Email: %s
-        """.formatted(emailContent);
+        """.formatted(preprocessor.clean(emailContent));
 
-        String response = callGeminiApi(prompt);
+        String response = callGeminiApi("risk", prompt);
         System.out.println("RAW risk response = " + response);
         String cleanText = extractResponseContent(response);
         System.out.println("EXTRACTED risk = " + cleanText);
 
         if (cleanText.startsWith("Gemini API Error") || cleanText.startsWith("Rate limited")) {
+            metrics.fallback("risk", "provider_error");
             return new RiskResponse(false, "none", 0.0, cleanText);
         }
 
@@ -573,41 +779,54 @@ public class EmailGeneratorService {
             return mapper.readValue(cleanJson, RiskResponse.class);
         } catch (JsonProcessingException e) {
             System.out.println("❌ Risk parse error: " + e.getMessage());
+            metrics.parseFailure("risk");
+            metrics.fallback("risk", "assume_safe");
             return new RiskResponse(false, "none", 0.0, "Safe to send");
         }
     }
 
 
 
-    private String buildPromptForVersion(String emailContent,
-                                         EmailTone toneEnum,
-                                         PromptVersion version) {
+    // Fixed instruction preamble + per-request body. Providers that keep an evaluated
+    // preamble around (Ollama context reuse) only pay for the body on each call.
+    record PromptParts(String preamble, String body) {
+        int length() {
+            return (preamble != null ? preamble.length() : 0) + (body != null ? body.length() : 0);
+        }
+    }
+
+    PromptParts buildPromptForVersion(String emailContent,
+                                      EmailTone toneEnum,
+                                      PromptVersion version) {
 
         String tone = toneEnum != null ? toneEnum.name().toLowerCase() : "formal";
+        emailContent = preprocessor.clean(emailContent);
 
         return switch (version) {
-            case V1_SIMPLE -> """
+            case V1_SIMPLE -> new PromptParts("", """
                 Reply to this email in a %s tone.
                 Do not include a subject line.
 
                 Email:
                 %s
-                """.formatted(tone, emailContent);
+                """.formatted(tone, emailContent));
 
-            case V2_STRUCTURED -> """
+            case V2_STRUCTURED -> new PromptParts("""
                 You are a professional email assistant.
 
                 Task: Write a clear, polite reply.
-                Tone: %s
                 Rules:
                 - No subject line
                 - Single coherent email body (no multiple options)
 
+                """, """
+                Tone: %s
+
                 Email:
                 %s
-                """.formatted(tone, emailContent);
+                """.formatted(tone, emailContent));
 
-            case V3_ENTERPRISE -> """
+            case V3_ENTERPRISE -> new PromptParts("""
                 You are an enterprise-grade email assistant.
 
                 Objectives:
@@ -615,17 +834,12 @@ public class EmailGeneratorService {
                 - Use respectful, professional language
                 - Make next steps explicit if appropriate
 
+                """, """
                 Tone: %s
 
                 Original email:
                 %s
-                """.formatted(tone, emailContent);
+                """.formatted(tone, emailContent));
         };
     }
-
-
-
-
-
-
-}
\ No newline at end of file
+}
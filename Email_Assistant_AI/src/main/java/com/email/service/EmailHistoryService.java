@@ -5,8 +5,12 @@ import com.email.entity.EmailHistory;
 import com.email.entity.User;
 import com.email.repository.EmailHistoryRepository;
 import com.email.repository.UserRepository;
+import io.micrometer.core.instrument.Tags;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -14,11 +18,43 @@ import java.util.List;
 public class EmailHistoryService {
     private final EmailHistoryRepository repository;
     private final UserRepository userRepository;
+    private final EmailSearchService searchService;
+    private final HistoryArchiveStore archiveStore;
+    private final TransactionTemplate transactionTemplate;
+    private final EmailMetrics metrics;
+    private final EmailBlobStore blobStore;
 
+    // ✅ Bodies go to email_blob first; the row itself only holds their hashes
     public EmailHistory save(EmailHistory history) {
-        return repository.save(history);
+        return metrics.time("history.persist", Tags.of("mode", "single"), () -> {
+            blobStore.store(history.getEmailContent());
+            blobStore.store(history.getGeneratedResponse());
+            EmailHistory saved = repository.save(history);
+            searchService.index(saved);  // ✅ Keep full-text index in sync
+            return saved;
+        });
+    }
+
+    // ✅ One transaction (one commit) per batch instead of one per row; indexed after commit
+    public List<EmailHistory> saveAll(List<EmailHistory> histories) {
+        if (histories.isEmpty()) {
+            return histories;
+        }
+        return metrics.time("history.persist", Tags.of("mode", "batch"), () -> {
+            List<String> bodies = new ArrayList<>(histories.size() * 2);
+            for (EmailHistory history : histories) {
+                bodies.add(history.getEmailContent());
+                bodies.add(history.getGeneratedResponse());
+            }
+            blobStore.storeAll(bodies);
+            List<EmailHistory> saved = transactionTemplate.execute(status -> repository.saveAll(histories));
+            saved.forEach(searchService::index);
+            return saved;
+        });
     }
 
+    // ✅ Hot rows (MySQL) only: decoding the whole archive per call does not scale. Archived rows
+    // are in /history/export (streamed) and the dashboard's recent list (tail of the archive).
     public List<EmailHistory> getUserHistory(String username) {
         return repository.findByUser_UsernameOrderByTimestampDesc(username);
     }
@@ -29,10 +65,18 @@ public class EmailHistoryService {
 
     // ✅ NEW: For Dashboard
     public long countByUserUsername(String username) {
-        return repository.countByUser_Username(username);
+        long archived = userRepository.findByUsername(username)
+                .map(user -> archiveStore.stats(user.getId()).getCount())
+                .orElse(0L);
+        return repository.countByUser_Username(username) + archived;
     }
 
     public List<EmailHistory> getRecentEmailsByUsername(String username, int limit) {
-        return repository.findByUserUsernameOrderByTimestampDesc(username, limit);
+        List<EmailHistory> recent = new ArrayList<>(repository.findByUserUsernameOrderByTimestampDesc(username, limit));
+        if (recent.size() < limit) {
+            userRepository.findByUsername(username).ifPresent(user ->
+                    recent.addAll(archiveStore.readNewest(user.getId(), limit - recent.size())));
+        }
+        return recent;
     }
 }
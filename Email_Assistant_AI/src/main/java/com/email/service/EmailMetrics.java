@@ -0,0 +1,183 @@
+package com.email.service;
+
+import com.email.ai.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// One place for the request pipeline's meters, so stage names and tags stay consistent.
+// All meter names start with "email." — percentiles/histograms for that prefix are
+// configured in application.properties and scraped from /actuator/prometheus.
+// Stages are Micrometer Observations: the same call produces the timer and a trace span,
+// nested under the servlet request span (and parent of any Redis/JDBC/WebClient spans).
+@Component
+@RequiredArgsConstructor
+public class EmailMetrics {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_RATE_LIMITED = "rate_limited";
+
+    private final MeterRegistry registry;
+    private final ObservationRegistry observationRegistry;
+    private final TokenUsageService usageService;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    // ✅ Stage timers without extra tags: rate-limit check, JWT auth, response parse, ...
+    public <T> T time(String stage, Supplier<T> work) {
+        return time(stage, Tags.empty(), work);
+    }
+
+    public <T> T time(String stage, Tags tags, Supplier<T> work) {
+        return observation(stage, tags).observe(work);
+    }
+
+    // For stages whose tags are only known at the end (outcome, ...): start, then stop(tags)
+    public Stage start(String stage) {
+        Observation observation = observation(stage, Tags.empty()).start();
+        return new Stage(observation, observation.openScope());
+    }
+
+    public static final class Stage {
+        private final Observation observation;
+        private final Observation.Scope scope;
+
+        private Stage(Observation observation, Observation.Scope scope) {
+            this.observation = observation;
+            this.scope = scope;
+        }
+
+        public void stop(Tags tags) {
+            for (Tag tag : tags) {
+                observation.lowCardinalityKeyValue(tag.getKey(), tag.getValue());
+            }
+            scope.close();
+            observation.stop();
+        }
+    }
+
+    // ✅ Provider call: in-flight gauge while running, timer tagged with provider/operation/outcome,
+    // whatever token usage the provider reported on this thread, and a JFR ProviderCallEvent
+    public String providerCall(String provider, String operation, int promptChars, Supplier<String> call) {
+        AtomicInteger gauge = inFlight(provider);
+        gauge.incrementAndGet();
+        TokenUsage.take();  // drop anything left over from an unwrapped call
+        ProviderCallEvent event = new ProviderCallEvent();
+        event.begin();
+        Observation observation = observation("provider.call", Tags.of("provider", provider, "operation", operation))
+                .contextualName(provider.toLowerCase() + " " + operation)
+                .start();
+        long start = System.nanoTime();
+        String outcome = OUTCOME_ERROR;
+        try (Observation.Scope ignored = observation.openScope()) {
+            String result = call.get();
+            outcome = outcomeOf(result);
+            return result;
+        } catch (RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            gauge.decrementAndGet();
+            long nanos = System.nanoTime() - start;
+            TokenUsage usage = TokenUsage.take();
+            if (usage != null) {
+                usageService.record(provider, operation, usage, nanos);
+                observation.highCardinalityKeyValue("tokens.prompt", String.valueOf(usage.promptTokens()));
+                observation.highCardinalityKeyValue("tokens.completion", String.valueOf(usage.completionTokens()));
+            }
+            observation.lowCardinalityKeyValue("outcome", outcome);
+            observation.stop();
+            event.end();
+            if (event.shouldCommit()) {
+                event.user = AiCallContext.username();
+                event.operation = operation;
+                event.provider = provider;
+                event.promptChars = promptChars;
+                event.promptTokens = usage != null ? usage.promptTokens() : 0;
+                event.completionTokens = usage != null ? usage.completionTokens() : 0;
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    public void retry(String provider, String operation) {
+        counter("email.provider.retries", "provider", provider, "operation", operation).increment();
+    }
+
+    public void rateLimited(String provider) {
+        counter("email.provider.rate_limited", "provider", provider).increment();
+    }
+
+    // Tagged by scheduler weight, not user: one series per configured weight class. Per-user
+    // waits are on the com.email.SchedulerWait JFR event.
+    public void queueWait(String provider, double weight, long nanos) {
+        registry.timer("email.scheduler.wait", "provider", provider, "weight", String.valueOf(weight))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void queueRejected(String provider, String reason) {
+        counter("email.scheduler.rejected", "provider", provider, "reason", reason).increment();
+    }
+
+    public void shed(String path) {
+        counter("email.concurrency.shed", "path", path).increment();
+    }
+
+    // reason: deadline (ran out of time) / disconnect (client went away first)
+    public void abandoned(String path, String reason) {
+        counter("email.requests.abandoned", "path", path, "reason", reason).increment();
+    }
+
+    public void fallback(String operation, String reason) {
+        counter("email.fallbacks", "operation", operation, "reason", reason).increment();
+    }
+
+    public void parseFailure(String operation) {
+        counter("email.response.parse_failures", "operation", operation).increment();
+    }
+
+    // Providers report failures as text rather than exceptions; classify by the known prefixes
+    public static String outcomeOf(String result) {
+        if (result == null) {
+            return OUTCOME_ERROR;
+        }
+        if (result.startsWith("Rate limited")) {
+            return OUTCOME_RATE_LIMITED;
+        }
+        if (result.startsWith("Gemini API Error") || result.startsWith("Error processing")
+                || result.startsWith("No response generated") || result.startsWith("Max retries")
+                || result.equals("Gemini returned empty content.")) {
+            return OUTCOME_ERROR;
+        }
+        return OUTCOME_SUCCESS;
+    }
+
+    private Observation observation(String stage, Tags tags) {
+        Observation observation = Observation.createNotStarted("email." + stage, observationRegistry);
+        for (Tag tag : tags) {
+            observation.lowCardinalityKeyValue(tag.getKey(), tag.getValue());
+        }
+        return observation;
+    }
+
+    private AtomicInteger inFlight(String provider) {
+        return inFlight.computeIfAbsent(provider, name ->
+                registry.gauge("email.provider.inflight", Tags.of("provider", name), new AtomicInteger()));
+    }
+
+    private Counter counter(String name, String... tags) {
+        return registry.counter(name, tags);
+    }
+}
@@ -0,0 +1,170 @@
+package com.email.service;
+
+import com.email.dto.PreprocessResult;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// Shrinks email text before it goes into a prompt: drops quoted reply history, signatures,
+// legal footers and mobile footers in one pass over the lines. The model never needs them
+// to answer the newest message, and they are often most of the tokens.
+@Service
+public class EmailPreprocessor {
+
+    private static final Pattern QUOTE_LINE = Pattern.compile("^\\s*>");
+    private static final Pattern REPLY_HEADER = Pattern.compile("^\\s*On\\b.{0,300}\\bwrote:\\s*$");
+    private static final Pattern REPLY_HEADER_START = Pattern.compile("^\\s*On\\s.*\\d");
+    private static final Pattern WROTE_LINE = Pattern.compile(".*\\bwrote:\\s*$");
+    private static final Pattern ORIGINAL_MESSAGE = Pattern.compile(
+            "^\\s*-{2,}\\s*Original Message\\s*-{2,}", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OUTLOOK_FROM = Pattern.compile("^\\s*\\*?From:\\*?\\s+\\S");
+    private static final Pattern OUTLOOK_SENT = Pattern.compile("^\\s*\\*?(Sent|Date):\\*?\\s+\\S");
+    private static final Pattern SEPARATOR = Pattern.compile("^\\s*_{10,}\\s*$");
+    private static final Pattern SIGNATURE_DELIMITER = Pattern.compile("^-- ?$");
+    private static final Pattern MOBILE_FOOTER = Pattern.compile(
+            "^\\s*(Sent from my \\w+|Get Outlook for (iOS|Android))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DISCLAIMER = Pattern.compile(
+            "^\\s*(confidentiality notice|disclaimer\\b|if you are not the intended recipient"
+                    + "|this (e-?mail|message|communication)\\b.{0,80}\\b(confidential|intended (solely|only))"
+                    + "|to unsubscribe\\b|you are receiving this (e-?mail|message) because)",
+            Pattern.CASE_INSENSITIVE);
+    // A disclaimer only counts in the last few lines of the newest message; earlier it is content
+    private static final int FOOTER_LINES = 8;
+
+    private final AtomicLong totalCharsRemoved = new AtomicLong();
+    private final AtomicLong totalTokensSaved = new AtomicLong();
+
+    public PreprocessResult strip(String email) {
+        if (email == null || email.isBlank()) {
+            return new PreprocessResult(email == null ? "" : email, 0, 0, 0, List.of());
+        }
+        String[] lines = email.split("\r?\n", -1);
+        StringBuilder kept = new StringBuilder(email.length());
+        Set<String> removed = new LinkedHashSet<>();
+        boolean hasContent = false;
+        boolean lastBlank = false;
+        int footerStart = footerStart(lines);
+
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+
+            // Cuts only apply once there is real text above them, so nothing strips a whole email
+            if (hasContent) {
+                String cut = cutReason(lines, i, footerStart);
+                if (cut != null) {
+                    removed.add(cut);
+                    break;
+                }
+            }
+            if (QUOTE_LINE.matcher(line).find()) {
+                removed.add("QUOTED_HISTORY");
+                continue;
+            }
+            if (MOBILE_FOOTER.matcher(line).find()) {
+                removed.add("MOBILE_FOOTER");
+                continue;
+            }
+
+            // ✅ Trailing whitespace and runs of blank lines are tokens too
+            String trimmed = line.stripTrailing();
+            boolean blank = trimmed.isEmpty();
+            if (blank && (lastBlank || !hasContent)) {
+                continue;
+            }
+            kept.append(trimmed).append('\n');
+            hasContent |= !blank;
+            lastBlank = blank;
+        }
+
+        String text = kept.toString().strip();
+        if (text.isEmpty()) {
+            text = email.strip();
+            removed.clear();
+        }
+        int removedChars = email.length() - text.length();
+        int tokensSaved = TokenBudgetService.estimateTokens(email) - TokenBudgetService.estimateTokens(text);
+        if (removedChars > 0) {
+            totalCharsRemoved.addAndGet(removedChars);
+            totalTokensSaved.addAndGet(tokensSaved);
+            System.out.println("✂️ Prompt preprocessing removed " + removedChars + " chars (~" + tokensSaved
+                    + " tokens): " + removed);
+        }
+        return new PreprocessResult(text, email.length(), removedChars, tokensSaved, new ArrayList<>(removed));
+    }
+
+    public String clean(String email) {
+        return strip(email).text();
+    }
+
+    public long getTotalCharsRemoved() {
+        return totalCharsRemoved.get();
+    }
+
+    public long getTotalTokensSaved() {
+        return totalTokensSaved.get();
+    }
+
+    // Everything from this line on is quoted history, a signature or a footer
+    private static String cutReason(String[] lines, int i, int footerStart) {
+        String line = lines[i];
+        if (startsQuotedHistory(lines, i)) {
+            return "QUOTED_HISTORY";
+        }
+        if (SIGNATURE_DELIMITER.matcher(line).matches()) {
+            return "SIGNATURE";
+        }
+        // ✅ Footer block only: "If you are not the intended recipient..." mid-email is a real question
+        if (i >= footerStart && (i == 0 || lines[i - 1].isBlank()) && DISCLAIMER.matcher(line).find()) {
+            return "DISCLAIMER";
+        }
+        return null;
+    }
+
+    private static boolean startsQuotedHistory(String[] lines, int i) {
+        String line = lines[i];
+        if (REPLY_HEADER.matcher(line).find() || ORIGINAL_MESSAGE.matcher(line).find()) {
+            return true;
+        }
+        // "On Mon, 3 Jun 2024 at 10:00, Jane <jane@x.com>" + "wrote:" wrapped onto the next line
+        if (REPLY_HEADER_START.matcher(line).find() && i + 1 < lines.length && WROTE_LINE.matcher(lines[i + 1]).matches()) {
+            return true;
+        }
+        // Outlook: [____] From: ... / Sent: ... header block of the previous message
+        if (OUTLOOK_FROM.matcher(line).find() || SEPARATOR.matcher(line).find()) {
+            for (int j = i + 1; j < Math.min(lines.length, i + 4); j++) {
+                if (OUTLOOK_SENT.matcher(lines[j]).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // First line of the trailing block (last FOOTER_LINES non-blank lines) of the newest message,
+    // which ends where quoted history starts
+    private static int footerStart(String[] lines) {
+        int end = lines.length;
+        boolean content = false;
+        for (int i = 0; i < lines.length; i++) {
+            if (content && startsQuotedHistory(lines, i)) {
+                end = i;
+                break;
+            }
+            content |= !lines[i].isBlank() && !QUOTE_LINE.matcher(lines[i]).find();
+        }
+        int start = end;
+        int nonBlank = 0;
+        while (start > 0 && nonBlank < FOOTER_LINES) {
+            start--;
+            if (!lines[start].isBlank()) {
+                nonBlank++;
+            }
+        }
+        return start;
+    }
+}
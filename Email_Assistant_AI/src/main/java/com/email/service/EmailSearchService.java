@@ -0,0 +1,340 @@
+package com.email.service;
+
+import com.email.dto.HistorySearchHit;
+import com.email.dto.HistorySearchResponse;
+import com.email.entity.EmailHistory;
+import com.email.entity.User;
+import com.email.repository.EmailHistoryRepository;
+import com.email.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleFragmenter;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Embedded Lucene index over email history, one index directory per user.
+// Rows are indexed as they are saved; a missing partition is rebuilt from the DB (and the
+// history archive) on first use. Archiving does not touch the index, so search spans both tiers.
+@Service
+@RequiredArgsConstructor
+public class EmailSearchService {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_CONTENT = "emailContent";
+    private static final String FIELD_RESPONSE = "generatedResponse";
+    private static final String FIELD_TONE = "tone";
+    private static final String FIELD_INTENT = "intent";
+    private static final String FIELD_TIMESTAMP = "timestamp";
+    private static final String[] SEARCH_FIELDS = {FIELD_CONTENT, FIELD_RESPONSE};
+
+    private final EmailHistoryRepository historyRepository;
+    private final UserRepository userRepository;
+    private final HistoryArchiveStore archiveStore;
+
+    @Value("${email.search.index-dir:./data/search-index}")
+    private String indexDir;
+
+    @Value("${email.search.max-page-size:50}")
+    private int maxPageSize;
+
+    // Deepest hit a page may reach (page × size); the collector allocates that many slots
+    @Value("${email.search.max-results:10000}")
+    private int maxResults;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Map<Long, UserIndex> partitions = new ConcurrentHashMap<>();
+    private final Map<Long, Object> userLocks = new ConcurrentHashMap<>();
+
+    private record UserIndex(Directory directory, IndexWriter writer, SearcherManager searcherManager) {}
+
+    // ✅ Incremental update: called right after a history row is persisted
+    public void index(EmailHistory history) {
+        if (history == null || history.getId() == null || history.getUser() == null) {
+            return;
+        }
+        try {
+            UserIndex partition = partitionFor(history.getUser().getId());
+            partition.writer().updateDocument(new Term(FIELD_ID, history.getId().toString()), toDocument(history));
+            partition.searcherManager().maybeRefresh();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("❌ Search index update failed: " + e.getMessage());
+        }
+    }
+
+    // ✅ Bulk variant of index() for imports: one searcher refresh per partition per batch
+    public void indexBatch(List<EmailHistory> histories) {
+        Set<UserIndex> touched = new HashSet<>();
+        try {
+            for (EmailHistory history : histories) {
+                if (history.getId() == null || history.getUser() == null) {
+                    continue;
+                }
+                UserIndex partition = partitionFor(history.getUser().getId());
+                partition.writer().updateDocument(new Term(FIELD_ID, history.getId().toString()), toDocument(history));
+                touched.add(partition);
+            }
+            for (UserIndex partition : touched) {
+                partition.searcherManager().maybeRefresh();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("❌ Search index batch update failed: " + e.getMessage());
+        }
+    }
+
+    public HistorySearchResponse search(String username, String q, int page, int size) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
+
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        int pageNumber = Math.max(0, page);
+        if (q == null || q.isBlank()) {
+            return new HistorySearchResponse(q, pageNumber, pageSize, 0, List.of());
+        }
+
+        Query query = parseQuery(q);
+        UserIndex partition = partitionFor(user.getId());
+
+        try {
+            IndexSearcher searcher = partition.searcherManager().acquire();
+            try {
+                // ✅ Pages past max-results come back empty instead of sizing the collector to page × size
+                long start = (long) pageNumber * pageSize;
+                int depth = (int) Math.min((long) (pageNumber + 1) * pageSize, maxResults);
+                TopDocs top = searcher.search(query, Math.max(depth, 1));
+                StoredFields storedFields = searcher.storedFields();
+
+                Highlighter highlighter = new Highlighter(
+                        new SimpleHTMLFormatter("<mark>", "</mark>"),
+                        new SimpleHTMLEncoder(),
+                        new QueryScorer(query));
+                highlighter.setTextFragmenter(new SimpleFragmenter(120));
+
+                List<HistorySearchHit> hits = new ArrayList<>();
+                for (int i = (int) Math.min(start, top.scoreDocs.length); i < top.scoreDocs.length; i++) {
+                    ScoreDoc scoreDoc = top.scoreDocs[i];
+                    Document doc = storedFields.document(scoreDoc.doc);
+                    hits.add(new HistorySearchHit(
+                            Long.parseLong(doc.get(FIELD_ID)),
+                            doc.get(FIELD_TIMESTAMP),
+                            doc.get(FIELD_TONE),
+                            doc.get(FIELD_INTENT),
+                            scoreDoc.score,
+                            highlight(highlighter, FIELD_CONTENT, doc.get(FIELD_CONTENT)),
+                            highlight(highlighter, FIELD_RESPONSE, doc.get(FIELD_RESPONSE))
+                    ));
+                }
+                return new HistorySearchResponse(q, pageNumber, pageSize, top.totalHits.value, hits);
+            } finally {
+                partition.searcherManager().release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("History search failed", e);
+        }
+    }
+
+    // ✅ Drops the user's partition and re-indexes it from EmailHistoryRepository
+    public int rebuild(String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
+        UserIndex partition = partitionFor(user.getId());
+        try {
+            partition.writer().deleteAll();
+            int indexed = indexAll(partition, user.getId());
+            partition.writer().commit();
+            partition.searcherManager().maybeRefresh();
+            System.out.println("✅ Search index rebuilt for " + username + ": " + indexed + " rows");
+            return indexed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Search index rebuild failed", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${email.search.commit-interval-ms:30000}")
+    public void commitPending() {
+        partitions.forEach((userId, partition) -> {
+            try {
+                if (partition.writer().hasUncommittedChanges()) {
+                    partition.writer().commit();
+                }
+            } catch (IOException e) {
+                System.out.println("❌ Search index commit failed for user " + userId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        partitions.values().forEach(partition -> {
+            try {
+                partition.searcherManager().close();
+                partition.writer().close();
+                partition.directory().close();
+            } catch (IOException e) {
+                System.out.println("❌ Search index close failed: " + e.getMessage());
+            }
+        });
+        partitions.clear();
+    }
+
+    // ✅ A fresh partition is built from the database under a per-user lock, not inside
+    // computeIfAbsent: that would hold the map bin (and block other users) for the whole re-index
+    private UserIndex partitionFor(Long userId) {
+        UserIndex partition = partitions.get(userId);
+        if (partition != null) {
+            return partition;
+        }
+        synchronized (userLocks.computeIfAbsent(userId, id -> new Object())) {
+            partition = partitions.get(userId);
+            if (partition == null) {
+                partition = openPartition(userId);
+                partitions.put(userId, partition);
+            }
+            return partition;
+        }
+    }
+
+    private UserIndex openPartition(Long userId) {
+        try {
+            Directory directory = FSDirectory.open(Paths.get(indexDir, "user-" + userId));
+            boolean fresh = !DirectoryReader.indexExists(directory);
+            IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+            SearcherManager searcherManager = new SearcherManager(writer, null);
+            UserIndex partition = new UserIndex(directory, writer, searcherManager);
+
+            if (fresh) {
+                try {
+                    int indexed = indexAll(partition, userId);
+                    writer.commit();
+                    searcherManager.maybeRefresh();
+                    System.out.println("✅ Search partition built for user " + userId + ": " + indexed + " rows");
+                } catch (IOException | RuntimeException e) {
+                    // Release write.lock so the next request can try again
+                    searcherManager.close();
+                    writer.rollback();
+                    directory.close();
+                    throw e;
+                }
+            }
+            return partition;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open search partition for user " + userId, e);
+        }
+    }
+
+    private int indexAll(UserIndex partition, Long userId) throws IOException {
+        int count = 0;
+        // ✅ Keyset pages by id, so a large history is never loaded as one list
+        long lastId = 0;
+        List<EmailHistory> batch;
+        do {
+            batch = historyRepository.findByUser_IdAndIdGreaterThanOrderByIdAsc(userId, lastId, PageRequest.of(0, 500));
+            for (EmailHistory history : batch) {
+                partition.writer().updateDocument(new Term(FIELD_ID, history.getId().toString()), toDocument(history));
+                lastId = history.getId();
+                count++;
+            }
+        } while (batch.size() == 500);
+        // ✅ Archived (cold) rows are searchable too
+        int[] archived = {0};
+        archiveStore.forEach(userId, history -> {
+            try {
+                partition.writer().updateDocument(new Term(FIELD_ID, history.getId().toString()), toDocument(history));
+                archived[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return count + archived[0];
+    }
+
+    private Document toDocument(EmailHistory history) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, history.getId().toString(), Field.Store.YES));
+        doc.add(new TextField(FIELD_CONTENT, nullToEmpty(history.getEmailContent()), Field.Store.YES));
+        doc.add(new TextField(FIELD_RESPONSE, nullToEmpty(history.getGeneratedResponse()), Field.Store.YES));
+        if (history.getTone() != null) {
+            doc.add(new StringField(FIELD_TONE, history.getTone().name(), Field.Store.YES));
+        }
+        if (history.getIntent() != null) {
+            doc.add(new StringField(FIELD_INTENT, history.getIntent().name(), Field.Store.YES));
+        }
+        if (history.getTimestamp() != null) {
+            doc.add(new StoredField(FIELD_TIMESTAMP, history.getTimestamp().toString()));
+        }
+        return doc;
+    }
+
+    private Query parseQuery(String q) {
+        MultiFieldQueryParser parser = new MultiFieldQueryParser(SEARCH_FIELDS, analyzer);
+        parser.setDefaultOperator(QueryParser.Operator.AND);
+        try {
+            return parser.parse(q);
+        } catch (ParseException e) {
+            // ✅ Treat invalid query syntax as plain text instead of failing
+            try {
+                return parser.parse(QueryParser.escape(q));
+            } catch (ParseException escaped) {
+                throw new IllegalArgumentException("Invalid search query: " + q, escaped);
+            }
+        }
+    }
+
+    private String highlight(Highlighter highlighter, String field, String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        try {
+            String[] fragments = highlighter.getBestFragments(analyzer, field, text, 2);
+            if (fragments.length > 0) {
+                return String.join(" … ", fragments);
+            }
+        } catch (Exception e) {
+            System.out.println("⚠️ Highlight failed: " + e.getMessage());
+        }
+        String plain = text.length() > 120 ? text.substring(0, 120) + "..." : text;
+        return new SimpleHTMLEncoder().encodeText(plain);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -2,26 +2,35 @@
 package com.email.service;
 
 import com.email.dto.SendEmailRequest;
+import com.email.entity.OutboundAttachment;
+import jakarta.activation.FileDataSource;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.util.List;
+
 @Service
 public class EmailSender {
 
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private SmtpTransportPool transportPool;
+
+    @Value("${email.mail.from:noreply@yourapp.com}")
+    private String fromAddress;
+
     public boolean sendEmail(SendEmailRequest request) {
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setTo(request.getTo());
-            message.setSubject(request.getSubject());
-            message.setText(request.getBody());
-            message.setFrom("noreply@yourapp.com");
-
-            mailSender.send(message);
+            deliver(buildMessage(request.getTo(), request.getSubject(), request.getBody()));
             System.out.println("✅ Email sent to: " + request.getTo());
             return true;
 
@@ -30,4 +39,47 @@ public class EmailSender {
             return false;
         }
     }
+
+    public MimeMessage buildMessage(String to, String subject, String body) throws MessagingException {
+        return buildMessage(to, subject, body, List.of());
+    }
+
+    // ✅ Attachments are file-backed DataSources: the body parts are read from disk while the
+    // message is written to the SMTP socket, never loaded into memory as a whole
+    public MimeMessage buildMessage(String to, String subject, String body,
+                                    List<OutboundAttachment> attachments) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, !attachments.isEmpty(), "UTF-8");
+        helper.setTo(to);
+        helper.setSubject(subject != null ? subject : "");
+        helper.setText(body != null ? body : "");
+        helper.setFrom(fromAddress);
+
+        for (OutboundAttachment attachment : attachments) {
+            String contentType = attachment.getContentType();
+            FileDataSource source = new FileDataSource(new File(attachment.getStoragePath())) {
+                @Override
+                public String getContentType() {
+                    return contentType != null ? contentType : super.getContentType();
+                }
+            };
+            helper.addAttachment(attachment.getFilename(), source);
+        }
+        return message;
+    }
+
+    // ✅ Sends over a pooled, already-authenticated SMTP connection
+    public void deliver(MimeMessage message) throws MessagingException, InterruptedException {
+        Transport transport = transportPool.borrow();
+        boolean broken = false;
+        try {
+            message.saveChanges();
+            transport.sendMessage(message, message.getAllRecipients());
+        } catch (MessagingException e) {
+            broken = !transport.isConnected();
+            throw e;
+        } finally {
+            transportPool.release(transport, broken);
+        }
+    }
 }
@@ -0,0 +1,258 @@
+package com.email.service;
+
+import com.email.ai.RequestDeadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Every provider call waits here for a slot on its provider. Slots are handed out by deficit
+// round-robin over per-user queues: each round a user's deficit grows by quantum × weight and
+// calls are granted while their cost (estimated prompt tokens) fits, so a user looping on
+// /score-quality gets their share and no more; everyone else's calls interleave with theirs
+// instead of queueing behind them. Per provider: max in-flight calls and an optional
+// requests-per-minute pace (the shared quota). Per user: bounded queue depth and wait.
+@Service
+@RequiredArgsConstructor
+public class FairLlmScheduler {
+
+    private final EmailMetrics metrics;
+    private final MeterRegistry registry;
+    private final Environment environment;
+
+    @Value("${email.scheduler.max-queue-per-user:20}")
+    private int maxQueuePerUser;
+
+    @Value("${email.scheduler.max-wait-ms:60000}")
+    private long maxWaitMs;
+
+    @Value("${email.scheduler.quantum-tokens:1000}")
+    private long quantumTokens;
+
+    @Value("${email.scheduler.default-weight:1}")
+    private double defaultWeight;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    // ✅ Same contract as EmailMetrics.providerCall (errors come back as text), plus the queue in front
+    public String call(String provider, String operation, int promptChars, Supplier<String> call) {
+        RequestDeadline.checkCurrent();  // no point queueing for a request that is already over
+        String user = AiCallContext.username();
+        Lane lane = lanes.computeIfAbsent(provider.toUpperCase(), this::newLane);
+        long start = System.nanoTime();
+        SchedulerWaitEvent event = new SchedulerWaitEvent();
+        event.begin();
+        String rejection = null;
+        try {
+            rejection = lane.acquire(user, Math.max(1, promptChars / 4));
+            if (rejection == null) {
+                lane.awaitRateSlot();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error processing request: interrupted while queued for " + provider;
+        } finally {
+            double weight = weight(user);
+            metrics.queueWait(provider, weight, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.user = user;
+                event.provider = provider;
+                event.weight = weight;
+                event.rejection = rejection;
+                event.commit();
+            }
+        }
+        if (rejection != null) {
+            metrics.queueRejected(provider, rejection);
+            return "Rate limited: too many " + provider + " requests queued for " + user + " (" + rejection
+                    + "). Try again shortly.";
+        }
+        try {
+            return metrics.providerCall(provider, operation, promptChars, call);
+        } finally {
+            lane.release();
+        }
+    }
+
+    // email.scheduler.<provider>.max-concurrency / .max-requests-per-minute
+    private Lane newLane(String provider) {
+        String prefix = "email.scheduler." + provider.toLowerCase() + ".";
+        Lane lane = new Lane(environment.getProperty(prefix + "max-concurrency", Integer.class, 4),
+                environment.getProperty(prefix + "max-requests-per-minute", Integer.class, 0));
+        registry.gauge("email.scheduler.queued", Tags.of("provider", provider), lane.queued);
+        return lane;
+    }
+
+    // email.scheduler.weight.<username>=3 → three times the default share
+    private double weight(String user) {
+        return environment.getProperty("email.scheduler.weight." + user, Double.class, defaultWeight);
+    }
+
+    private static final class Waiter {
+        final long cost;
+        final CountDownLatch latch = new CountDownLatch(1);
+        boolean granted;  // guarded by the lane lock
+
+        Waiter(long cost) {
+            this.cost = cost;
+        }
+    }
+
+    private static final class Flow {
+        final String user;
+        final double quantum;
+        final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        double deficit;
+        boolean creditedThisVisit;
+
+        Flow(String user, double quantum) {
+            this.user = user;
+            this.quantum = quantum;
+        }
+    }
+
+    private final class Lane {
+        private final int maxConcurrency;
+        private final long intervalNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Flow> flows = new HashMap<>();
+        private final ArrayDeque<Flow> active = new ArrayDeque<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private int inFlight;
+        private long nextSlotNanos = Long.MIN_VALUE;  // nanoTime() may be negative
+
+        Lane(int maxConcurrency, int requestsPerMinute) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.intervalNanos = requestsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / requestsPerMinute : 0;
+        }
+
+        // null once a slot is granted, otherwise why not (queue_full / timeout)
+        String acquire(String user, long cost) throws InterruptedException {
+            Waiter waiter = new Waiter(cost);
+            // Before queueing: this may throw (deadline over), and a queued waiter must always be awaited or abandoned
+            long waitMs = RequestDeadline.remainingMillis(maxWaitMs);
+            lock.lock();
+            try {
+                if (active.isEmpty() && inFlight < maxConcurrency) {
+                    inFlight++;  // nobody waiting: no queueing, no fairness bookkeeping
+                    return null;
+                }
+                Flow flow = flows.computeIfAbsent(user, name -> new Flow(name, quantumTokens * weight(name)));
+                if (flow.queue.size() >= maxQueuePerUser) {
+                    return "queue_full";
+                }
+                if (flow.queue.isEmpty()) {
+                    active.addLast(flow);
+                }
+                flow.queue.addLast(waiter);
+                queued.incrementAndGet();
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+
+            boolean signalled;
+            try {
+                signalled = waiter.latch.await(waitMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                if (abandon(user, waiter)) {
+                    release();  // granted just as we were interrupted: hand the slot on
+                }
+                throw e;
+            }
+            return signalled || abandon(user, waiter) ? null : "timeout";
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Spaces call starts to the provider's requests-per-minute quota
+        void awaitRateSlot() throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long slot;
+            synchronized (this) {
+                slot = Math.max(System.nanoTime(), nextSlotNanos);
+                nextSlotNanos = slot + intervalNanos;
+            }
+            long wait;
+            while ((wait = slot - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) {
+                    release();
+                    throw new InterruptedException();
+                }
+            }
+        }
+
+        // Deficit round-robin over users with queued calls, while slots are free
+        private void dispatch() {
+            while (inFlight < maxConcurrency && !active.isEmpty()) {
+                Flow flow = active.peekFirst();
+                if (!flow.creditedThisVisit) {
+                    flow.deficit += flow.quantum;
+                    flow.creditedThisVisit = true;
+                }
+                Waiter head = flow.queue.peekFirst();
+                if (head.cost <= flow.deficit) {
+                    flow.deficit -= head.cost;
+                    flow.queue.pollFirst();
+                    queued.decrementAndGet();
+                    inFlight++;
+                    head.granted = true;
+                    head.latch.countDown();
+                    if (flow.queue.isEmpty()) {
+                        active.pollFirst();
+                        flows.remove(flow.user);  // an idle user keeps no credit
+                    }
+                } else {
+                    flow.creditedThisVisit = false;
+                    active.addLast(active.pollFirst());
+                }
+            }
+        }
+
+        // Waiter gave up; true if it had been granted in the meantime (and now holds a slot)
+        private boolean abandon(String user, Waiter waiter) {
+            lock.lock();
+            try {
+                if (waiter.granted) {
+                    return true;
+                }
+                Flow flow = flows.get(user);
+                if (flow != null && flow.queue.remove(waiter)) {
+                    queued.decrementAndGet();
+                    if (flow.queue.isEmpty()) {
+                        active.remove(flow);
+                        flows.remove(user);
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
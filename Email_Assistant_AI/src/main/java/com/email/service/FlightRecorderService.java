@@ -0,0 +1,106 @@
+package com.email.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+// Continuous JFR recording with a rolling window (max-age / max-size, kept in the JFR repository
+// on disk, not in heap). Built on the JDK "default" settings (~1% overhead: GC, allocation
+// samples, safepoints, ...) with lock thresholds lowered so contention around a slow call shows
+// up, plus ApiRequestEvent, ProviderCallEvent and SchedulerWaitEvent. dump() snapshots the window into a .jfr file
+// for JDK Mission Control / `jfr print`, without restarting or attaching anything.
+@Service
+public class FlightRecorderService {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    @Value("${email.jfr.enabled:true}")
+    private boolean enabled;
+
+    @Value("${email.jfr.settings:default}")
+    private String settings;
+
+    @Value("${email.jfr.max-age:30m}")
+    private Duration maxAge;
+
+    @Value("${email.jfr.max-size:250MB}")
+    private DataSize maxSize;
+
+    @Value("${email.jfr.lock-threshold:10ms}")
+    private Duration lockThreshold;
+
+    @Value("${email.jfr.dump-dir:./data/jfr}")
+    private String dumpDir;
+
+    private Recording recording;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!FlightRecorder.isAvailable()) {
+            System.out.println("⚠️ JFR not available in this JVM, continuous recording disabled");
+            return;
+        }
+        try {
+            Recording continuous = new Recording(Configuration.getConfiguration(settings));
+            continuous.setName("email-assistant-continuous");
+            continuous.setToDisk(true);
+            continuous.setMaxAge(maxAge);
+            continuous.setMaxSize(maxSize.toBytes());
+            // ✅ Lock contention: monitor waits and parks (ReentrantLock, pool borrows) above the threshold
+            continuous.enable("jdk.JavaMonitorEnter").withThreshold(lockThreshold).withStackTrace();
+            continuous.enable("jdk.JavaMonitorWait").withThreshold(lockThreshold).withStackTrace();
+            continuous.enable("jdk.ThreadPark").withThreshold(lockThreshold).withStackTrace();
+            continuous.enable(ApiRequestEvent.class).withoutStackTrace();
+            continuous.enable(ProviderCallEvent.class).withoutStackTrace();
+            continuous.enable(SchedulerWaitEvent.class).withoutStackTrace();
+            continuous.start();
+            recording = continuous;
+            System.out.println("🎥 JFR continuous recording started (" + settings + ", max-age " + maxAge
+                    + ", max-size " + maxSize + ")");
+        } catch (IOException | ParseException e) {
+            System.out.println("❌ Could not start JFR recording with settings '" + settings + "': " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    public Duration maxAge() {
+        return maxAge;
+    }
+
+    // ✅ Copies the current window to dump-dir; the recording keeps running
+    public Optional<Path> dump() throws IOException {
+        if (recording == null) {
+            return Optional.empty();
+        }
+        Path dir = Path.of(dumpDir);
+        Files.createDirectories(dir);
+        Path file = dir.resolve("email-assistant-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr")
+                .toAbsolutePath();
+        recording.dump(file);
+        System.out.println("🎥 JFR recording dumped to " + file + " (" + Files.size(file) + " bytes)");
+        return Optional.of(file);
+    }
+}
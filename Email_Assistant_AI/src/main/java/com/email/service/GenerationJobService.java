@@ -0,0 +1,426 @@
+package com.email.service;
+
+import com.email.dto.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Long-running generation off the request thread. A job is a Redis hash (state + result)
+// plus an entry on a Redis stream; every node consumes the stream through one consumer
+// group, so any node can pick up any job. Entries are acked only after the job's final state
+// is written (at-least-once); entries left pending by a dead consumer are re-queued.
+@Service
+@RequiredArgsConstructor
+public class GenerationJobService {
+
+    private static final String STREAM_KEY = "email:jobs";
+    private static final String RETRY_KEY = "email:jobs:retry";  // sorted set: jobId scored by due time
+    private static final String GROUP = "email-job-workers";
+    private static final String JOB_KEY_PREFIX = "email:job:";
+    private static final String EVENTS_CHANNEL = "email:job-events";
+
+    private final StringRedisTemplate redis;
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final EmailGeneratorService generatorService;
+
+    @Value("${email.jobs.workers:2}")
+    private int workers;
+
+    @Value("${email.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${email.jobs.claim-idle-ms:300000}")
+    private long claimIdleMs;
+
+    @Value("${email.jobs.result-ttl-hours:24}")
+    private long resultTtlHours;
+
+    @Value("${email.jobs.retry-backoff-base-ms:2000}")
+    private long retryBackoffBaseMs;
+
+    @Value("${email.jobs.retry-backoff-max-ms:60000}")
+    private long retryBackoffMaxMs;
+
+    @Value("${email.jobs.stream-max-length:100000}")
+    private long streamMaxLength;
+
+    @Value("${email.jobs.sse-timeout-ms:300000}")
+    private long sseTimeoutMs;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private StreamMessageListenerContainer<String, MapRecord<String, String, String>> streamContainer;
+    private ExecutorService workerPool;
+    private String consumerPrefix;
+    private volatile boolean groupReady;
+
+    @PostConstruct
+    public void init() {
+        consumerPrefix = nodeName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        ensureGroup();
+
+        workerPool = Executors.newFixedThreadPool(workers);
+        StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainerOptions.builder()
+                        .pollTimeout(Duration.ofSeconds(2))
+                        .batchSize(1)
+                        .executor(workerPool)
+                        .errorHandler(this::onReadError)
+                        .build();
+        streamContainer = StreamMessageListenerContainer.create(connectionFactory, options);
+
+        // ✅ One consumer per worker thread; each processes its entry before reading the next
+        for (int i = 0; i < workers; i++) {
+            StreamReadRequest<String> request = StreamReadRequest
+                    .builder(StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()))
+                    .consumer(Consumer.from(GROUP, consumerPrefix + "-" + i))
+                    .autoAcknowledge(false)
+                    .cancelOnError(e -> false)
+                    .build();
+            streamContainer.register(request, this::onRecord);
+        }
+        streamContainer.start();
+
+        listenerContainer.addMessageListener(
+                (message, pattern) -> notifySubscribers(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(EVENTS_CHANNEL));
+        System.out.println("🧵 Job workers started: " + workers + " x " + consumerPrefix);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        streamContainer.stop();
+        workerPool.shutdown();
+        workerPool.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public String submit(JobSubmitRequest request, String username) {
+        if (request.getType() == null || request.getPayload() == null) {
+            throw new IllegalArgumentException("type and payload are required");
+        }
+        if (!groupReady) {
+            ensureGroup();
+        }
+        String id = UUID.randomUUID().toString();
+        String key = JOB_KEY_PREFIX + id;
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("type", request.getType().name());
+        fields.put("username", username);
+        fields.put("payload", toJson(request.getPayload()));
+        fields.put("status", JobStatus.QUEUED.name());
+        fields.put("attempts", "0");
+        fields.put("createdAt", LocalDateTime.now().toString());
+        redis.opsForHash().putAll(key, fields);
+        redis.expire(key, Duration.ofHours(resultTtlHours));
+
+        redis.opsForStream().add(STREAM_KEY, Map.of("jobId", id));
+        return id;
+    }
+
+    // Empty for unknown/expired jobs and for jobs owned by another user
+    public Optional<JobStatusResponse> getStatus(String id, String username) {
+        Map<Object, Object> job = redis.opsForHash().entries(JOB_KEY_PREFIX + id);
+        if (job.isEmpty() || !username.equals(job.get("username"))) {
+            return Optional.empty();
+        }
+        return Optional.of(toResponse(id, job));
+    }
+
+    // ✅ Completion is pushed once via SSE; the event is fanned out to every node over pub/sub
+    public Optional<SseEmitter> subscribe(String id, String username) {
+        if (getStatus(id, username).isEmpty()) {
+            return Optional.empty();
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        emitters.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>()).add(emitter);
+        Runnable remove = () -> emitters.computeIfPresent(id, (k, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        // Finished before (or while) we registered: the pub/sub event may already be gone
+        getStatus(id, username)
+                .filter(status -> isTerminal(status.status()))
+                .ifPresent(status -> notifySubscribers(id));
+        return Optional.of(emitter);
+    }
+
+    private void onRecord(MapRecord<String, String, String> record) {
+        String jobId = record.getValue().get("jobId");
+        try {
+            if (jobId != null) {
+                runJob(jobId);
+            }
+            redis.opsForStream().acknowledge(GROUP, record);
+        } catch (Exception e) {
+            // Not acked: stays pending and is re-queued by reclaimStale()
+            System.out.println("❌ Job " + jobId + " not acknowledged: " + e.getMessage());
+        }
+    }
+
+    private void runJob(String jobId) {
+        String key = JOB_KEY_PREFIX + jobId;
+        Map<Object, Object> job = redis.opsForHash().entries(key);
+        if (job.isEmpty()) {
+            System.out.println("⚠️ Job " + jobId + " expired before it ran");
+            return;
+        }
+        if (isTerminal(JobStatus.valueOf((String) job.get("status")))) {
+            return;  // duplicate delivery of a finished job
+        }
+
+        long attempts = redis.opsForHash().increment(key, "attempts", 1);
+        redis.opsForHash().put(key, "status", JobStatus.RUNNING.name());
+
+        Map<String, String> update = new HashMap<>();
+        try {
+            Object result = execute(JobType.valueOf((String) job.get("type")),
+                    (String) job.get("payload"), (String) job.get("username"));
+            update.put("status", JobStatus.SUCCEEDED.name());
+            update.put("result", toJson(result));
+            update.put("finishedAt", LocalDateTime.now().toString());
+            System.out.println("✅ Job " + jobId + " succeeded (attempt " + attempts + ")");
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            update.put("error", error);
+            if (attempts >= maxAttempts) {
+                update.put("status", JobStatus.FAILED.name());
+                update.put("finishedAt", LocalDateTime.now().toString());
+                System.out.println("❌ Job " + jobId + " failed permanently: " + error);
+            } else {
+                update.put("status", JobStatus.QUEUED.name());
+                long delayMs = backoffMillis(attempts);
+                redis.opsForZSet().add(RETRY_KEY, jobId, System.currentTimeMillis() + delayMs);
+                System.out.println("⏳ Job " + jobId + " retry " + attempts + "/" + maxAttempts + " in " + delayMs
+                        + " ms: " + error);
+            }
+        }
+        redis.opsForHash().putAll(key, update);
+        redis.expire(key, Duration.ofHours(resultTtlHours));
+
+        if (!JobStatus.QUEUED.name().equals(update.get("status"))) {
+            redis.convertAndSend(EVENTS_CHANNEL, jobId);
+        }
+    }
+
+    // ✅ The generator reports provider failures as text; those must fail the attempt (and be
+    // retried), not be stored as a SUCCEEDED result
+    private Object execute(JobType type, String payloadJson, String username) throws JsonProcessingException {
+        Authentication auth = new UsernamePasswordAuthenticationToken(username, null, List.of());
+        try (AiCallContext.Scope ignored = AiCallContext.open(username, null)) {
+            Object result = switch (type) {
+                case GENERATE -> generatorService.processMode(
+                        mapper.readValue(payloadJson, AdvancedEmailRequest.class), auth);
+                case THREAD_REPLY -> generatorService.generateThreadAwareReply(
+                        mapper.readValue(payloadJson, ThreadAwareRequest.class), auth);
+                case FOLLOW_UP -> generatorService.generateFollowUp(
+                        mapper.readValue(payloadJson, FollowUpRequest.class), auth);
+                case SUMMARIZE -> generatorService.summarizeEmail(
+                        mapper.readTree(payloadJson).path("emailContent").asText());
+            };
+            if (result instanceof String text && !EmailMetrics.OUTCOME_SUCCESS.equals(EmailMetrics.outcomeOf(text))) {
+                throw new IllegalStateException(text);
+            }
+            return result;
+        }
+    }
+
+    // ✅ Retries become due here and only then go back on the stream. ZREM decides which node
+    // moves an entry, so each retry is queued once however many nodes poll.
+    @Scheduled(fixedDelayString = "${email.jobs.retry-poll-interval-ms:1000}")
+    public void requeueDueRetries() {
+        try {
+            Set<String> due = redis.opsForZSet().rangeByScore(RETRY_KEY, 0, System.currentTimeMillis(), 0, 100);
+            if (due == null) {
+                return;
+            }
+            for (String jobId : due) {
+                Long removed = redis.opsForZSet().remove(RETRY_KEY, jobId);
+                if (removed != null && removed > 0) {
+                    redis.opsForStream().add(STREAM_KEY, Map.of("jobId", jobId));
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("⚠️ Job retry re-queue failed: " + e.getMessage());
+        }
+    }
+
+    // base * 2^(attempt-1), capped, with up to 20% jitter (same schedule as outbound mail)
+    private long backoffMillis(long attempt) {
+        long delay = retryBackoffBaseMs << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, retryBackoffMaxMs);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    // ✅ Entries whose consumer died mid-job: claim them (atomic, one node wins) and re-queue
+    @Scheduled(fixedDelayString = "${email.jobs.reclaim-interval-ms:30000}")
+    public void reclaimStale() {
+        if (!groupReady && !ensureGroup()) {
+            return;
+        }
+        try {
+            PendingMessages pending = redis.opsForStream().pending(STREAM_KEY, GROUP, Range.unbounded(), 100);
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() < claimIdleMs) {
+                    continue;
+                }
+                List<MapRecord<String, Object, Object>> claimed = redis.opsForStream().claim(STREAM_KEY, GROUP,
+                        consumerPrefix + "-reclaimer", Duration.ofMillis(claimIdleMs), message.getId());
+                for (MapRecord<String, Object, Object> record : claimed) {
+                    Object jobId = record.getValue().get("jobId");
+                    if (jobId != null) {
+                        redis.opsForStream().add(STREAM_KEY, Map.of("jobId", jobId.toString()));
+                        System.out.println("♻️ Re-queued stale job " + jobId);
+                    }
+                    redis.opsForStream().acknowledge(STREAM_KEY, GROUP, record.getId());
+                }
+            }
+            redis.opsForStream().trim(STREAM_KEY, streamMaxLength, true);
+        } catch (Exception e) {
+            System.out.println("⚠️ Job reclaim failed: " + e.getMessage());
+        }
+    }
+
+    private void notifySubscribers(String jobId) {
+        List<SseEmitter> waiting = emitters.remove(jobId);
+        if (waiting == null) {
+            return;
+        }
+        Map<Object, Object> job = redis.opsForHash().entries(JOB_KEY_PREFIX + jobId);
+        if (job.isEmpty()) {
+            waiting.forEach(SseEmitter::complete);
+            return;
+        }
+        JobStatusResponse status = toResponse(jobId, job);
+        for (SseEmitter emitter : waiting) {
+            try {
+                emitter.send(SseEmitter.event().name("completed").data(status, MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    // ✅ Redis being down at startup must not stop the app: the group is created on the next
+    // submit or reclaim pass, and the stream consumers keep polling until it exists
+    private boolean ensureGroup() {
+        try {
+            if (!Boolean.TRUE.equals(redis.hasKey(STREAM_KEY))) {
+                redis.opsForStream().add(STREAM_KEY, Map.of("init", "1"));  // XGROUP CREATE needs the stream
+            }
+            redis.opsForStream().createGroup(STREAM_KEY, ReadOffset.from("0"), GROUP);
+            System.out.println("✅ Job consumer group ready");
+        } catch (RedisConnectionFailureException e) {
+            System.out.println("⚠️ Redis unavailable, job consumer group not created yet: " + e.getMessage());
+            return false;
+        } catch (RedisSystemException e) {
+            // BUSYGROUP: another node (or an earlier run) created it already
+        }
+        groupReady = true;
+        return true;
+    }
+
+    // NOGROUP: the stream was deleted or Redis restarted empty, so the group has to be recreated
+    private void onReadError(Throwable e) {
+        String message = e.getMessage();
+        if (message != null && message.contains("NOGROUP")) {
+            groupReady = false;
+        }
+        System.out.println("⚠️ Job stream read failed: " + message);
+    }
+
+    private JobStatusResponse toResponse(String id, Map<Object, Object> job) {
+        JobStatus status = JobStatus.valueOf((String) job.get("status"));
+        Object result = null;
+        if (status == JobStatus.SUCCEEDED && job.get("result") != null) {
+            try {
+                result = mapper.readTree((String) job.get("result"));
+            } catch (JsonProcessingException e) {
+                result = job.get("result");
+            }
+        }
+        return new JobStatusResponse(
+                id,
+                JobType.valueOf((String) job.get("type")),
+                status,
+                Integer.parseInt(String.valueOf(job.getOrDefault("attempts", "0"))),
+                result,
+                (String) job.get("error"),
+                parseTime(job.get("createdAt")),
+                parseTime(job.get("finishedAt"))
+        );
+    }
+
+    private String toJson(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable job data: " + e.getMessage());
+        }
+    }
+
+    private static boolean isTerminal(JobStatus status) {
+        return status == JobStatus.SUCCEEDED || status == JobStatus.FAILED;
+    }
+
+    private static LocalDateTime parseTime(Object value) {
+        return value != null ? LocalDateTime.parse((String) value) : null;
+    }
+
+    private static String nodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "node";
+        }
+    }
+}
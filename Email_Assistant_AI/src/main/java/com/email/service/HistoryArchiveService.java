@@ -0,0 +1,88 @@
+package com.email.service;
+
+import com.email.entity.EmailHistory;
+import com.email.repository.EmailHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Moves history older than email.archive.max-age-days out of MySQL into HistoryArchiveStore,
+// one batch at a time: append + fsync segments first, then delete the batch from the hot table.
+@Service
+@RequiredArgsConstructor
+public class HistoryArchiveService {
+
+    private final EmailHistoryRepository historyRepository;
+    private final HistoryArchiveStore archiveStore;
+    private final EmailBlobStore blobStore;
+
+    @Value("${email.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${email.archive.max-age-days:180}")
+    private int maxAgeDays;
+
+    @Value("${email.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${email.archive.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    @Scheduled(cron = "${email.archive.cron:0 30 3 * * *}")
+    public void archiveOldHistory() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(maxAgeDays);
+        long archived = 0;
+
+        try {
+            for (int batchNo = 0; batchNo < maxBatchesPerRun; batchNo++) {
+                List<EmailHistory> batch = historyRepository.findByTimestampBeforeOrderByIdAsc(
+                        cutoff, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                archived += archiveBatch(batch);
+            }
+            if (archived > 0) {
+                System.out.println("🧊 Archived " + archived + " history rows older than " + cutoff);
+            }
+        } catch (Exception e) {
+            System.out.println("❌ History archiving stopped: " + e.getMessage());
+        }
+    }
+
+    private int archiveBatch(List<EmailHistory> batch) throws Exception {
+        // Orphan rows (no user) go to partition 0 so they cannot block the batch loop
+        Map<Long, List<EmailHistory>> byUser = batch.stream()
+                .collect(Collectors.groupingBy(h -> h.getUser() != null ? h.getUser().getId() : 0L,
+                        LinkedHashMap::new, Collectors.toList()));
+
+        // ✅ Cold tier first; if this throws, nothing is deleted from MySQL
+        for (Map.Entry<Long, List<EmailHistory>> entry : byUser.entrySet()) {
+            archiveStore.append(entry.getKey(), entry.getValue());
+        }
+
+        List<Long> ids = batch.stream().map(EmailHistory::getId).toList();
+        historyRepository.deleteAllByIdInBatch(ids);
+
+        Set<String> hashes = new HashSet<>();
+        for (EmailHistory history : batch) {
+            hashes.add(EmailBlobStore.hashOf(history.getEmailContent()));
+            hashes.add(EmailBlobStore.hashOf(history.getGeneratedResponse()));
+        }
+        blobStore.deleteUnreferenced(hashes);
+        return ids.size();
+    }
+}
@@ -0,0 +1,321 @@
+package com.email.service;
+
+import com.email.dto.ArchiveStats;
+import com.email.entity.EmailHistory;
+import com.email.entity.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Cold tier for email history: per-user, append-only segment files on local disk.
+//
+//   user-<id>/segment-000001.seg   [int length][compressed JSON record] ...
+//   user-<id>/segment-000001.idx   sparse index, one {id, epochMillis, offset} entry every N records
+//   user-<id>/stats.json           commit point (committedBytes) + running aggregates for analytics
+//
+// Anything past committedBytes is an interrupted append and is truncated before the next write.
+// Reads map the segment read-only and decode records straight out of the mapping.
+@Service
+@RequiredArgsConstructor
+public class HistoryArchiveStore {
+
+    private static final int INDEX_ENTRY_BYTES = 24;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${email.archive.dir:./data/history-archive}")
+    private String archiveDir;
+
+    @Value("${email.archive.segment-max-bytes:67108864}")
+    private long segmentMaxBytes;
+
+    @Value("${email.archive.index-interval:64}")
+    private int indexInterval;
+
+    private final Map<Long, ArchiveStats> statsCache = new ConcurrentHashMap<>();
+    private final Map<Long, Object> userLocks = new ConcurrentHashMap<>();
+
+    // ✅ Rows must be sorted by id; ids already archived are skipped so a retried batch is harmless
+    public void append(Long userId, List<EmailHistory> rows) throws IOException {
+        Path dir = userDir(userId);
+        Files.createDirectories(dir);
+
+        synchronized (userLocks.computeIfAbsent(userId, id -> new Object())) {
+            ArchiveStats stats = objectMapper.convertValue(stats(userId), ArchiveStats.class);
+
+            FileChannel segment = null;
+            FileChannel index = null;
+            try {
+                long position = stats.getCommittedBytes();
+                for (EmailHistory row : rows) {
+                    if (row.getId() <= stats.getLastArchivedId()) {
+                        continue;
+                    }
+
+                    if (segment != null && position >= segmentMaxBytes) {
+                        closeSegment(segment, index);
+                        segment = null;
+                        stats.setCurrentSegment(stats.getCurrentSegment() + 1);
+                        stats.setRecordsInSegment(0);
+                        position = 0;
+                    }
+                    if (segment == null) {
+                        segment = openForAppend(segmentPath(dir, stats.getCurrentSegment()), position);
+                        index = openIndexForAppend(indexPath(dir, stats.getCurrentSegment()), position);
+                    }
+
+                    if (stats.getRecordsInSegment() % indexInterval == 0) {
+                        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+                        entry.putLong(row.getId());
+                        entry.putLong(row.getTimestamp() != null
+                                ? row.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli() : 0L);
+                        entry.putLong(position);
+                        entry.flip();
+                        index.write(entry);
+                    }
+
+                    byte[] payload = EmailBlobStore.compress(objectMapper.writeValueAsString(row));
+                    ByteBuffer record = ByteBuffer.allocate(4 + payload.length);
+                    record.putInt(payload.length).put(payload).flip();
+                    while (record.hasRemaining()) {
+                        position += segment.write(record, position);
+                    }
+
+                    stats.setRecordsInSegment(stats.getRecordsInSegment() + 1);
+                    stats.setLastArchivedId(row.getId());
+                    stats.setCount(stats.getCount() + 1);
+                    stats.setTotalContentLength(stats.getTotalContentLength()
+                            + (row.getEmailContent() != null ? row.getEmailContent().length() : 0));
+                    if (row.getTone() != null) {
+                        stats.getToneCounts().merge(row.getTone(), 1L, Long::sum);
+                    }
+                    if (row.getIntent() != null) {
+                        stats.getIntentCounts().merge(row.getIntent(), 1L, Long::sum);
+                    }
+                }
+                stats.setCommittedBytes(position);
+            } finally {
+                closeSegment(segment, index);
+            }
+
+            // ✅ Commit point: only after the data is on disk
+            writeStats(dir, stats);
+            statsCache.put(userId, stats);
+        }
+    }
+
+    public ArchiveStats stats(Long userId) {
+        return statsCache.computeIfAbsent(userId, id -> {
+            Path file = userDir(id).resolve("stats.json");
+            if (!Files.exists(file)) {
+                return new ArchiveStats();
+            }
+            try {
+                return objectMapper.readValue(file.toFile(), ArchiveStats.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read archive stats for user " + id, e);
+            }
+        });
+    }
+
+    // Newest first; walks segments and sparse-index blocks backwards so only the tail is decoded
+    public List<EmailHistory> readNewest(Long userId, int limit) {
+        List<EmailHistory> result = new ArrayList<>();
+        ArchiveStats stats = stats(userId);
+        if (stats.getCount() == 0 || limit <= 0) {
+            return result;
+        }
+        Path dir = userDir(userId);
+        try {
+            for (int seg = stats.getCurrentSegment(); seg >= 1 && result.size() < limit; seg--) {
+                MappedByteBuffer data = map(segmentPath(dir, seg),
+                        seg == stats.getCurrentSegment() ? stats.getCommittedBytes() : Long.MAX_VALUE);
+                if (data == null) {
+                    continue;
+                }
+                List<Long> blockOffsets = readBlockOffsets(indexPath(dir, seg), data.limit());
+                for (int b = blockOffsets.size() - 1; b >= 0 && result.size() < limit; b--) {
+                    int from = (int) (long) blockOffsets.get(b);
+                    int to = b + 1 < blockOffsets.size() ? (int) (long) blockOffsets.get(b + 1) : data.limit();
+                    List<EmailHistory> block = new ArrayList<>();
+                    decodeRange(data, from, to, userId, block::add);
+                    for (int i = block.size() - 1; i >= 0 && result.size() < limit; i--) {
+                        result.add(block.get(i));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read history archive for user " + userId, e);
+        }
+        return result;
+    }
+
+    // Oldest first, one record at a time (constant memory regardless of archive size)
+    public void forEach(Long userId, Consumer<EmailHistory> consumer) {
+        ArchiveStats stats = stats(userId);
+        if (stats.getCount() == 0) {
+            return;
+        }
+        Path dir = userDir(userId);
+        try {
+            for (int seg = 1; seg <= stats.getCurrentSegment(); seg++) {
+                MappedByteBuffer data = map(segmentPath(dir, seg),
+                        seg == stats.getCurrentSegment() ? stats.getCommittedBytes() : Long.MAX_VALUE);
+                if (data != null) {
+                    decodeRange(data, 0, data.limit(), userId, consumer);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read history archive for user " + userId, e);
+        }
+    }
+
+    public List<Long> archivedUserIds() {
+        List<Long> ids = new ArrayList<>();
+        Path root = Paths.get(archiveDir);
+        if (!Files.isDirectory(root)) {
+            return ids;
+        }
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, "user-*")) {
+            for (Path dir : dirs) {
+                ids.add(Long.parseLong(dir.getFileName().toString().substring("user-".length())));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("❌ Cannot list history archive: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    private void decodeRange(MappedByteBuffer data, int from, int to, Long userId,
+                             Consumer<EmailHistory> consumer) throws IOException {
+        int pos = from;
+        while (pos + 4 <= to) {
+            int length = data.getInt(pos);
+            if (length <= 0 || pos + 4 + length > to) {
+                break;  // torn tail of an interrupted append
+            }
+            byte[] payload = new byte[length];
+            data.get(pos + 4, payload);
+            EmailHistory history = objectMapper.readValue(EmailBlobStore.decompress(payload), EmailHistory.class);
+            history.setUser(userRef(userId));
+            consumer.accept(history);
+            pos += 4 + length;
+        }
+    }
+
+    private List<Long> readBlockOffsets(Path indexFile, long dataLimit) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        if (Files.exists(indexFile)) {
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            while (index.remaining() >= INDEX_ENTRY_BYTES) {
+                index.getLong();  // id
+                index.getLong();  // timestamp
+                long offset = index.getLong();
+                if (offset < dataLimit) {
+                    offsets.add(offset);
+                }
+            }
+        }
+        if (offsets.isEmpty() || offsets.get(0) != 0L) {
+            offsets.add(0, 0L);
+        }
+        return offsets;
+    }
+
+    private MappedByteBuffer map(Path file, long maxBytes) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), maxBytes);
+            if (size == 0) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private FileChannel openForAppend(Path file, long committedBytes) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > committedBytes) {
+            channel.truncate(committedBytes);
+        }
+        return channel;
+    }
+
+    private FileChannel openIndexForAppend(Path file, long committedBytes) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Drop index entries that point into the truncated (uncommitted) tail
+        long entries = channel.size() / INDEX_ENTRY_BYTES;
+        long keep = 0;
+        ByteBuffer offset = ByteBuffer.allocate(8);
+        for (long i = 0; i < entries; i++) {
+            offset.clear();
+            channel.read(offset, i * INDEX_ENTRY_BYTES + 16);
+            offset.flip();
+            if (offset.getLong() >= committedBytes) {
+                break;
+            }
+            keep++;
+        }
+        channel.truncate(keep * INDEX_ENTRY_BYTES);
+        channel.position(keep * INDEX_ENTRY_BYTES);
+        return channel;
+    }
+
+    private void closeSegment(FileChannel segment, FileChannel index) throws IOException {
+        if (segment != null) {
+            segment.force(true);
+            segment.close();
+        }
+        if (index != null) {
+            index.force(true);
+            index.close();
+        }
+    }
+
+    private void writeStats(Path dir, ArchiveStats stats) throws IOException {
+        Path tmp = dir.resolve("stats.json.tmp");
+        objectMapper.writeValue(tmp.toFile(), stats);
+        Files.move(tmp, dir.resolve("stats.json"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path userDir(Long userId) {
+        return Paths.get(archiveDir, "user-" + userId);
+    }
+
+    private static Path segmentPath(Path dir, int segment) {
+        return dir.resolve(String.format("segment-%06d.seg", segment));
+    }
+
+    private static Path indexPath(Path dir, int segment) {
+        return dir.resolve(String.format("segment-%06d.idx", segment));
+    }
+
+    private static User userRef(Long userId) {
+        User user = new User();
+        user.setId(userId);
+        return user;
+    }
+}
@@ -0,0 +1,56 @@
+package com.email.service;
+
+import com.email.dto.ExportFormat;
+import com.email.entity.EmailHistory;
+import com.email.repository.EmailHistoryRepository;
+import com.email.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class HistoryExportService {
+
+    private final EmailHistoryRepository historyRepository;
+    private final UserRepository userRepository;
+    private final HistoryArchiveStore archiveStore;
+    private final EntityManager entityManager;
+
+    // ✅ Oldest first: archived tier, then hot rows streamed through a server-side cursor.
+    // Each entity is detached once written so the persistence context never grows.
+    @Transactional(readOnly = true)
+    public long export(String username, ExportFormat format, OutputStream out) throws IOException {
+        HistoryExportWriter writer = new HistoryExportWriter(out, format);
+        writer.writeHeader();
+
+        userRepository.findByUsername(username).ifPresent(user ->
+                archiveStore.forEach(user.getId(), history -> {
+                    try {
+                        writer.write(history);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+
+        try (Stream<EmailHistory> rows = historyRepository.streamByUsername(username)) {
+            Iterator<EmailHistory> it = rows.iterator();
+            while (it.hasNext()) {
+                EmailHistory history = it.next();
+                writer.write(history);
+                entityManager.detach(history);
+            }
+        }
+
+        writer.flush();
+        System.out.println("📤 Exported " + writer.getRowsWritten() + " history rows for " + username);
+        return writer.getRowsWritten();
+    }
+}
@@ -0,0 +1,115 @@
+package com.email.service;
+
+import com.email.dto.ExportFormat;
+import com.email.entity.EmailHistory;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Writes history rows one at a time as NDJSON or CSV. Holds nothing but a fixed-size buffer,
+// so memory use does not depend on how many rows go through it.
+public class HistoryExportWriter {
+
+    private static final int FLUSH_EVERY_ROWS = 1000;
+    private static final String[] COLUMNS = {"id", "timestamp", "tone", "intent", "mode", "emailContent", "generatedResponse"};
+
+    private final ExportFormat format;
+    private final Writer writer;
+    private final JsonGenerator json;
+    private long rowsWritten;
+
+    public HistoryExportWriter(OutputStream out, ExportFormat format) throws IOException {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        this.json = format == ExportFormat.NDJSON
+                ? new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET).createGenerator(writer)
+                : null;
+    }
+
+    public void writeHeader() throws IOException {
+        if (format == ExportFormat.CSV) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+    }
+
+    public void write(EmailHistory history) throws IOException {
+        if (format == ExportFormat.NDJSON) {
+            json.writeStartObject();
+            json.writeNumberField("id", history.getId());
+            json.writeStringField("timestamp", text(history.getTimestamp()));
+            json.writeStringField("tone", text(history.getTone()));
+            json.writeStringField("intent", text(history.getIntent()));
+            json.writeStringField("mode", text(history.getMode()));
+            json.writeStringField("emailContent", history.getEmailContent());
+            json.writeStringField("generatedResponse", history.getGeneratedResponse());
+            json.writeEndObject();
+            json.writeRaw('\n');
+        } else {
+            writer.write(String.valueOf(history.getId()));
+            writer.write(',');
+            writeCsvField(text(history.getTimestamp()));
+            writer.write(',');
+            writeCsvField(text(history.getTone()));
+            writer.write(',');
+            writeCsvField(text(history.getIntent()));
+            writer.write(',');
+            writeCsvField(text(history.getMode()));
+            writer.write(',');
+            writeCsvField(history.getEmailContent());
+            writer.write(',');
+            writeCsvField(history.getGeneratedResponse());
+            writer.write("\r\n");
+        }
+
+        if (++rowsWritten % FLUSH_EVERY_ROWS == 0) {
+            flush();
+        }
+    }
+
+    public void flush() throws IOException {
+        if (json != null) {
+            json.flush();
+        }
+        writer.flush();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    // RFC 4180: quote when needed, double embedded quotes
+    private void writeCsvField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static String text(Object value) {
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,465 @@
+package com.email.service;
+
+import com.email.dto.EmailIntent;
+import com.email.dto.EmailTone;
+import com.email.dto.ImportProgress;
+import com.email.entity.EmailHistory;
+import com.email.entity.User;
+import com.email.repository.UserRepository;
+import jakarta.mail.BodyPart;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.Session;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.SharedInputStream;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Onboards an existing mailbox: .mbox archives and directories of .eml files under
+// email.import.base-dir become history rows of the importing user. Files are memory-mapped,
+// MIME parsing reads straight from the mapping, triage runs on a fork-join pool and rows
+// are written with JDBC batches.
+@Service
+@RequiredArgsConstructor
+public class MailboxImportService {
+
+    private static final byte[] FROM_LINE = "From ".getBytes(StandardCharsets.US_ASCII);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmailBlobStore blobStore;
+    private final EmailSearchService searchService;
+    private final EmailGeneratorService generatorService;
+    private final UserRepository userRepository;
+
+    @Value("${email.import.base-dir:./data/import}")
+    private String baseDir;
+
+    @Value("${email.import.parallelism:0}")
+    private int parallelism;
+
+    @Value("${email.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${email.import.max-body-chars:20000}")
+    private int maxBodyChars;
+
+    @Value("${email.import.map-window-bytes:268435456}")
+    private long mapWindowBytes;
+
+    private final Session mailSession = Session.getInstance(new Properties());
+
+    private record ImportedMessage(String body, EmailIntent intent, LocalDateTime sentAt) {}
+
+    // Resolves a path relative to the caller's own directory, base-dir/<username>; anything
+    // outside it is rejected, so nobody can import (read) another user's mailbox
+    public Path resolveSource(String username, String relativePath) {
+        Path base = Paths.get(baseDir).toAbsolutePath().normalize();
+        Path userDir = base.resolve(username).normalize();
+        if (!base.equals(userDir.getParent())) {
+            throw new IllegalArgumentException("Username " + username + " cannot be used as an import directory");
+        }
+        Path source = userDir.resolve(relativePath == null ? "" : relativePath).normalize();
+        if (!source.startsWith(userDir) || !Files.exists(source)) {
+            throw new IllegalArgumentException("No mailbox at " + relativePath
+                    + " (paths are relative to your import directory, " + username + "/)");
+        }
+        return source;
+    }
+
+    public ImportProgress importMailbox(String username, Path source, boolean warmSearch,
+                                       Consumer<ImportProgress> progress) throws IOException {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".mbox") || p.toString().endsWith(".eml"))
+                    .sorted()
+                    .toList();
+        }
+
+        ImportRun run = new ImportRun(user, warmSearch, progress,
+                new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors()));
+        try {
+            for (Path file : files) {
+                run.currentFile = source.relativize(file).toString();
+                if (file.toString().endsWith(".eml")) {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        run.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                    }
+                } else {
+                    splitMbox(file, run::add);
+                }
+            }
+            run.flush();
+        } finally {
+            run.pool.shutdown();
+        }
+
+        ImportProgress done = run.snapshot("DONE");
+        progress.accept(done);
+        System.out.println("📥 Import for " + username + " finished: " + done.imported() + " messages, "
+                + done.failed() + " failed, " + String.format("%.1f", done.messagesPerSecond()) + " msg/s");
+        return done;
+    }
+
+    // ✅ Messages in an mbox start at a line beginning with "From " (bodies escape it as ">From ").
+    // The file is mapped in windows; a message cut by a window end is re-read from the next window.
+    private void splitMbox(Path file, Consumer<ByteBuffer> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long windowStart = 0;
+            while (windowStart < size) {
+                int length = (int) Math.min(Math.min(mapWindowBytes, Integer.MAX_VALUE), size - windowStart);
+                boolean lastWindow = windowStart + length == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+
+                int messageStart = -1;
+                int pos = 0;
+                while (pos < length) {
+                    if (startsWithFromLine(window, pos, length)) {
+                        if (messageStart >= 0) {
+                            sink.accept(messageSlice(window, messageStart, pos));
+                        }
+                        messageStart = pos;
+                    }
+                    int newline = indexOf(window, (byte) '\n', pos, length);
+                    if (newline < 0) {
+                        break;
+                    }
+                    pos = newline + 1;
+                }
+
+                if (messageStart < 0 || lastWindow) {
+                    if (messageStart >= 0) {
+                        sink.accept(messageSlice(window, messageStart, length));
+                    }
+                    if (messageStart < 0 && !lastWindow) {
+                        throw new IOException(file + ": no message boundary within " + length + " bytes");
+                    }
+                    return;
+                }
+                if (messageStart == 0) {
+                    throw new IOException(file + ": message at offset " + windowStart + " exceeds map window");
+                }
+                windowStart += messageStart;
+            }
+        }
+    }
+
+    // Triage of one message; runs on the fork-join pool. Null means unparseable.
+    private ImportedMessage triage(ByteBuffer raw) {
+        try {
+            MimeMessage message = new MimeMessage(mailSession, new ByteBufferInputStream(raw));
+            String subject = message.getSubject();
+            String text = Objects.requireNonNullElse(extractText(message), "");
+            String body = subject != null ? "Subject: " + subject + "\n\n" + text : text;
+            if (body.isBlank()) {
+                return null;
+            }
+            EmailIntent intent = generatorService.detectIntentLocal(body).getIntent();
+            LocalDateTime sentAt = message.getSentDate() != null
+                    ? LocalDateTime.ofInstant(message.getSentDate().toInstant(), ZoneId.systemDefault())
+                    : LocalDateTime.now();
+            return new ImportedMessage(body, intent, sentAt);
+        } catch (MessagingException | IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // First text/plain part wins; HTML (tags stripped) only when there is no plain text
+    private String extractText(Part part) throws MessagingException, IOException {
+        if (part.isMimeType("text/plain")) {
+            return readText(part);
+        }
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+            String html = null;
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart child = multipart.getBodyPart(i);
+                if (Part.ATTACHMENT.equalsIgnoreCase(child.getDisposition())) {
+                    continue;
+                }
+                if (child.isMimeType("text/html")) {
+                    html = html != null ? html : extractText(child);
+                    continue;
+                }
+                String text = extractText(child);
+                if (text != null) {
+                    return text;
+                }
+            }
+            return html;
+        }
+        if (part.isMimeType("text/html")) {
+            return readText(part).replaceAll("(?s)<(script|style)[^>]*>.*?</\\1>", " ")
+                    .replaceAll("<[^>]+>", " ")
+                    .replaceAll("[ \\t\\x0B\\f\\r]+", " ");
+        }
+        return null;
+    }
+
+    // ✅ Decodes base64 / quoted-printable while reading, stops at max-body-chars
+    private String readText(Part part) throws MessagingException, IOException {
+        try (Reader reader = new InputStreamReader(part.getInputStream(), charsetOf(part))) {
+            StringBuilder out = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while (out.length() < maxBodyChars && (n = reader.read(buffer)) > 0) {
+                out.append(buffer, 0, Math.min(n, maxBodyChars - out.length()));
+            }
+            return out.toString();
+        }
+    }
+
+    private static Charset charsetOf(Part part) {
+        try {
+            String charset = new ContentType(part.getContentType()).getParameter("charset");
+            return charset != null ? Charset.forName(MimeUtility.javaCharset(charset)) : StandardCharsets.UTF_8;
+        } catch (Exception e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    private List<Long> insertBatch(User user, List<ImportedMessage> messages, String emptyResponseHash) {
+        List<String> bodyHashes = blobStore.storeAll(messages.stream().map(ImportedMessage::body).toList());
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(
+                        "INSERT INTO email_history (email_content, generated_response, tone, intent, mode, timestamp, user_id) "
+                                + "VALUES (?, ?, ?, ?, NULL, ?, ?)", Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ImportedMessage message = messages.get(i);
+                        ps.setString(1, bodyHashes.get(i));
+                        ps.setString(2, emptyResponseHash);
+                        ps.setString(3, EmailTone.FORMAL.name());
+                        ps.setString(4, message.intent().name());
+                        ps.setTimestamp(5, Timestamp.valueOf(message.sentAt()));
+                        ps.setLong(6, user.getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return messages.size();
+                    }
+                },
+                keys);
+        return keys.getKeyList().stream()
+                .map(row -> ((Number) row.values().iterator().next()).longValue())
+                .toList();
+    }
+
+    private static boolean startsWithFromLine(ByteBuffer buffer, int pos, int limit) {
+        if (pos + FROM_LINE.length > limit) {
+            return false;
+        }
+        for (int i = 0; i < FROM_LINE.length; i++) {
+            if (buffer.get(pos + i) != FROM_LINE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Slice of one message without its "From " envelope line
+    private static ByteBuffer messageSlice(ByteBuffer window, int start, int end) {
+        int newline = indexOf(window, (byte) '\n', start, end);
+        int bodyStart = newline < 0 ? end : newline + 1;
+        return window.slice(bodyStart, end - bodyStart);
+    }
+
+    // State of one import: collects message slices and processes them a batch at a time
+    private final class ImportRun {
+        private final User user;
+        private final boolean warmSearch;
+        private final Consumer<ImportProgress> progress;
+        private final ForkJoinPool pool;
+        private final long startNanos = System.nanoTime();
+        private final Map<EmailIntent, Long> intentCounts = new EnumMap<>(EmailIntent.class);
+        private final List<ByteBuffer> pending = new ArrayList<>();
+        private final String emptyResponseHash = blobStore.store("");
+        private String currentFile;
+        private long parsed;
+        private long imported;
+        private long failed;
+
+        ImportRun(User user, boolean warmSearch, Consumer<ImportProgress> progress, ForkJoinPool pool) {
+            this.user = user;
+            this.warmSearch = warmSearch;
+            this.progress = progress;
+            this.pool = pool;
+        }
+
+        void add(ByteBuffer message) {
+            pending.add(message);
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<ImportedMessage> triaged;
+            try {
+                // ✅ parallelStream inside pool.submit runs on this pool, not the common pool
+                triaged = pool.submit(() -> pending.parallelStream().map(MailboxImportService.this::triage).toList()).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Import interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Import triage failed: " + e.getCause().getMessage(), e.getCause());
+            }
+            parsed += pending.size();
+            pending.clear();
+
+            List<ImportedMessage> ok = triaged.stream().filter(Objects::nonNull).toList();
+            failed += triaged.size() - ok.size();
+            if (!ok.isEmpty()) {
+                List<Long> ids = insertBatch(user, ok, emptyResponseHash);
+                imported += ok.size();
+                ok.forEach(m -> intentCounts.merge(m.intent(), 1L, Long::sum));
+                if (warmSearch) {
+                    searchService.indexBatch(toHistories(ok, ids));
+                }
+            }
+            progress.accept(snapshot("RUNNING"));
+        }
+
+        private List<EmailHistory> toHistories(List<ImportedMessage> messages, List<Long> ids) {
+            List<EmailHistory> histories = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size() && i < ids.size(); i++) {
+                ImportedMessage message = messages.get(i);
+                EmailHistory history = new EmailHistory();
+                history.setId(ids.get(i));
+                history.setEmailContent(message.body());
+                history.setGeneratedResponse("");
+                history.setTone(EmailTone.FORMAL);
+                history.setIntent(message.intent());
+                history.setTimestamp(message.sentAt());
+                history.setUser(user);
+                histories.add(history);
+            }
+            return histories;
+        }
+
+        ImportProgress snapshot(String status) {
+            double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-3);
+            return new ImportProgress(status, currentFile, parsed, imported, failed,
+                    imported / seconds, new EnumMap<>(intentCounts));
+        }
+    }
+
+    // ✅ SharedInputStream over a mapped slice: MimeMessage keeps sub-streams of the mapping
+    // for content and parts instead of copying each body into a byte[]
+    private static final class ByteBufferInputStream extends InputStream implements SharedInputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.slice();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            buffer.mark();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.reset();
+        }
+
+        @Override
+        public long getPosition() {
+            return buffer.position();
+        }
+
+        @Override
+        public InputStream newStream(long start, long end) {
+            int limit = end < 0 ? buffer.limit() : (int) end;
+            return new ByteBufferInputStream(buffer.slice((int) start, limit - (int) start));
+        }
+    }
+}
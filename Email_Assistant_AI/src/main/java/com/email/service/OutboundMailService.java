@@ -0,0 +1,204 @@
+package com.email.service;
+
+import com.email.dto.DeliveryStatusResponse;
+import com.email.dto.OutboundEmailStatus;
+import com.email.dto.SendEmailRequest;
+import com.email.entity.OutboundAttachment;
+import com.email.entity.OutboundEmail;
+import com.email.repository.OutboundEmailRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Durable outbound queue: /send-email only inserts a row; workers claim due rows, send them
+// over pooled SMTP connections and retry failures with exponential backoff.
+@Service
+@RequiredArgsConstructor
+public class OutboundMailService {
+
+    private final OutboundEmailRepository outboundRepository;
+    private final EmailSender emailSender;
+    private final TransactionTemplate transactionTemplate;
+    private final AttachmentSpoolService attachmentSpool;
+
+    @Value("${email.outbox.workers:4}")
+    private int workers;
+
+    @Value("${email.outbox.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.backoff-base-ms:2000}")
+    private long backoffBaseMs;
+
+    @Value("${email.outbox.backoff-max-ms:600000}")
+    private long backoffMaxMs;
+
+    @Value("${email.outbox.per-domain-concurrency:2}")
+    private int perDomainConcurrency;
+
+    @Value("${email.outbox.lease-ms:120000}")
+    private long leaseMs;
+
+    private ExecutorService workerPool;
+    private Semaphore freeWorkers;
+    private final Map<String, Semaphore> domainPermits = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        this.workerPool = Executors.newFixedThreadPool(workers);
+        this.freeWorkers = new Semaphore(workers);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workerPool.shutdown();
+        workerPool.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public OutboundEmail enqueue(SendEmailRequest request) {
+        return outboundRepository.save(newQueuedEmail(request));
+    }
+
+    // ✅ Files are spooled first; the row only becomes visible to workers once they are on disk.
+    // Attachment rows and the email row commit together, so a failure leaves neither behind.
+    public OutboundEmail enqueueWithAttachments(SendEmailRequest request, List<MultipartFile> files) throws IOException {
+        attachmentSpool.validate(files);
+        OutboundEmail email = newQueuedEmail(request);
+        try {
+            List<OutboundAttachment> attachments = attachmentSpool.spool(email.getId(), files);
+            return transactionTemplate.execute(status -> {
+                attachmentSpool.save(attachments);
+                return outboundRepository.save(email);
+            });
+        } catch (IOException | RuntimeException e) {
+            attachmentSpool.deleteSpool(email.getId());
+            throw e;
+        }
+    }
+
+    private OutboundEmail newQueuedEmail(SendEmailRequest request) {
+        if (request.getTo() == null || !request.getTo().contains("@")) {
+            throw new IllegalArgumentException("Invalid recipient: " + request.getTo());
+        }
+        OutboundEmail email = new OutboundEmail();
+        email.setId(UUID.randomUUID().toString());
+        email.setToAddress(request.getTo().trim());
+        email.setRecipientDomain(domainOf(request.getTo()));
+        email.setSubject(request.getSubject());
+        email.setBody(request.getBody());
+        email.setStatus(OutboundEmailStatus.QUEUED);
+        return email;
+    }
+
+    public Optional<DeliveryStatusResponse> getStatus(String id) {
+        return outboundRepository.findById(id).map(email -> new DeliveryStatusResponse(
+                email.getId(),
+                email.getToAddress(),
+                email.getStatus(),
+                email.getAttempts(),
+                email.getLastError(),
+                email.getCreatedAt(),
+                email.getStatus() == OutboundEmailStatus.QUEUED ? email.getNextAttemptAt() : null,
+                email.getSentAt()
+        ));
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:1000}")
+    public void dispatchDue() {
+        int capacity = freeWorkers.availablePermits();
+        if (capacity == 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboundEmail> claimed = transactionTemplate.execute(status -> {
+            List<OutboundEmail> due = outboundRepository.lockDueForDelivery(now, capacity);
+            for (OutboundEmail email : due) {
+                email.setStatus(OutboundEmailStatus.SENDING);
+                email.setLockedUntil(now.plusNanos(leaseMs * 1_000_000));
+            }
+            return outboundRepository.saveAll(due);
+        });
+
+        for (OutboundEmail email : claimed) {
+            freeWorkers.acquireUninterruptibly();
+            workerPool.execute(() -> {
+                try {
+                    deliver(email);
+                } finally {
+                    freeWorkers.release();
+                }
+            });
+        }
+    }
+
+    private void deliver(OutboundEmail email) {
+        Semaphore domain = domainPermits.computeIfAbsent(email.getRecipientDomain(),
+                d -> new Semaphore(perDomainConcurrency));
+        if (!domain.tryAcquire()) {
+            // ✅ Domain is saturated: hand the row back without counting an attempt
+            email.setStatus(OutboundEmailStatus.QUEUED);
+            email.setNextAttemptAt(LocalDateTime.now().plusSeconds(1));
+            email.setLockedUntil(null);
+            outboundRepository.save(email);
+            return;
+        }
+
+        try {
+            email.setAttempts(email.getAttempts() + 1);
+            emailSender.deliver(emailSender.buildMessage(email.getToAddress(), email.getSubject(), email.getBody(),
+                    attachmentSpool.attachmentsFor(email.getId())));
+
+            email.setStatus(OutboundEmailStatus.SENT);
+            email.setSentAt(LocalDateTime.now());
+            email.setLastError(null);
+            System.out.println("✅ Email " + email.getId() + " delivered to " + email.getToAddress());
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            email.setLastError(error.length() > 1000 ? error.substring(0, 1000) : error);
+            if (email.getAttempts() >= maxAttempts) {
+                email.setStatus(OutboundEmailStatus.FAILED);
+                System.out.println("❌ Email " + email.getId() + " failed permanently: " + error);
+            } else {
+                email.setStatus(OutboundEmailStatus.QUEUED);
+                email.setNextAttemptAt(LocalDateTime.now().plusNanos(backoffMillis(email.getAttempts()) * 1_000_000));
+                System.out.println("⏳ Email " + email.getId() + " retry " + email.getAttempts() + "/" + maxAttempts + ": " + error);
+            }
+        } finally {
+            domain.release();
+            email.setLockedUntil(null);
+            outboundRepository.save(email);
+            if (email.getStatus() == OutboundEmailStatus.SENT || email.getStatus() == OutboundEmailStatus.FAILED) {
+                attachmentSpool.deleteSpool(email.getId());
+            }
+        }
+    }
+
+    // base * 2^(attempt-1), capped, with up to 20% jitter so retries from many rows spread out
+    private long backoffMillis(int attempt) {
+        long delay = backoffBaseMs << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, backoffMaxMs);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    private static String domainOf(String address) {
+        return address.substring(address.lastIndexOf('@') + 1).trim().toLowerCase();
+    }
+}
@@ -0,0 +1,37 @@
+package com.email.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// One per Gemini/Ollama call, retries and backoff included (the event's duration is the call latency)
+@Name("com.email.ProviderCall")
+@Label("Provider Call")
+@Category({"Email Assistant", "Provider"})
+@Description("A call to an AI provider, as seen by EmailMetrics.providerCall")
+public class ProviderCallEvent extends Event {
+
+    @Label("User")
+    String user;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Provider")
+    String provider;
+
+    @Label("Prompt Size")
+    @Description("Prompt length in characters")
+    int promptChars;
+
+    @Label("Prompt Tokens")
+    long promptTokens;
+
+    @Label("Completion Tokens")
+    long completionTokens;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -1,11 +1,13 @@
 package com.email.service;
 
 import com.email.service.RateLimitService;
+import io.micrometer.core.instrument.Tags;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -16,6 +18,13 @@ import java.io.IOException;
 public class RateLimitFilter extends OncePerRequestFilter {
 
     private final RateLimitService rateLimitService;
+    private final EmailMetrics metrics;
+
+    @Value("${email.ratelimit.max-requests:10}")
+    private int maxRequests;
+
+    @Value("${email.ratelimit.window-seconds:60}")
+    private int windowSeconds;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
@@ -25,8 +34,16 @@ public class RateLimitFilter extends OncePerRequestFilter {
         String clientIp = getClientIpAddress(request);
         String endpoint = request.getRequestURI();
 
-        // 10 requests per minute per IP
-        boolean allowed = rateLimitService.isAllowed(clientIp, endpoint, 10, 60);
+        // 10 requests per minute per IP by default
+        EmailMetrics.Stage stage = metrics.start("ratelimit.check");
+        String outcome = "error";
+        boolean allowed;
+        try {
+            allowed = rateLimitService.isAllowed(clientIp, endpoint, maxRequests, windowSeconds);
+            outcome = allowed ? "allowed" : "rejected";
+        } finally {
+            stage.stop(Tags.of("outcome", outcome));
+        }
 
         if (!allowed) {
             response.setStatus(429); // Too Many Requests
@@ -37,6 +54,12 @@ public class RateLimitFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    // ✅ Prometheus scrapes and health probes must not eat into (or be blocked by) the per-IP limit
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator/");
+    }
+
     // ✅ IMPLEMENTED: Get client IP
     private String getClientIpAddress(HttpServletRequest request) {
         String xForwardedFor = request.getHeader("X-Forwarded-For");
@@ -0,0 +1,261 @@
+package com.email.service;
+
+import com.email.ai.EmailEmbedder;
+import com.email.dto.EmailIntent;
+import com.email.dto.EmailTone;
+import com.email.dto.RewriteMode;
+import com.email.entity.EmailHistory;
+import com.email.repository.EmailHistoryRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Semantic reply-reuse cache: an HNSW vector index (Lucene KNN) over embeddings of past
+// inbound emails. A new email that is close enough to a past one with the same user, tone
+// and intent gets the stored reply instead of a fresh LLM call.
+@Service
+@RequiredArgsConstructor
+public class ReplyReuseService {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_USER = "userId";
+    private static final String FIELD_TONE = "tone";
+    private static final String FIELD_INTENT = "intent";
+    private static final String FIELD_VECTOR = "embedding";
+    private static final String FIELD_REPLY = "reply";
+
+    private final EmailHistoryRepository historyRepository;
+    private final List<EmailEmbedder> embedders;
+    private final HistoryArchiveStore archiveStore;
+
+    @Value("${email.reuse.enabled:true}")
+    private boolean enabled;
+
+    @Value("${email.reuse.embedder:HASHED}")
+    private String embedderName;
+
+    @Value("${email.reuse.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    @Value("${email.reuse.candidates:5}")
+    private int candidates;
+
+    @Value("${email.reuse.index-dir:./data/reuse-index}")
+    private String indexDir;
+
+    private EmailEmbedder embedder;
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        this.embedder = embedders.stream()
+                .filter(e -> e.getEmbedderName().equalsIgnoreCase(embedderName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown embedder: " + embedderName));
+
+        this.directory = FSDirectory.open(Paths.get(indexDir, embedder.getEmbedderName().toLowerCase()));
+        boolean fresh = !DirectoryReader.indexExists(directory);
+        this.writer = new IndexWriter(directory, new IndexWriterConfig()
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+
+        if (fresh) {
+            // ✅ Build in the background so startup is not blocked on large histories
+            CompletableFuture.runAsync(this::rebuild);
+        }
+    }
+
+    public Optional<String> findReusableReply(Long userId, String emailContent, EmailTone tone, EmailIntent intent) {
+        if (!enabled || userId == null || emailContent == null || emailContent.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            float[] vector = embedder.embed(emailContent);
+
+            BooleanQuery filter = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term(FIELD_USER, userId.toString())), BooleanClause.Occur.FILTER)
+                    .add(new TermQuery(new Term(FIELD_TONE, toneKey(tone))), BooleanClause.Occur.FILTER)
+                    .add(new TermQuery(new Term(FIELD_INTENT, intentKey(intent))), BooleanClause.Occur.FILTER)
+                    .build();
+
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs top = searcher.search(new KnnFloatVectorQuery(FIELD_VECTOR, vector, candidates, filter), 1);
+                if (top.scoreDocs.length == 0) {
+                    return Optional.empty();
+                }
+                ScoreDoc best = top.scoreDocs[0];
+                // COSINE scores are mapped to (1 + cos) / 2 by Lucene
+                double cosine = 2.0 * best.score - 1.0;
+                if (cosine < similarityThreshold) {
+                    return Optional.empty();
+                }
+                Document doc = searcher.storedFields().document(best.doc);
+                String reply = doc.get(FIELD_REPLY);
+                if (!isSuccessfulReply(reply)) {
+                    return Optional.empty();  // indexed before errors were filtered out
+                }
+                System.out.println("♻️ Reusing reply from history #" + doc.get(FIELD_ID)
+                        + " (similarity " + String.format("%.3f", cosine) + ")");
+                return Optional.of(reply);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (Exception e) {
+            System.out.println("⚠️ Reply reuse lookup failed → calling provider: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void index(EmailHistory history) {
+        if (!enabled || !isReusable(history)) {
+            return;
+        }
+        try {
+            writer.updateDocument(new Term(FIELD_ID, history.getId().toString()), toDocument(history));
+            searcherManager.maybeRefresh();
+        } catch (Exception e) {
+            System.out.println("❌ Reply reuse index update failed: " + e.getMessage());
+        }
+    }
+
+    // ✅ Rebuilds the whole vector index from email_history (page by page) and the history archive
+    public int rebuild() {
+        if (!enabled) {
+            return 0;
+        }
+        int indexed = 0;
+        try {
+            writer.deleteAll();
+            // ✅ Keyset pages (id > last seen): each page is an index range scan, no OFFSET to skip
+            long lastId = 0;
+            List<EmailHistory> batch;
+            do {
+                batch = historyRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, 500));
+                for (EmailHistory history : batch) {
+                    if (isReusable(history)) {
+                        writer.addDocument(toDocument(history));
+                        indexed++;
+                    }
+                    lastId = history.getId();
+                }
+            } while (batch.size() == 500);
+
+            for (Long userId : archiveStore.archivedUserIds()) {
+                int[] archived = {0};
+                archiveStore.forEach(userId, history -> {
+                    if (isReusable(history)) {
+                        try {
+                            writer.addDocument(toDocument(history));
+                            archived[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+                indexed += archived[0];
+            }
+            writer.commit();
+            searcherManager.maybeRefresh();
+            System.out.println("✅ Reply reuse index rebuilt: " + indexed + " replies");
+        } catch (Exception e) {
+            System.out.println("❌ Reply reuse rebuild failed: " + e.getMessage());
+        }
+        return indexed;
+    }
+
+    @Scheduled(fixedDelayString = "${email.reuse.commit-interval-ms:30000}")
+    public void commitPending() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException e) {
+            System.out.println("❌ Reply reuse commit failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    // Only plain replies are reusable; polish/shorten/etc. outputs are rewrites, not answers,
+    // and provider errors ("Rate limited…", "Gemini API Error…") are not answers either
+    private boolean isReusable(EmailHistory history) {
+        return history != null
+                && history.getId() != null
+                && history.getUser() != null
+                && history.getMode() == RewriteMode.GENERATE_REPLY
+                && isSuccessfulReply(history.getGeneratedResponse());
+    }
+
+    private static boolean isSuccessfulReply(String reply) {
+        return reply != null && !reply.isBlank()
+                && EmailMetrics.OUTCOME_SUCCESS.equals(EmailMetrics.outcomeOf(reply));
+    }
+
+    private Document toDocument(EmailHistory history) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, history.getId().toString(), Field.Store.YES));
+        doc.add(new StringField(FIELD_USER, history.getUser().getId().toString(), Field.Store.NO));
+        doc.add(new StringField(FIELD_TONE, toneKey(history.getTone()), Field.Store.NO));
+        doc.add(new StringField(FIELD_INTENT, intentKey(history.getIntent()), Field.Store.NO));
+        doc.add(new KnnFloatVectorField(FIELD_VECTOR, embedder.embed(history.getEmailContent()),
+                VectorSimilarityFunction.COSINE));
+        doc.add(new StoredField(FIELD_REPLY, history.getGeneratedResponse()));
+        return doc;
+    }
+
+    private static String toneKey(EmailTone tone) {
+        return (tone != null ? tone : EmailTone.FORMAL).name();
+    }
+
+    private static String intentKey(EmailIntent intent) {
+        return (intent != null ? intent : EmailIntent.OTHER).name();
+    }
+}
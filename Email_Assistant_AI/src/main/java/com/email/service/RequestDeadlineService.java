@@ -0,0 +1,128 @@
+package com.email.service;
+
+import com.email.ai.RequestDeadline;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// End-to-end deadline for the LLM-backed endpoints. The budget comes from the client
+// (X-Request-Timeout-Ms) or the endpoint's default, clamped to [min-ms, max-ms]. The handler
+// runs as an async task so the Tomcat request stays registered with the connector while it
+// works: a client that disconnects surfaces as an async error, Spring interrupts the worker,
+// and the interrupted block() disposes the WebClient subscription, closing the upstream
+// provider connection. The deadline is cancelled as well, so whatever stage runs next
+// (retry, quota wait, history save) stops instead of carrying on for nobody.
+@Service
+@RequiredArgsConstructor
+public class RequestDeadlineService {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final Environment environment;
+    private final EmailMetrics metrics;
+
+    @Value("${email.deadline.default-ms:30000}")
+    private long defaultMs;
+
+    @Value("${email.deadline.min-ms:1000}")
+    private long minMs;
+
+    @Value("${email.deadline.max-ms:120000}")
+    private long maxMs;
+
+    // Head start for the worker's own 504 before the async timeout fires
+    @Value("${email.deadline.grace-ms:500}")
+    private long graceMs;
+
+    @Value("${email.deadline.workers:150}")
+    private int workers;
+
+    private ExecutorService workerPool;
+    private TaskExecutorAdapter executor;
+
+    @PostConstruct
+    public void init() {
+        this.workerPool = Executors.newFixedThreadPool(workers);
+        this.executor = new TaskExecutorAdapter(workerPool);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());  // ✅ keeps the trace on the worker
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerPool.shutdownNow();
+    }
+
+    public <T> WebAsyncTask<ResponseEntity<T>> withDeadline(HttpServletRequest request,
+                                                             Callable<ResponseEntity<T>> handler) {
+        String path = request.getRequestURI();
+        Duration budget = budget(request);
+        RequestDeadline deadline = RequestDeadline.after(budget);
+
+        Callable<ResponseEntity<T>> task = () -> {
+            try (RequestDeadline.Scope ignored = deadline.open()) {
+                return handler.call();
+            } catch (RequestDeadline.ExceededException e) {
+                return expired(path, budget, deadline, e.getMessage());
+            } catch (RuntimeException e) {
+                // block() timed out or was interrupted because the deadline ran out
+                if (deadline.isOver()) {
+                    return expired(path, budget, deadline, e.getMessage());
+                }
+                throw e;
+            }
+        };
+
+        WebAsyncTask<ResponseEntity<T>> asyncTask = new WebAsyncTask<>(budget.toMillis() + graceMs, executor, task);
+        asyncTask.onTimeout(() -> {
+            ResponseEntity<T> response = expired(path, budget, deadline, "worker still busy");
+            deadline.cancel("deadline exceeded");
+            return response;
+        });
+        asyncTask.onError(() -> {
+            deadline.cancel("client disconnected");
+            metrics.abandoned(path, "disconnect");
+            System.out.println("🔌 Client left " + path + ", upstream call cancelled");
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+        });
+        return asyncTask;
+    }
+
+    // Client header first, then email.deadline.endpoint.<last path segment>, then the default
+    Duration budget(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        long ms = environment.getProperty("email.deadline.endpoint." + path.substring(path.lastIndexOf('/') + 1),
+                Long.class, defaultMs);
+        String header = request.getHeader(TIMEOUT_HEADER);
+        if (header != null) {
+            try {
+                ms = Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                System.out.println("⚠️ Ignoring invalid " + TIMEOUT_HEADER + ": " + header);
+            }
+        }
+        return Duration.ofMillis(Math.max(minMs, Math.min(maxMs, ms)));
+    }
+
+    // Counted once: a deadline cancelled by the async callbacks was already answered there
+    private <T> ResponseEntity<T> expired(String path, Duration budget, RequestDeadline deadline, String detail) {
+        if (!deadline.isCancelled()) {
+            metrics.abandoned(path, "deadline");
+            System.out.println("⏱️ " + path + " exceeded its " + budget.toMillis() + " ms deadline: " + detail);
+        }
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.email.service;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+// Emits an ApiRequestEvent into the continuous JFR recording for every /api request. Runs outside
+// the security chain so rate limiting and JWT auth count towards the latency; the user comes from
+// the attribute JwtAuthenticationFilter leaves on the request. Costs next to nothing when JFR is off.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+@RequiredArgsConstructor
+public class RequestEventFilter extends OncePerRequestFilter {
+
+    private final Tracer tracer;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        ApiRequestEvent event = new ApiRequestEvent();
+        event.begin();
+        Span span = tracer.currentSpan();
+        String traceId = span != null ? span.context().traceId() : null;  // no current span on the completing thread
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // ✅ LLM endpoints return a WebAsyncTask: the event covers the work, not just the hand-off
+            AsyncCompletion.whenComplete(request, () -> commit(event, request, response, traceId));
+        }
+    }
+
+    private static void commit(ApiRequestEvent event, HttpServletRequest request, HttpServletResponse response,
+                               String traceId) {
+        event.end();
+        if (event.shouldCommit()) {
+            Object user = request.getAttribute(JwtAuthenticationFilter.USERNAME_ATTRIBUTE);
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            event.user = user != null ? user.toString() : "anonymous";
+            event.method = request.getMethod();
+            event.operation = pattern != null ? pattern.toString() : request.getRequestURI();
+            event.status = response.getStatus();
+            event.traceId = traceId;
+            event.commit();
+        }
+    }
+}
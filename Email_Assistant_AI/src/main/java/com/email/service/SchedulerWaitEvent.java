@@ -0,0 +1,29 @@
+package com.email.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// One per FairLlmScheduler wait (the event's duration is the time queued). Carries the user,
+// which the email.scheduler.wait meter leaves out to keep its cardinality bounded.
+@Name("com.email.SchedulerWait")
+@Label("Scheduler Wait")
+@Category({"Email Assistant", "Provider"})
+@Description("Time a provider call spent queued in FairLlmScheduler")
+public class SchedulerWaitEvent extends Event {
+
+    @Label("User")
+    String user;
+
+    @Label("Provider")
+    String provider;
+
+    @Label("Weight")
+    double weight;
+
+    @Label("Rejection")
+    @Description("Why the call was turned away, null if it got a slot")
+    String rejection;
+}
@@ -0,0 +1,110 @@
+package com.email.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Keeps connected, authenticated SMTP transports around so each message does not pay for
+// connect + STARTTLS + AUTH. Connection settings come from the spring.mail.* sender.
+@Service
+@RequiredArgsConstructor
+public class SmtpTransportPool {
+
+    private final JavaMailSenderImpl mailSender;
+
+    @Value("${email.smtp.pool.max-connections:4}")
+    private int maxConnections;
+
+    @Value("${email.smtp.pool.max-idle-ms:60000}")
+    private long maxIdleMs;
+
+    @Value("${email.smtp.pool.borrow-timeout-ms:30000}")
+    private long borrowTimeoutMs;
+
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private Semaphore permits;
+
+    private record PooledTransport(Transport transport, long lastUsed) {}
+
+    @jakarta.annotation.PostConstruct
+    public void init() {
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    public Transport borrow() throws MessagingException, InterruptedException {
+        if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new MessagingException("No SMTP connection available within " + borrowTimeoutMs + " ms");
+        }
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                // isConnected() issues a NOOP, so servers that dropped us are detected here
+                if (pooled.transport().isConnected()) {
+                    return pooled.transport();
+                }
+                closeQuietly(pooled.transport());
+            }
+            return connect();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // ✅ broken = true closes the connection instead of returning it to the pool
+    public void release(Transport transport, boolean broken) {
+        try {
+            if (broken || !transport.isConnected()) {
+                closeQuietly(transport);
+            } else {
+                idle.offerFirst(new PooledTransport(transport, System.currentTimeMillis()));
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${email.smtp.pool.evict-interval-ms:30000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - maxIdleMs;
+        PooledTransport pooled;
+        while ((pooled = idle.peekLast()) != null && pooled.lastUsed() < cutoff) {
+            if (idle.removeLastOccurrence(pooled)) {
+                closeQuietly(pooled.transport());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled.transport());
+        }
+    }
+
+    private Transport connect() throws MessagingException {
+        Transport transport = mailSender.getSession().getTransport(mailSender.getProtocol());
+        transport.connect(mailSender.getHost(), mailSender.getPort(),
+                mailSender.getUsername(), mailSender.getPassword());
+        System.out.println("🔌 Opened SMTP connection to " + mailSender.getHost());
+        return transport;
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException ignored) {
+            // connection already gone
+        }
+    }
+}
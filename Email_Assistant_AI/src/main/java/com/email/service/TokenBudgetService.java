@@ -0,0 +1,186 @@
+package com.email.service;
+
+import com.email.ai.RequestDeadline;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Keeps prompts inside a per-operation token budget. Inputs over budget are split on
+// paragraph boundaries, each chunk is condensed by the model in parallel (map) and the
+// caller's own prompt runs over the joined notes (reduce). Inputs over the hard limit are
+// rejected before any provider call.
+@Service
+public class TokenBudgetService {
+
+    // Room left in each budget for the instructions around the email text
+    private static final int PROMPT_OVERHEAD_TOKENS = 200;
+    private static final int MAX_REDUCE_ROUNDS = 2;
+
+    @Value("${email.prompt.max-input-tokens:60000}")
+    private int maxInputTokens;
+
+    @Value("${email.prompt.chunk-tokens:2000}")
+    private int chunkTokens;
+
+    @Value("${email.prompt.map-parallelism:4}")
+    private int mapParallelism;
+
+    private ExecutorService mapPool;
+
+    @PostConstruct
+    public void init() {
+        this.mapPool = Executors.newFixedThreadPool(mapParallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        mapPool.shutdownNow();
+    }
+
+    // ✅ Local estimate, no tokenizer call: word pieces of ~6 chars, 1 token per symbol and per
+    // non-ASCII char. Errs slightly high for English, which is the safe side for a budget.
+    public static int estimateTokens(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                wordLength++;
+                continue;
+            }
+            tokens += (wordLength + 5) / 6;
+            wordLength = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + (wordLength + 5) / 6;
+    }
+
+    // ✅ Fail fast: 413 instead of a slow provider call that truncates or errors
+    public int enforceLimit(String operation, String input) {
+        int tokens = estimateTokens(input);
+        if (tokens > maxInputTokens) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    operation + " input is ~" + tokens + " tokens; the limit is " + maxInputTokens);
+        }
+        return tokens;
+    }
+
+    // Returns text unchanged if it fits budgetTokens, otherwise map-condensed notes that fit
+    public String fitToBudget(String text, int budgetTokens, Function<String, String> condenseChunk) {
+        int budget = Math.max(budgetTokens - PROMPT_OVERHEAD_TOKENS, chunkTokens / 4);
+        String current = text;
+        for (int round = 0; round < MAX_REDUCE_ROUNDS && estimateTokens(current) > budget; round++) {
+            List<String> chunks = chunk(current, chunkTokens);
+            System.out.println("🧩 Map step: " + chunks.size() + " chunks (~" + estimateTokens(current)
+                    + " tokens, budget " + budget + ")");
+            current = mapChunks(chunks, condenseChunk);
+        }
+        return estimateTokens(current) > budget ? truncate(current, budget) : current;
+    }
+
+    // Greedy packing of paragraphs; a paragraph larger than a chunk is split on lines, then hard
+    public List<String> chunk(String text, int maxTokens) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentTokens = 0;
+        for (String paragraph : text.split("\\n\\s*\\n")) {
+            for (String piece : splitOversized(paragraph.strip(), maxTokens)) {
+                int tokens = estimateTokens(piece);
+                if (currentTokens + tokens > maxTokens && current.length() > 0) {
+                    chunks.add(current.toString());
+                    current.setLength(0);
+                    currentTokens = 0;
+                }
+                if (current.length() > 0) {
+                    current.append("\n\n");
+                }
+                current.append(piece);
+                currentTokens += tokens;
+            }
+        }
+        if (current.length() > 0) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    private List<String> splitOversized(String paragraph, int maxTokens) {
+        if (estimateTokens(paragraph) <= maxTokens) {
+            return List.of(paragraph);
+        }
+        List<String> pieces = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentTokens = 0;  // running count: the trailing space ends a word, so estimates add up
+        for (String line : paragraph.split("(?<=[.!?])\\s+|\\n")) {
+            int lineTokens = estimateTokens(line + ' ');
+            if (currentTokens + lineTokens > maxTokens && current.length() > 0) {
+                pieces.add(current.toString());
+                current.setLength(0);
+                currentTokens = 0;
+            }
+            current.append(line).append(' ');
+            currentTokens += lineTokens;
+            while (currentTokens > maxTokens) {
+                // A single sentence over the limit: cut by characters (~4 per token)
+                int cut = Math.min(current.length(), maxTokens * 4);
+                pieces.add(current.substring(0, cut));
+                current.delete(0, cut);
+                currentTokens = estimateTokens(current.toString());
+            }
+        }
+        if (!current.isEmpty()) {
+            pieces.add(current.toString().strip());
+        }
+        return pieces;
+    }
+
+    private String mapChunks(List<String> chunks, Function<String, String> condenseChunk) {
+        List<CompletableFuture<String>> notes = new ArrayList<>(chunks.size());
+        String username = AiCallContext.username();  // map calls are billed to the caller
+        RequestDeadline deadline = RequestDeadline.current();  // ... and end with the caller's request
+        for (int i = 0; i < chunks.size(); i++) {
+            String header = "[Part " + (i + 1) + " of " + chunks.size() + "]\n";
+            String chunk = chunks.get(i);
+            notes.add(CompletableFuture.supplyAsync(() -> {
+                try (AiCallContext.Scope ignored = AiCallContext.open(username, null);
+                     RequestDeadline.Scope ignoredDeadline = deadline != null ? deadline.open() : () -> { }) {
+                    return header + condenseChunk.apply(chunk);
+                }
+            }, mapPool));
+        }
+        StringBuilder joined = new StringBuilder();
+        for (CompletableFuture<String> note : notes) {
+            try {
+                joined.append(note.join()).append("\n\n");
+            } catch (CompletionException e) {
+                // A failed part fails the whole map step, with the part's own error (429, 502, deadline)
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return joined.toString().strip();
+    }
+
+    private static String truncate(String text, int budgetTokens) {
+        int chars = Math.min(text.length(), budgetTokens * 4);
+        while (chars > 0 && estimateTokens(text.substring(0, chars)) > budgetTokens) {
+            chars -= Math.max(1, chars / 10);
+        }
+        return text.substring(0, chars);
+    }
+}
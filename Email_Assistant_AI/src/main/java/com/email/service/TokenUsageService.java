@@ -0,0 +1,161 @@
+package com.email.service;
+
+import com.email.ai.TokenUsage;
+import com.email.dto.OperationUsage;
+import com.email.dto.PromptVersion;
+import com.email.dto.UsageReport;
+import com.email.dto.UserUsage;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Token accounting from provider usage metadata. Each call adds to an in-memory rollup keyed
+// by day/user/operation/provider/prompt version (plus Prometheus counters without the user
+// tag); the rollup is upserted into token_usage_daily on a timer, so the hot path never
+// touches the database.
+@Service
+@RequiredArgsConstructor
+public class TokenUsageService {
+
+    private static final String UPSERT = """
+            INSERT INTO token_usage_daily (usage_date, username, operation, provider, prompt_version,
+                                           requests, prompt_tokens, completion_tokens, call_millis)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE requests = requests + VALUES(requests),
+                                    prompt_tokens = prompt_tokens + VALUES(prompt_tokens),
+                                    completion_tokens = completion_tokens + VALUES(completion_tokens),
+                                    call_millis = call_millis + VALUES(call_millis)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry registry;
+    private final Environment environment;
+    private final TransactionTemplate transactionTemplate;
+
+    private record Key(LocalDate day, String username, String operation, String provider, String promptVersion) {}
+
+    private record Totals(long requests, long promptTokens, long completionTokens, long callNanos) {
+        Totals plus(Totals other) {
+            return new Totals(requests + other.requests, promptTokens + other.promptTokens,
+                    completionTokens + other.completionTokens, callNanos + other.callNanos);
+        }
+    }
+
+    private final Map<Key, Totals> pending = new ConcurrentHashMap<>();
+
+    public void record(String provider, String operation, TokenUsage usage, long callNanos) {
+        PromptVersion version = AiCallContext.promptVersion();
+        String promptVersion = version != null ? version.name() : "NONE";
+        Key key = new Key(LocalDate.now(), AiCallContext.username(), operation, provider, promptVersion);
+        pending.merge(key, new Totals(1, usage.promptTokens(), usage.completionTokens(), callNanos), Totals::plus);
+
+        registry.counter("email.tokens", "provider", provider, "operation", operation,
+                "prompt_version", promptVersion, "type", "prompt").increment(usage.promptTokens());
+        registry.counter("email.tokens", "provider", provider, "operation", operation,
+                "prompt_version", promptVersion, "type", "completion").increment(usage.completionTokens());
+    }
+
+    // ✅ remove() per key is atomic with merge(), so nothing recorded during a flush is lost.
+    // The batch is one transaction: if it fails nothing was written, and the taken totals are
+    // merged back into pending for the next flush instead of being dropped.
+    @Scheduled(fixedDelayString = "${email.usage.flush-interval-ms:30000}")
+    public void flush() {
+        Map<Key, Totals> taken = new HashMap<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (Key key : pending.keySet()) {
+            Totals totals = pending.remove(key);
+            if (totals != null) {
+                taken.put(key, totals);
+                rows.add(new Object[]{Date.valueOf(key.day()), key.username(), key.operation(), key.provider(),
+                        key.promptVersion(), totals.requests(), totals.promptTokens(), totals.completionTokens(),
+                        TimeUnit.NANOSECONDS.toMillis(totals.callNanos())});
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT, rows));
+        } catch (Exception e) {
+            taken.forEach((key, totals) -> pending.merge(key, totals, Totals::plus));
+            System.out.println("❌ Token usage flush failed, " + rows.size() + " rows kept for the next flush: "
+                    + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public UsageReport report(int days) {
+        flush();
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusDays(Math.max(days, 1) - 1L);
+
+        List<OperationUsage> byOperation = jdbcTemplate.query("""
+                SELECT operation, provider, prompt_version, SUM(requests) AS requests,
+                       SUM(prompt_tokens) AS prompt_tokens, SUM(completion_tokens) AS completion_tokens,
+                       SUM(call_millis) AS call_millis
+                FROM token_usage_daily
+                WHERE usage_date BETWEEN ? AND ?
+                GROUP BY operation, provider, prompt_version
+                """, (rs, i) -> {
+            long prompt = rs.getLong("prompt_tokens");
+            long completion = rs.getLong("completion_tokens");
+            long callMillis = rs.getLong("call_millis");
+            String provider = rs.getString("provider");
+            return new OperationUsage(rs.getString("operation"), provider, rs.getString("prompt_version"),
+                    rs.getLong("requests"), prompt, completion, prompt + completion,
+                    callMillis > 0 ? completion * 1000.0 / callMillis : 0.0,
+                    cost(provider, prompt, completion));
+        }, Date.valueOf(from), Date.valueOf(to));
+        byOperation.sort(Comparator.comparingLong(OperationUsage::totalTokens).reversed());
+
+        Map<String, UserUsage> byUser = new LinkedHashMap<>();
+        jdbcTemplate.query("""
+                SELECT username, provider, SUM(requests) AS requests,
+                       SUM(prompt_tokens) AS prompt_tokens, SUM(completion_tokens) AS completion_tokens
+                FROM token_usage_daily
+                WHERE usage_date BETWEEN ? AND ?
+                GROUP BY username, provider
+                """, rs -> {
+            long prompt = rs.getLong("prompt_tokens");
+            long completion = rs.getLong("completion_tokens");
+            UserUsage row = new UserUsage(rs.getString("username"), rs.getLong("requests"),
+                    prompt + completion, cost(rs.getString("provider"), prompt, completion));
+            byUser.merge(row.username(), row, (a, b) -> new UserUsage(a.username(), a.requests() + b.requests(),
+                    a.totalTokens() + b.totalTokens(), a.estimatedCost() + b.estimatedCost()));
+        }, Date.valueOf(from), Date.valueOf(to));
+        List<UserUsage> users = new ArrayList<>(byUser.values());
+        users.sort(Comparator.comparingLong(UserUsage::totalTokens).reversed());
+
+        long totalTokens = byOperation.stream().mapToLong(OperationUsage::totalTokens).sum();
+        double totalCost = byOperation.stream().mapToDouble(OperationUsage::estimatedCost).sum();
+        return new UsageReport(from, to, totalTokens, totalCost, byOperation, users);
+    }
+
+    // Prices are per million tokens, e.g. email.usage.price.gemini.prompt-per-million=0.10
+    private double cost(String provider, long promptTokens, long completionTokens) {
+        String prefix = "email.usage.price." + provider.toLowerCase() + ".";
+        double promptPrice = environment.getProperty(prefix + "prompt-per-million", Double.class, 0.0);
+        double completionPrice = environment.getProperty(prefix + "completion-per-million", Double.class, 0.0);
+        return (promptTokens * promptPrice + completionTokens * completionPrice) / 1_000_000.0;
+    }
+}
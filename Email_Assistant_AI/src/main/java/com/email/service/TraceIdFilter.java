@@ -0,0 +1,53 @@
+package com.email.service;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Runs just inside Boot's server observation filter, so the request span already exists:
+// its trace id goes out as X-Trace-Id (set before the body is written, so 429/401 responses
+// carry it too) and into one access line per request that ties the println logs to a trace.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+@RequiredArgsConstructor
+public class TraceIdFilter extends OncePerRequestFilter {
+
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    private final Tracer tracer;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Span span = tracer.currentSpan();
+        if (span == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String traceId = span.context().traceId();
+        response.setHeader(TRACE_ID_HEADER, traceId);
+
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // Async handlers (WebAsyncTask, SSE): log when the response is done, not when the thread hands off
+            AsyncCompletion.whenComplete(request, () -> {
+                if (!request.getRequestURI().startsWith("/actuator/")) {
+                    System.out.println("🔎 trace=" + traceId + " " + request.getMethod() + " " + request.getRequestURI()
+                            + " → " + response.getStatus() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+            });
+        }
+    }
+}
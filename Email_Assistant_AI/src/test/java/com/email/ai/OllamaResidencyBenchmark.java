@@ -0,0 +1,186 @@
+package com.email.ai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Cold vs. warm latency of OllamaEmailProvider against a local Ollama stand-in.
+// Not a unit test (no @Test, not picked up by surefire); run it with
+//   mvn test-compile exec:java -Dexec.mainClass=com.email.ai.OllamaResidencyBenchmark -Dexec.classpathScope=test
+// or straight from the IDE. The stand-in charges what a CPU-bound local model charges:
+// a model load when it is not resident, and prompt-eval time per token not covered by a context.
+public class OllamaResidencyBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        FakeOllama ollama = FakeOllama.start();
+        try {
+            String preamble = longPreamble();
+            String body = """
+                    Tone: formal
+
+                    Original email:
+                    Hi, I wanted to follow up on the invoice we discussed last week. Could you confirm
+                    whether the revised amount has been approved, and when we can expect payment?
+                    Thanks, Jordan
+                    """;
+
+            System.out.printf("%-44s %10s%n", "scenario", "avg ms");
+
+            // keep_alive 0: the model is unloaded after every request → every call is cold
+            OllamaEmailProvider unloading = provider(ollama, "0");
+            report("keep_alive=0 (cold every call)", RUNS, () -> unloading.generateReply(preamble + body));
+
+            // keep_alive 30m: first call loads, the rest hit a resident model
+            OllamaEmailProvider resident = provider(ollama, "30m");
+            report("first call after startup (cold load)", 1, () -> resident.generateReply(preamble + body));
+            report("resident model, full prompt each call", RUNS, () -> resident.generateReply(preamble + body));
+
+            // Preamble evaluated once, its context re-sent; only the body is evaluated per call
+            resident.generateReply(preamble, body);
+            report("resident model + cached preamble context", RUNS, () -> resident.generateReply(preamble, body));
+        } finally {
+            ollama.stop();
+        }
+    }
+
+    private static OllamaEmailProvider provider(FakeOllama ollama, String keepAlive) {
+        OllamaEmailProvider provider = new OllamaEmailProvider(WebClient.builder());
+        ReflectionTestUtils.setField(provider, "ollamaApiUrl", ollama.url());
+        ReflectionTestUtils.setField(provider, "modelName", "stand-in");
+        ReflectionTestUtils.setField(provider, "keepAlive", keepAlive);
+        ReflectionTestUtils.setField(provider, "residencyEnabled", false);  // no background warm-up here
+        ReflectionTestUtils.setField(provider, "contextCacheSize", 16);
+        ReflectionTestUtils.setField(provider, "timeout", Duration.ofSeconds(60));
+        provider.init();
+        return provider;
+    }
+
+    private static void report(String scenario, int runs, Runnable call) {
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            call.run();
+            total += System.nanoTime() - start;
+        }
+        System.out.printf("%-44s %10.1f%n", scenario, total / 1e6 / runs);
+    }
+
+    // A house-style preamble of the size real deployments use (a few hundred tokens)
+    private static String longPreamble() {
+        StringBuilder preamble = new StringBuilder("""
+                You are an enterprise-grade email assistant.
+
+                Objectives:
+                - Be concise but complete
+                - Use respectful, professional language
+                - Make next steps explicit if appropriate
+
+                House style:
+                """);
+        for (int i = 1; i <= 30; i++) {
+            preamble.append("- Rule ").append(i)
+                    .append(": keep sentences short, avoid jargon, never promise dates you cannot keep\n");
+        }
+        return preamble.append('\n').toString();
+    }
+
+    // Minimal /api/generate: simulated load, prompt eval and generation costs, context tokens
+    private static final class FakeOllama {
+        private static final long LOAD_MS = 1500;
+        private static final double PROMPT_EVAL_MS_PER_TOKEN = 2.0;
+        private static final long GENERATE_MS = 60;
+
+        private final HttpServer server;
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final Set<List<Integer>> knownContexts = ConcurrentHashMap.newKeySet();
+        private volatile long residentUntil = 0;
+
+        private FakeOllama(HttpServer server) {
+            this.server = server;
+        }
+
+        static FakeOllama start() throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            FakeOllama fake = new FakeOllama(server);
+            server.createContext("/api/generate", fake::handle);
+            server.start();
+            return fake;
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate";
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private synchronized void handle(HttpExchange exchange) throws IOException {
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            long now = System.currentTimeMillis();
+
+            long loadMs = now < residentUntil ? 0 : LOAD_MS;
+
+            List<Integer> context = new ArrayList<>();
+            request.path("context").forEach(token -> context.add(token.asInt()));
+            if (!context.isEmpty() && !knownContexts.contains(context)) {
+                context.clear();  // unknown context: nothing cached, treat as a fresh prompt
+            }
+            String prompt = request.path("prompt").asText("");
+            String[] words = prompt.isBlank() ? new String[0] : prompt.trim().split("\\s+");
+            long evalMs = Math.round(words.length * PROMPT_EVAL_MS_PER_TOKEN);
+            boolean generate = !prompt.isBlank() && request.path("options").path("num_predict").asInt(-1) != 0;
+
+            sleep(loadMs + evalMs + (generate ? GENERATE_MS : 0));
+
+            List<Integer> newContext = new ArrayList<>(context);
+            for (String word : words) {
+                newContext.add(word.hashCode());
+            }
+            knownContexts.add(List.copyOf(newContext));
+
+            String keepAlive = request.path("keep_alive").asText("5m");
+            residentUntil = "0".equals(keepAlive) ? 0 : System.currentTimeMillis() + 30 * 60_000L;
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("model", request.path("model").asText());
+            response.put("response", generate ? "Thank you for following up. The revised amount is approved." : "");
+            response.put("done", true);
+            response.put("context", newContext);
+            response.put("load_duration", loadMs * 1_000_000);
+            response.put("prompt_eval_count", words.length);
+
+            byte[] bytes = mapper.writeValueAsString(response).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private static void sleep(long ms) {
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
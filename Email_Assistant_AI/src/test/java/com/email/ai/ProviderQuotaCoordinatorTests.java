@@ -0,0 +1,213 @@
+package com.email.ai;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The lease and return scripts run against a real (embedded) Redis
+class ProviderQuotaCoordinatorTests {
+
+    private static final String KEY = "test-api-key";
+
+    private static RedisServer redisServer;
+    private static int redisPort;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redis;
+    private MeterRegistry registry;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redisPort = freePort();
+        redisServer = new RedisServer(redisPort);
+        redisServer.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = connectionFactory(redisPort);
+        redis = new StringRedisTemplate(connectionFactory);
+        redis.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void defaultLimitsStillLeaseInBatches() throws InterruptedException {
+        // 15 RPM with headroom 0.1: a burst of floor(1.5) = 1 would make every call a round trip
+        ProviderQuotaCoordinator coordinator = coordinator(redis, 15, 0);
+
+        assertTrue(coordinator.acquire("GEMINI", KEY, 100).isPresent());
+        assertTrue(coordinator.acquire("GEMINI", KEY, 100).isPresent());
+
+        assertEquals(1, leases("granted"));
+    }
+
+    @Test
+    void concurrentCallersShareOneLeaseRoundTrip() throws Exception {
+        // lease-requests 2: the second caller waits for the first caller's lease instead of taking its own
+        ProviderQuotaCoordinator coordinator = coordinator(redis, 120, 0);
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = callers.submit(() -> {
+                go.await();
+                return coordinator.acquire("GEMINI", KEY, 100).isPresent();
+            });
+            Future<Boolean> second = callers.submit(() -> {
+                go.await();
+                return coordinator.acquire("GEMINI", KEY, 100).isPresent();
+            });
+            go.countDown();
+
+            assertTrue(first.get());
+            assertTrue(second.get());
+            assertEquals(1, leases("granted"));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void waitsForTheRefillOnceTheBurstIsSpent() throws InterruptedException {
+        // 120 RPM: burst 12, refill 108/min, so one request comes back every ~560 ms
+        ProviderQuotaCoordinator coordinator = coordinator(redis, 120, 0);
+        for (int i = 0; i < 12; i++) {
+            assertTrue(coordinator.acquire("GEMINI", KEY, 100).isPresent());
+        }
+        assertEquals(6, leases("granted"));
+
+        ReflectionTestUtils.setField(coordinator, "maxWaitMs", 100L);
+        assertTrue(coordinator.acquire("GEMINI", KEY, 100).isEmpty());
+
+        ReflectionTestUtils.setField(coordinator, "maxWaitMs", 5_000L);
+        long start = System.nanoTime();
+        assertTrue(coordinator.acquire("GEMINI", KEY, 100).isPresent());
+        long waitedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(waitedMs >= 200, "waited " + waitedMs + " ms");
+        assertTrue(leases("denied") >= 2);
+    }
+
+    @Test
+    void expiredLeaseGoesBackToTheBucket() throws InterruptedException {
+        ProviderQuotaCoordinator coordinator = coordinator(redis, 120, 0);
+        ReflectionTestUtils.setField(coordinator, "leaseTtlMs", 0L);
+
+        assertTrue(coordinator.acquire("GEMINI", KEY, 100).isPresent());  // leases 2, spends 1
+        assertEquals(10.0, requestsLeft(), 0.1);
+
+        coordinator.returnExpiredLeases();
+        assertEquals(11.0, requestsLeft(), 0.1);
+
+        coordinator.returnExpiredLeases();  // nothing left to return
+        assertEquals(11.0, requestsLeft(), 0.1);
+    }
+
+    @Test
+    void settleKeepsUnusedTokensForTheNextCall() throws InterruptedException {
+        // 20k TPM: token burst 2000; each lease asks for 1000 tokens
+        ProviderQuotaCoordinator coordinator = coordinator(redis, 120, 20_000);
+        ReflectionTestUtils.setField(coordinator, "leaseTokens", 1_000L);
+
+        ProviderQuotaCoordinator.Permit permit = coordinator.acquire("GEMINI", KEY, 1_000).orElseThrow();
+        permit.settle(new TokenUsage(150, 50));
+
+        // 800 of the 1000 leased tokens came back: the second call needs no new lease
+        assertTrue(coordinator.acquire("GEMINI", KEY, 800).isPresent());
+        assertEquals(1, leases("granted"));
+    }
+
+    @Test
+    void redisDownAllowsTheCall() throws InterruptedException, IOException {
+        LettuceConnectionFactory unreachable = connectionFactory(freePort());
+        try {
+            ProviderQuotaCoordinator coordinator = coordinator(new StringRedisTemplate(unreachable), 15, 0);
+
+            assertTrue(coordinator.acquire("GEMINI", KEY, 100).isPresent());
+            assertEquals(1, leases("error"));
+        } finally {
+            unreachable.destroy();
+        }
+    }
+
+    @Test
+    void providerWithoutLimitIsNotCoordinated() throws InterruptedException {
+        ProviderQuotaCoordinator coordinator = coordinator(redis, 15, 0);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(coordinator.acquire("OLLAMA", KEY, 100).isPresent());
+        }
+        assertEquals(0, leases("granted"));
+        assertTrue(redis.keys("quota:*").isEmpty());
+    }
+
+    private ProviderQuotaCoordinator coordinator(StringRedisTemplate template, int rpm, long tpm) {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("email.quota.gemini.requests-per-minute", String.valueOf(rpm))
+                .withProperty("email.quota.gemini.tokens-per-minute", String.valueOf(tpm));
+        ProviderQuotaCoordinator coordinator = new ProviderQuotaCoordinator(template, registry, environment);
+        ReflectionTestUtils.setField(coordinator, "enabled", true);
+        ReflectionTestUtils.setField(coordinator, "headroom", 0.1);
+        ReflectionTestUtils.setField(coordinator, "leaseRequests", 2);
+        ReflectionTestUtils.setField(coordinator, "leaseTokens", 20_000L);
+        ReflectionTestUtils.setField(coordinator, "leaseTtlMs", 5_000L);
+        ReflectionTestUtils.setField(coordinator, "maxWaitMs", 1_000L);
+        return coordinator;
+    }
+
+    private double leases(String outcome) {
+        return registry.counter("email.quota.leases", "provider", "GEMINI", "outcome", outcome).count();
+    }
+
+    private double requestsLeft() {
+        Set<String> keys = redis.keys("quota:gemini:*");
+        assertEquals(1, keys.size());
+        return Double.parseDouble((String) redis.opsForHash().get(keys.iterator().next(), "req"));
+    }
+
+    private static LettuceConnectionFactory connectionFactory(int port) {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        factory.afterPropertiesSet();
+        factory.start();
+        return factory;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
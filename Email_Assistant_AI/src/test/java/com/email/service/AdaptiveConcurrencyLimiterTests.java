@@ -0,0 +1,65 @@
+package com.email.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTests {
+
+    private static final long HEALTHY = TimeUnit.MILLISECONDS.toNanos(800);
+    private static final long DEGRADED = TimeUnit.SECONDS.toNanos(8);
+
+    private AdaptiveConcurrencyLimiter limiter() {
+        return new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), 20, 2, 150, 0.2, 1.5, 10, 600);
+    }
+
+    @Test
+    void growsWhileLatencyStaysAtBaseline() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < 500; i++) {
+            limiter.onSample(HEALTHY, limiter.limit());
+        }
+        assertTrue(limiter.limit() > 20, "limit should grow, was " + limiter.limit());
+    }
+
+    @Test
+    void shrinksWhenProviderSlowsDown() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < 300; i++) {
+            limiter.onSample(HEALTHY, limiter.limit());
+        }
+        int healthyLimit = limiter.limit();
+        for (int i = 0; i < 150; i++) {
+            limiter.onSample(DEGRADED, limiter.limit());
+        }
+        assertTrue(limiter.limit() < healthyLimit / 2,
+                "limit should drop from " + healthyLimit + ", was " + limiter.limit());
+        assertEquals(8, limiter.retryAfterSeconds());
+    }
+
+    @Test
+    void doesNotGrowWithoutDemand() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < 500; i++) {
+            limiter.onSample(HEALTHY, 1);
+        }
+        assertEquals(20, limiter.limit());
+    }
+
+    @Test
+    void shedsOnceTheLimitIsReached() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), 2, 1, 10, 0.2, 1.5, 10, 600);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire().orElseThrow();
+        assertTrue(limiter.tryAcquire().isPresent());
+        assertTrue(limiter.tryAcquire().isEmpty());
+
+        first.releaseWithoutSample();
+        first.releaseWithoutSample();  // double release must not free a second slot
+        assertTrue(limiter.tryAcquire().isPresent());
+        assertTrue(limiter.tryAcquire().isEmpty());
+    }
+}
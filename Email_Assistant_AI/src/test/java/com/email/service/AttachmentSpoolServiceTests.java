@@ -0,0 +1,25 @@
+package com.email.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AttachmentSpoolServiceTests {
+
+    @Test
+    void sanitizeKeepsOnlyTheLastPathSegment() {
+        assertEquals("report.pdf", AttachmentSpoolService.sanitize("report.pdf"));
+        assertEquals("passwd", AttachmentSpoolService.sanitize("../../etc/passwd"));
+        assertEquals("invoice_1.pdf", AttachmentSpoolService.sanitize("C:\\Users\\ann\\invoice 1.pdf"));
+    }
+
+    @Test
+    void sanitizeNeverFailsOnHostileNames() {
+        assertEquals("attachment", AttachmentSpoolService.sanitize(null));
+        assertEquals("attachment", AttachmentSpoolService.sanitize("/"));
+        assertEquals("attachment", AttachmentSpoolService.sanitize("dir\\"));
+        assertEquals("attachment", AttachmentSpoolService.sanitize(".."));
+        assertEquals("a_b.txt", AttachmentSpoolService.sanitize("a\0b.txt"));
+        assertEquals("bashrc", AttachmentSpoolService.sanitize(".bashrc"));
+    }
+}
@@ -0,0 +1,201 @@
+package com.email.service;
+
+import com.email.dto.BulkSendProgress;
+import com.email.dto.BulkSendRequest;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Mail merge against an in-process GreenMail SMTP server (localhost:3025)
+class BulkMailServiceTests {
+
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final AtomicInteger borrowed = new AtomicInteger();
+    private final List<BulkSendProgress> progress = Collections.synchronizedList(new ArrayList<>());
+    private BulkMailService bulkMailService;
+
+    @BeforeEach
+    void setUp() {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(ServerSetupTest.SMTP.getPort());
+        mailSender.setProtocol("smtp");
+
+        // Counts borrows: every borrow is one SMTP session's transport
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender) {
+            @Override
+            public Transport borrow() throws MessagingException, InterruptedException {
+                borrowed.incrementAndGet();
+                return super.borrow();
+            }
+        };
+        ReflectionTestUtils.setField(pool, "maxConnections", 4);
+        ReflectionTestUtils.setField(pool, "maxIdleMs", 60_000L);
+        ReflectionTestUtils.setField(pool, "borrowTimeoutMs", 5_000L);
+        pool.init();
+
+        EmailSender emailSender = new EmailSender();
+        ReflectionTestUtils.setField(emailSender, "mailSender", mailSender);
+        ReflectionTestUtils.setField(emailSender, "transportPool", pool);
+        ReflectionTestUtils.setField(emailSender, "fromAddress", "noreply@example.com");
+
+        bulkMailService = new BulkMailService(emailSender, pool);
+        ReflectionTestUtils.setField(bulkMailService, "connections", 2);
+        ReflectionTestUtils.setField(bulkMailService, "messagesPerConnection", 3);
+        ReflectionTestUtils.setField(bulkMailService, "maxMessagesPerSecond", 20.0);
+        ReflectionTestUtils.setField(bulkMailService, "maxRecipients", 100);
+        ReflectionTestUtils.setField(bulkMailService, "asyncTimeout", Duration.ofMinutes(15));
+    }
+
+    @Test
+    void sendsRenderedMessagesPacedOverReusedSessions() throws Exception {
+        BulkSendRequest request = request(10);
+
+        long start = System.nanoTime();
+        bulkMailService.send(request, progress::add);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // 10 messages at 20/s: the first goes at once, the other nine one slot (50 ms) apart
+        assertTrue(elapsedMs >= 400, "sent 10 messages in " + elapsedMs + " ms");
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(10, received.length);
+        Set<String> subjects = Arrays.stream(received).map(BulkMailServiceTests::subject).collect(Collectors.toSet());
+        assertTrue(subjects.contains("Order 7 for user7"), subjects.toString());
+        assertTrue(((String) received[0].getContent()).startsWith("Hi user"));
+
+        // 3 messages per transport, 2 sessions: ceil(a/3) + ceil(b/3) = 4 for any split a + b = 10
+        assertEquals(4, borrowed.get());
+
+        List<BulkSendProgress> sent = progress.stream().filter(p -> "SENT".equals(p.status())).toList();
+        assertEquals(10, sent.size());
+        assertEquals(10, sent.stream().map(BulkSendProgress::index).distinct().count());
+        assertEquals(10, sent.stream().map(BulkSendProgress::sent).distinct().count());  // running count, no repeats
+        BulkSendProgress done = progress.get(progress.size() - 1);
+        assertEquals("DONE", done.status());
+        assertEquals(10, done.sent());
+        assertEquals(0, done.failed());
+        assertEquals(10, done.total());
+    }
+
+    @Test
+    void badRecipientIsReportedAndTheRestStillGoOut() {
+        BulkSendRequest request = request(3);
+        request.getRecipients().get(1).setTo("<unterminated@example.com");
+
+        bulkMailService.send(request, progress::add);
+
+        assertEquals(2, greenMail.getReceivedMessages().length);
+        List<BulkSendProgress> failed = progress.stream().filter(p -> "FAILED".equals(p.status())).toList();
+        assertEquals(1, failed.size());
+        assertEquals(1, failed.get(0).index());
+        assertTrue(failed.get(0).error() != null && !failed.get(0).error().isBlank());
+        BulkSendProgress done = progress.get(progress.size() - 1);
+        assertEquals("DONE", done.status());
+        assertEquals(2, done.sent());
+        assertEquals(1, done.failed());
+    }
+
+    @Test
+    void rejectsSendsThatCannotFinishBeforeTheRequestTimesOut() {
+        // 9 s budget (90% of 10 s) at 5/s: the first message plus 45 paced ones fit
+        ReflectionTestUtils.setField(bulkMailService, "asyncTimeout", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(bulkMailService, "maxMessagesPerSecond", 5.0);
+
+        assertDoesNotThrow(() -> bulkMailService.validate(request(46)));
+        assertThrows(IllegalArgumentException.class, () -> bulkMailService.validate(request(47)));
+    }
+
+    @Test
+    void clientGoneStopsTheRemainingSends() {
+        BulkSendRequest request = request(10);
+
+        bulkMailService.send(request, p -> {
+            progress.add(p);
+            throw new IllegalStateException("client gone");
+        });
+
+        // Both sessions may have a message in flight when the first write fails
+        assertTrue(greenMail.getReceivedMessages().length <= 2, greenMail.getReceivedMessages().length + " sent");
+        assertTrue(progress.size() <= 2);
+        assertTrue(progress.stream().noneMatch(p -> "DONE".equals(p.status())));
+    }
+
+    @Test
+    void interruptStopsTheSend() throws Exception {
+        ReflectionTestUtils.setField(bulkMailService, "maxMessagesPerSecond", 2.0);
+        Thread sender = new Thread(() -> bulkMailService.send(request(20), progress::add));
+        sender.start();
+        Thread.sleep(700);
+
+        sender.interrupt();
+        sender.join(2_000);
+
+        assertTrue(!sender.isAlive());
+        Thread.sleep(1_000);  // no session keeps sending after the interrupt
+        assertTrue(greenMail.getReceivedMessages().length < 5, greenMail.getReceivedMessages().length + " sent");
+        assertTrue(progress.stream().noneMatch(p -> "DONE".equals(p.status())));
+    }
+
+    @Test
+    void renderReplacesKnownPlaceholdersAndBlanksUnknownOnes() {
+        Map<String, String> variables = Map.of("name", "Ann", "orderId", "42");
+
+        assertEquals("Hi Ann, order 42 shipped.", BulkMailService.render("Hi {{name}}, order {{ orderId }} shipped.", variables));
+        assertEquals("Hi , welcome", BulkMailService.render("Hi {{missing}}, welcome", variables));
+        assertEquals("{{name}}", BulkMailService.render("{{name}}", Map.of("name", "{{name}}")));  // values are not re-expanded
+        assertEquals("Unclosed {{name", BulkMailService.render("Unclosed {{name", variables));
+        assertEquals("No placeholders", BulkMailService.render("No placeholders", null));
+        assertEquals("Hi ", BulkMailService.render("Hi {{name}}", null));
+        assertEquals("", BulkMailService.render(null, variables));
+    }
+
+    private static BulkSendRequest request(int recipients) {
+        BulkSendRequest request = new BulkSendRequest();
+        request.setSubjectTemplate("Order {{orderId}} for {{name}}");
+        request.setBodyTemplate("Hi {{name}}, your order {{orderId}} has shipped.");
+        for (int i = 0; i < recipients; i++) {
+            BulkSendRequest.Recipient recipient = new BulkSendRequest.Recipient();
+            recipient.setTo("user" + i + "@example.com");
+            Map<String, String> variables = new HashMap<>();
+            variables.put("name", "user" + i);
+            variables.put("orderId", String.valueOf(i));
+            recipient.setVariables(variables);
+            request.getRecipients().add(recipient);
+        }
+        return request;
+    }
+
+    private static String subject(MimeMessage message) {
+        try {
+            return message.getSubject();
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
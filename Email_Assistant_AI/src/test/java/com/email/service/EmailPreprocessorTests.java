@@ -0,0 +1,146 @@
+package com.email.service;
+
+import com.email.dto.PreprocessResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailPreprocessorTests {
+
+    private final EmailPreprocessor preprocessor = new EmailPreprocessor();
+
+    @Test
+    void cutsQuotedReplyAfterReplyHeader() {
+        PreprocessResult result = preprocessor.strip("""
+                Thanks, Thursday works for me.
+
+                On Mon, 3 Jun 2024 at 10:00, Jane <jane@example.com> wrote:
+                > Can we meet on Thursday?
+                > Jane
+                """);
+
+        assertEquals("Thanks, Thursday works for me.", result.text());
+        assertEquals(List.of("QUOTED_HISTORY"), result.removedSections());
+    }
+
+    @Test
+    void cutsReplyHeaderWrappedOntoTwoLines() {
+        PreprocessResult result = preprocessor.strip("""
+                Sounds good.
+
+                On Mon, 3 Jun 2024 at 10:00, Jane Doe <jane@example.com>
+                wrote:
+                Can we meet on Thursday?
+                """);
+
+        assertEquals("Sounds good.", result.text());
+    }
+
+    @Test
+    void cutsOutlookHeaderBlock() {
+        PreprocessResult result = preprocessor.strip("""
+                Please see the updated invoice attached.
+
+                ________________________________
+                From: Billing <billing@example.com>
+                Sent: Monday, June 3, 2024 10:00 AM
+                Subject: Invoice 1042
+                The old invoice text.
+                """);
+
+        assertEquals("Please see the updated invoice attached.", result.text());
+        assertEquals(List.of("QUOTED_HISTORY"), result.removedSections());
+    }
+
+    @Test
+    void cutsSignatureAndMobileFooter() {
+        PreprocessResult result = preprocessor.strip("""
+                Shipping today.
+                Sent from my iPhone
+
+                --\s
+                Bob Smith
+                Head of Logistics
+                """);
+
+        assertEquals("Shipping today.", result.text());
+        assertTrue(result.removedSections().contains("SIGNATURE"));
+        assertTrue(result.removedSections().contains("MOBILE_FOOTER"));
+    }
+
+    @Test
+    void cutsDisclaimerInTheTrailingBlock() {
+        PreprocessResult result = preprocessor.strip("""
+                Hi team,
+
+                The release is moved to Friday.
+
+                Regards,
+                Ann
+
+                CONFIDENTIALITY NOTICE: This email and any attachments are for the sole use of the intended recipient.
+                Any unauthorized review or distribution is prohibited.
+                """);
+
+        assertEquals("Hi team,\n\nThe release is moved to Friday.\n\nRegards,\nAnn", result.text());
+        assertEquals(List.of("DISCLAIMER"), result.removedSections());
+    }
+
+    @Test
+    void cutsDisclaimerBeforeQuotedHistory() {
+        PreprocessResult result = preprocessor.strip("""
+                Approved.
+
+                Disclaimer: this message may contain privileged information.
+
+                On Tue, 4 Jun 2024 at 09:12, Raj <raj@example.com> wrote:
+                > Can you approve the budget?
+                """);
+
+        assertEquals("Approved.", result.text());
+        assertTrue(result.removedSections().contains("DISCLAIMER"));
+    }
+
+    @Test
+    void keepsDisclaimerWordsInTheBody() {
+        String email = """
+                Hi Legal,
+
+                To unsubscribe customers from the newsletter, which form do we use?
+                Also, the contract says this message is confidential by default - is that right?
+
+                Our current process:
+                1. Support receives the request
+                2. Support forwards it to marketing
+                3. Marketing removes the address
+                4. Marketing confirms by email
+                5. Support closes the ticket
+                6. The customer gets a survey
+                7. The survey results go to the weekly report
+
+                Thanks,
+                Ann
+                """;
+
+        PreprocessResult result = preprocessor.strip(email);
+
+        assertEquals(email.strip(), result.text());
+        assertTrue(result.removedSections().isEmpty());
+    }
+
+    @Test
+    void keepsDisclaimerPhraseInsideAParagraph() {
+        String email = """
+                Quick question about the template:
+                if you are not the intended recipient, should the auto-reply say so?
+                Thanks
+                """;
+
+        PreprocessResult result = preprocessor.strip(email);
+
+        assertEquals(email.strip(), result.text());
+    }
+}
@@ -0,0 +1,189 @@
+package com.email.service;
+
+import com.email.ai.RequestDeadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FairLlmSchedulerTests {
+
+    // 4000 chars ≈ 1000 tokens = one quantum, so each round-robin visit grants one call
+    private static final int PROMPT_CHARS = 4000;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> served = Collections.synchronizedList(new ArrayList<>());
+
+    private FairLlmScheduler scheduler(int maxQueuePerUser) {
+        MockEnvironment environment = new MockEnvironment().withProperty("email.scheduler.gemini.max-concurrency", "1");
+        FairLlmScheduler scheduler = new FairLlmScheduler(
+                new EmailMetrics(registry, ObservationRegistry.NOOP, null), registry, environment);
+        ReflectionTestUtils.setField(scheduler, "maxQueuePerUser", maxQueuePerUser);
+        ReflectionTestUtils.setField(scheduler, "maxWaitMs", 10_000L);
+        ReflectionTestUtils.setField(scheduler, "quantumTokens", 1000L);
+        ReflectionTestUtils.setField(scheduler, "defaultWeight", 1.0);
+        return scheduler;
+    }
+
+    @Test
+    void quietUserIsServedBeforeTheNoisyBacklog() throws Exception {
+        FairLlmScheduler scheduler = scheduler(20);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch releaseSlot = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        // noisy holds the only slot, then queues five more calls
+        threads.add(call(scheduler, "noisy", () -> {
+            holding.countDown();
+            await(releaseSlot);
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            threads.add(call(scheduler, "noisy", () -> {}));
+            awaitQueued(i + 1);
+        }
+        threads.add(call(scheduler, "quiet", () -> {}));
+        awaitQueued(6);
+
+        releaseSlot.countDown();
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+
+        // first entry is the call that held the slot; quiet waits for at most one noisy call
+        assertEquals(7, served.size());
+        assertTrue(served.indexOf("quiet") <= 2, "served order: " + served);
+    }
+
+    @Test
+    void rejectsBeyondPerUserQueueDepth() throws Exception {
+        FairLlmScheduler scheduler = scheduler(1);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch releaseSlot = new CountDownLatch(1);
+        Thread holder = call(scheduler, "noisy", () -> {
+            holding.countDown();
+            await(releaseSlot);
+        });
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+        Thread queuedCall = call(scheduler, "noisy", () -> {});
+        awaitQueued(1);
+
+        String rejected;
+        try (AiCallContext.Scope ignored = AiCallContext.open("noisy", null)) {
+            rejected = scheduler.call("GEMINI", "quality", PROMPT_CHARS, () -> "reply");
+        }
+        releaseSlot.countDown();
+        holder.join(10_000);
+        queuedCall.join(10_000);
+
+        assertTrue(rejected.startsWith("Rate limited"), rejected);
+        assertEquals(1.0, registry.get("email.scheduler.rejected").tag("reason", "queue_full").counter().count());
+    }
+
+    @Test
+    void queuedCallWaitsNoLongerThanTheRequestDeadline() throws Exception {
+        FairLlmScheduler scheduler = scheduler(20);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch releaseSlot = new CountDownLatch(1);
+        Thread holder = call(scheduler, "noisy", () -> {
+            holding.countDown();
+            await(releaseSlot);
+        });
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        String rejected;
+        long start = System.nanoTime();
+        try (AiCallContext.Scope ignored = AiCallContext.open("quiet", null);
+             RequestDeadline.Scope ignoredDeadline = RequestDeadline.after(Duration.ofMillis(200)).open()) {
+            rejected = scheduler.call("GEMINI", "quality", PROMPT_CHARS, () -> "reply");
+        }
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        releaseSlot.countDown();
+        holder.join(10_000);
+
+        // max-wait is 10 s; the 200 ms deadline is what ended the wait
+        assertTrue(rejected.startsWith("Rate limited"), rejected);
+        assertTrue(waitedMs < 5_000, "waited " + waitedMs + " ms");
+        assertEquals(1.0, registry.get("email.scheduler.rejected").tag("reason", "timeout").counter().count());
+        assertEquals(0.0, registry.get("email.scheduler.queued").gauge().value());
+
+        // The expired waiter left the queue and holds no slot: the only slot is free again
+        assertEquals("reply", callWithin(scheduler, 2_000));
+    }
+
+    @Test
+    void requestAlreadyOverNeverQueuesOrTakesASlot() throws Exception {
+        FairLlmScheduler scheduler = scheduler(20);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch releaseSlot = new CountDownLatch(1);
+        Thread holder = call(scheduler, "noisy", () -> {
+            holding.countDown();
+            await(releaseSlot);
+        });
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        RequestDeadline cancelled = RequestDeadline.after(Duration.ofSeconds(30));
+        cancelled.cancel("client disconnected");
+        try (AiCallContext.Scope ignored = AiCallContext.open("quiet", null);
+             RequestDeadline.Scope ignoredDeadline = cancelled.open()) {
+            assertThrows(RequestDeadline.ExceededException.class,
+                    () -> scheduler.call("GEMINI", "quality", PROMPT_CHARS, () -> "reply"));
+        }
+        assertEquals(0.0, registry.get("email.scheduler.queued").gauge().value());
+        releaseSlot.countDown();
+        holder.join(10_000);
+
+        assertEquals("reply", callWithin(scheduler, 2_000));
+    }
+
+    // A leaked slot would make this wait out max-wait (10 s) and come back rate limited
+    private static String callWithin(FairLlmScheduler scheduler, long ms) throws Exception {
+        try (AiCallContext.Scope ignored = AiCallContext.open("quiet", null);
+             RequestDeadline.Scope ignoredDeadline = RequestDeadline.after(Duration.ofMillis(ms)).open()) {
+            return scheduler.call("GEMINI", "quality", PROMPT_CHARS, () -> "reply");
+        }
+    }
+
+    private Thread call(FairLlmScheduler scheduler, String user, Runnable work) {
+        Thread thread = new Thread(() -> {
+            try (AiCallContext.Scope ignored = AiCallContext.open(user, null)) {
+                scheduler.call("GEMINI", "quality", PROMPT_CHARS, () -> {
+                    served.add(user);
+                    work.run();
+                    return "reply";
+                });
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void awaitQueued(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.get("email.scheduler.queued").gauge().value() < expected) {
+            assertTrue(System.nanoTime() < deadline, "queue never reached " + expected);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.email.service;
+
+import com.email.dto.ExportFormat;
+import com.email.entity.User;
+import com.email.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Runs in its own surefire execution with -Xmx128m (see pom.xml). A million rows buffered as
+// entities, or left in the persistence context, would need several times that; the export has
+// to go through the repository cursor and detach each row as it is written.
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/export-test/db;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+                + "LAZY_QUERY_EXECUTION=TRUE;CACHE_SIZE=4096",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "email.archive.dir=./target/export-test/archive"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({HistoryExportService.class, HistoryArchiveStore.class, EmailBlobStore.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)  // export opens its own read-only transaction
+class HistoryExportServiceTests {
+
+    private static final int ROWS = 1_000_000;
+
+    @Autowired
+    private HistoryExportService exportService;
+
+    @Autowired
+    private EmailBlobStore blobStore;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void streamsAMillionDatabaseRowsInBoundedMemory() throws IOException {
+        User user = new User();
+        user.setUsername("exporter");
+        user.setPassword("x");
+        user.setEmail("exporter@example.com");
+        user = userRepository.save(user);
+
+        // Inserted by the database itself so the test heap never holds the rows
+        String content = blobStore.store("Hello, my order has not arrived.");
+        String response = blobStore.store("Dear customer,\nwe are looking into your order.");
+        jdbcTemplate.update("INSERT INTO email_history (email_content, generated_response, tone, intent, timestamp, user_id) "
+                + "SELECT ?, ?, 'FORMAL', 'SUPPORT_REQUEST', CURRENT_TIMESTAMP, ? FROM SYSTEM_RANGE(1, ?)",
+                content, response, user.getId(), ROWS);
+
+        CountingOutputStream ndjson = new CountingOutputStream();
+        assertEquals(ROWS, exportService.export("exporter", ExportFormat.NDJSON, ndjson));
+        assertEquals(ROWS, ndjson.newlines);
+
+        CountingOutputStream csv = new CountingOutputStream();
+        assertEquals(ROWS, exportService.export("exporter", ExportFormat.CSV, csv));
+        // header + rows; the quoted response adds one embedded newline per row
+        assertEquals(1 + ROWS * 2L, csv.newlines);
+
+        assertEquals(0, exportService.export("nobody", ExportFormat.NDJSON, new CountingOutputStream()));
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long newlines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                newlines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    newlines++;
+                }
+            }
+        }
+    }
+}
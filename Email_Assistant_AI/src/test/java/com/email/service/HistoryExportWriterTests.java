@@ -0,0 +1,99 @@
+package com.email.service;
+
+import com.email.dto.EmailIntent;
+import com.email.dto.EmailTone;
+import com.email.dto.ExportFormat;
+import com.email.entity.EmailHistory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs in its own surefire execution with -Xmx32m (see pom.xml): exporting millions of rows
+// must not need more heap than a single row plus the writer's buffer.
+class HistoryExportWriterTests {
+
+    private static final int ROWS = 3_000_000;
+
+    @Test
+    void streamsMillionsOfNdjsonRowsInConstantMemory() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        HistoryExportWriter writer = new HistoryExportWriter(out, ExportFormat.NDJSON);
+        writer.writeHeader();
+        for (long i = 1; i <= ROWS; i++) {
+            writer.write(row(i));
+        }
+        writer.flush();
+
+        assertEquals(ROWS, writer.getRowsWritten());
+        assertEquals(ROWS, out.newlines);
+    }
+
+    @Test
+    void streamsMillionsOfCsvRowsInConstantMemory() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        HistoryExportWriter writer = new HistoryExportWriter(out, ExportFormat.CSV);
+        writer.writeHeader();
+        for (long i = 1; i <= ROWS; i++) {
+            writer.write(row(i));
+        }
+        writer.flush();
+
+        assertEquals(ROWS, writer.getRowsWritten());
+        // header + rows; the quoted body below adds one embedded newline per row
+        assertEquals(1 + ROWS * 2L, out.newlines);
+    }
+
+    @Test
+    void quotesCsvFieldsPerRfc4180() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HistoryExportWriter writer = new HistoryExportWriter(out, ExportFormat.CSV);
+        EmailHistory history = row(7);
+        history.setEmailContent("Hi, \"team\"");
+        writer.write(history);
+        writer.flush();
+
+        String line = out.toString(StandardCharsets.UTF_8);
+        assertTrue(line.contains(",\"Hi, \"\"team\"\"\","));
+    }
+
+    private static EmailHistory row(long id) {
+        EmailHistory history = new EmailHistory();
+        history.setId(id);
+        history.setTimestamp(LocalDateTime.of(2024, 1, 1, 12, 0).plusSeconds(id));
+        history.setTone(EmailTone.FORMAL);
+        history.setIntent(EmailIntent.SUPPORT_REQUEST);
+        history.setEmailContent("Hello, my order #" + id + " has not arrived.");
+        history.setGeneratedResponse("Dear customer,\nwe are looking into order #" + id + ".");
+        return history;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long bytes;
+        long newlines;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n') {
+                newlines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    newlines++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.email.service;
+
+import com.email.ai.HashedNgramEmbedder;
+import com.email.dto.EmailIntent;
+import com.email.dto.EmailTone;
+import com.email.dto.RewriteMode;
+import com.email.entity.EmailHistory;
+import com.email.entity.User;
+import com.email.repository.EmailHistoryRepository;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplyReuseServiceTests {
+
+    private static final String EMAIL = "Hi, my order #1234 has not arrived yet. Could you check where it is?";
+
+    @TempDir
+    Path indexDir;
+
+    private final EmailHistoryRepository historyRepository = mock(EmailHistoryRepository.class);
+    private ReplyReuseService reuseService;
+    private User user;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // An existing (empty) index, so init() does not start a background rebuild
+        try (FSDirectory directory = FSDirectory.open(indexDir.resolve("hashed"));
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            writer.commit();
+        }
+
+        HashedNgramEmbedder embedder = new HashedNgramEmbedder();
+        ReflectionTestUtils.setField(embedder, "dimensions", 512);
+
+        reuseService = new ReplyReuseService(historyRepository, List.of(embedder),
+                mock(HistoryArchiveStore.class));
+        ReflectionTestUtils.setField(reuseService, "enabled", true);
+        ReflectionTestUtils.setField(reuseService, "embedderName", "HASHED");
+        ReflectionTestUtils.setField(reuseService, "similarityThreshold", 0.95);
+        ReflectionTestUtils.setField(reuseService, "candidates", 5);
+        ReflectionTestUtils.setField(reuseService, "indexDir", indexDir.toString());
+        reuseService.init();
+
+        user = new User();
+        user.setId(7L);
+        user.setUsername("alice");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        reuseService.close();
+    }
+
+    @Test
+    void successfulReplyIsServedForTheSameEmail() {
+        reuseService.index(history(EMAIL, "Dear customer, your order ships tomorrow."));
+
+        assertEquals(Optional.of("Dear customer, your order ships tomorrow."),
+                reuseService.findReusableReply(user.getId(), EMAIL, EmailTone.FORMAL, EmailIntent.SUPPORT_REQUEST));
+    }
+
+    @Test
+    void providerErrorsAreNeverIndexedOrServed() {
+        List<EmailHistory> errors = new ArrayList<>();
+        for (String error : List.of(
+                "Rate limited by Gemini (429). Please retry in a few seconds.",
+                "Gemini API Error: 500 Internal Server Error",
+                "Error processing request: connection reset",
+                "Gemini returned empty content.")) {
+            EmailHistory history = history(EMAIL, error);
+            errors.add(history);
+            reuseService.index(history);
+
+            assertTrue(reuseService.findReusableReply(user.getId(), EMAIL, EmailTone.FORMAL,
+                    EmailIntent.SUPPORT_REQUEST).isEmpty(), error);
+        }
+
+        // A rebuild from history skips them too
+        when(historyRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any())).thenReturn(errors);
+        assertEquals(0, reuseService.rebuild());
+        assertTrue(reuseService.findReusableReply(user.getId(), EMAIL, EmailTone.FORMAL,
+                EmailIntent.SUPPORT_REQUEST).isEmpty());
+    }
+
+    @Test
+    void rewritesAreNotReplies() {
+        EmailHistory polished = history(EMAIL, "A polished version of the email.");
+        polished.setMode(RewriteMode.POLISH);
+        reuseService.index(polished);
+
+        assertTrue(reuseService.findReusableReply(user.getId(), EMAIL, EmailTone.FORMAL,
+                EmailIntent.SUPPORT_REQUEST).isEmpty());
+    }
+
+    private EmailHistory history(String content, String response) {
+        EmailHistory history = new EmailHistory();
+        history.setId(nextId++);
+        history.setUser(user);
+        history.setEmailContent(content);
+        history.setGeneratedResponse(response);
+        history.setTone(EmailTone.FORMAL);
+        history.setIntent(EmailIntent.SUPPORT_REQUEST);
+        history.setMode(RewriteMode.GENERATE_REPLY);
+        return history;
+    }
+}